@@ -0,0 +1,110 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic trade fixtures shared by the benchmarks. Product ids repeat over
+ * {@link #products(int)} distinct values, like a real trade file referencing a product universe.
+ */
+final class BenchmarkData {
+    private static final String[] DATES = {"20230104", "20230105", "20230106", "20231229", "20240229"};
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "JPY", "CHF"};
+    private static final int MAX_PRODUCTS = 100_000;
+
+    private BenchmarkData() {
+    }
+
+    static int products(int trades) {
+        return Math.min(trades, MAX_PRODUCTS);
+    }
+
+    static String productId(int trade, int products) {
+        return Integer.toString(trade % products);
+    }
+
+    static double price(int trade) {
+        return (trade % 100_000) / 100.0 + 1;
+    }
+
+    /**
+     * Request body bytes; binary documents are written by the binary trade writer.
+     */
+    static byte[] body(String contentType, int trades) {
+        if (!BinaryTradeFormat.CONTENT_TYPE.equals(contentType)) {
+            return payload(contentType, trades).getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(trades * 24);
+        try (TradeWriter writer = TradeWriter.create(contentType, out)) {
+            writer.writeStart();
+            for (EnrichedTradeDTO trade : enrichedTrades(trades)) {
+                writer.write(trade);
+            }
+            writer.writeEnd();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static String payload(String contentType, int trades) {
+        int products = products(trades);
+        StringBuilder out = new StringBuilder(trades * 120);
+        switch (contentType) {
+            case "text/csv" -> {
+                out.append("date,productId,currency,price\n");
+                for (int i = 0; i < trades; i++) {
+                    out.append(DATES[i % DATES.length]).append(',')
+                            .append(productId(i, products)).append(',')
+                            .append(CURRENCIES[i % CURRENCIES.length]).append(',')
+                            .append(price(i)).append('\n');
+                }
+            }
+            case "application/json" -> {
+                out.append('[');
+                for (int i = 0; i < trades; i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    out.append("{\"date\":\"").append(DATES[i % DATES.length])
+                            .append("\",\"productId\":\"").append(productId(i, products))
+                            .append("\",\"currency\":\"").append(CURRENCIES[i % CURRENCIES.length])
+                            .append("\",\"price\":").append(price(i)).append('}');
+                }
+                out.append(']');
+            }
+            case "application/xml" -> {
+                out.append("<trades>");
+                for (int i = 0; i < trades; i++) {
+                    out.append("<trade><date>").append(DATES[i % DATES.length])
+                            .append("</date><productId>").append(productId(i, products))
+                            .append("</productId><currency>").append(CURRENCIES[i % CURRENCIES.length])
+                            .append("</currency><price>").append(price(i)).append("</price></trade>");
+                }
+                out.append("</trades>");
+            }
+            default -> throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        return out.toString();
+    }
+
+    static List<EnrichedTradeDTO> enrichedTrades(int trades) {
+        int products = products(trades);
+        String[] names = new String[products];
+        for (int i = 0; i < products; i++) {
+            names[i] = "Product " + i;
+        }
+        List<EnrichedTradeDTO> result = new ArrayList<>(trades);
+        for (int i = 0; i < trades; i++) {
+            result.add(new EnrichedTradeDTO(DATES[i % DATES.length], productId(i, products),
+                    CURRENCIES[i % CURRENCIES.length], price(i), names[i % products]));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.CaffeineProductCache;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole CSV request through {@link TradeService#enrichTrades} with the reactive
+ * {@link EnrichmentEngine} or the {@link BlockingEnrichmentEngine}, on a platform pool sized to the
+ * cores or on virtual threads ({@code blocking-virtual}, Java 21 only). Sample time reports the
+ * latency percentiles; run with {@code -t} to put several requests in flight at once. {@code cold}
+ * starts every request from an empty product cache, so misses go to the in-memory Redis stand-in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class EnrichmentModeBenchmark {
+
+    @Param({"100", "100000"})
+    private int trades;
+
+    @Param({"reactive", "blocking", "blocking-virtual"})
+    private String mode;
+
+    @Param({"warm", "cold"})
+    private String cache;
+
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private RedisProductRepository repository;
+    private ProductLookupBatcher batcher;
+    private AsyncTaskExecutor taskExecutor;
+    private EnrichmentEngine engine;
+    private TradeService tradeService;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        int products = BenchmarkData.products(trades);
+        repository = new RedisProductRepository(new InMemoryReactiveRedisTemplate(),
+                new InMemoryReactiveStringRedisTemplate(), RedisProductRepository.Layout.HASH, 8192);
+        Map<String, String> names = new HashMap<>();
+        for (int i = 0; i < products; i++) {
+            names.put(Integer.toString(i), "Product " + i);
+        }
+        repository.saveAll(names).block();
+        batcher = new ProductLookupBatcher(repository, EnrichmentMetrics.standalone());
+        ReflectionTestUtils.setField(batcher, "batchSize", 500);
+        ReflectionTestUtils.setField(batcher, "batchWindow", Duration.ofMillis(2));
+        ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 8);
+        batcher.start();
+        taskExecutor = newTaskExecutor();
+        payload = BenchmarkData.body("text/csv", trades);
+        newService();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCache() {
+        if (cache.equals("cold")) {
+            newService();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.stop();
+        batcher.stop();
+        if (taskExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int enrich() {
+        DataBuffer buffer = tradeService.enrichTrades(payload, "text/csv", bufferFactory).block();
+        int bytes = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+
+    private void newService() {
+        if (engine != null) {
+            engine.stop();
+        }
+        VersionedProductCache productCache = new VersionedProductCache(
+                restore -> new CaffeineProductCache(1_000_000, 0, 100_000, Duration.ofMinutes(5)));
+        ProductMappingService productMappingService = new ProductMappingService(repository, batcher, productCache,
+                EnrichmentMetrics.standalone(), ProductShards.disabled(), ProductAccessTracker.disabled());
+
+        engine = new EnrichmentEngine(productMappingService);
+        ReflectionTestUtils.setField(engine, "chunkSize", 512);
+        ReflectionTestUtils.setField(engine, "maxOutstandingLookups", 256);
+        ReflectionTestUtils.setField(engine, "intern", true);
+        ReflectionTestUtils.setField(engine, "internMaxEntries", 65536);
+        engine.start();
+
+        BlockingEnrichmentEngine blockingEngine = new BlockingEnrichmentEngine(productMappingService, taskExecutor);
+        ReflectionTestUtils.setField(blockingEngine, "mode", mode.startsWith("blocking") ? "blocking" : "reactive");
+        ReflectionTestUtils.setField(blockingEngine, "chunkSize", 512);
+        ReflectionTestUtils.setField(blockingEngine, "lookupTimeout", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(blockingEngine, "intern", true);
+        ReflectionTestUtils.setField(blockingEngine, "internMaxEntries", 65536);
+
+        tradeService = new TradeService(engine, EnrichmentMetrics.standalone(), TradeResultCache.disabled(),
+                blockingEngine);
+        if (cache.equals("warm")) {
+            enrich();
+        }
+    }
+
+    private AsyncTaskExecutor newTaskExecutor() {
+        if (mode.equals("blocking-virtual")) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("trade-enrich-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors());
+        executor.setThreadNamePrefix("trade-enrich-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,69 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.model.Product;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ReactiveRedisTemplate} stand-in backed by a map, so lookups can be measured without a
+ * Redis server. Only {@code get}, {@code multiGet} and {@code multiSet} of {@code opsForValue()}
+ * are supported.
+ */
+class InMemoryReactiveRedisTemplate extends ReactiveRedisTemplate<String, Product> {
+    private final Map<String, Product> store = new ConcurrentHashMap<>();
+    private final ReactiveValueOperations<String, Product> valueOperations = valueOperations();
+
+    InMemoryReactiveRedisTemplate() {
+        super(unsupported(ReactiveRedisConnectionFactory.class),
+                RedisSerializationContext.<String, Product>newSerializationContext(StringRedisSerializer.UTF_8)
+                        .key(StringRedisSerializer.UTF_8)
+                        .build());
+    }
+
+    @Override
+    public ReactiveValueOperations<String, Product> opsForValue() {
+        return valueOperations;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveValueOperations<String, Product> valueOperations() {
+        return (ReactiveValueOperations<String, Product>) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{ReactiveValueOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> Mono.justOrEmpty(store.get((String) args[0]));
+                    case "multiGet" -> Mono.fromSupplier(() -> {
+                        List<Product> products = new ArrayList<>();
+                        for (Object key : (Collection<?>) args[0]) {
+                            products.add(store.get((String) key));
+                        }
+                        return products;
+                    });
+                    case "multiSet" -> Mono.fromSupplier(() -> {
+                        store.putAll((Map<String, Product>) args[0]);
+                        return true;
+                    });
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(
+                InMemoryReactiveRedisTemplate.class.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+}
@@ -0,0 +1,58 @@
+package com.capybara.trade.enricher.service;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ReactiveStringRedisTemplate} stand-in backed by maps, for the hash product layout. Only
+ * {@code multiGet}, {@code putAll} and {@code scan} of {@code opsForHash()} are supported.
+ */
+class InMemoryReactiveStringRedisTemplate extends ReactiveStringRedisTemplate {
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    private final ReactiveHashOperations<String, ?, ?> hashOperations = hashOperations();
+
+    InMemoryReactiveStringRedisTemplate() {
+        super(InMemoryReactiveRedisTemplate.unsupported(ReactiveRedisConnectionFactory.class));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <HK, HV> ReactiveHashOperations<String, HK, HV> opsForHash() {
+        return (ReactiveHashOperations<String, HK, HV>) hashOperations;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveHashOperations<String, ?, ?> hashOperations() {
+        return (ReactiveHashOperations<String, ?, ?>) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{ReactiveHashOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "multiGet" -> Mono.fromSupplier(() -> {
+                        Map<String, String> hash = hashes.getOrDefault((String) args[0], Map.of());
+                        List<String> values = new ArrayList<>();
+                        for (Object field : (Collection<?>) args[1]) {
+                            values.add(hash.get((String) field));
+                        }
+                        return values;
+                    });
+                    case "putAll" -> Mono.fromSupplier(() -> {
+                        hashes.computeIfAbsent((String) args[0], key -> new ConcurrentHashMap<>())
+                                .putAll((Map<String, String>) args[1]);
+                        return true;
+                    });
+                    case "scan" -> Flux.defer(() -> Flux.fromIterable(
+                            hashes.getOrDefault((String) args[0], Map.of()).entrySet()));
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,139 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.CaffeineProductCache;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.EmbeddedProductRepository;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductMappingService#getProductName} for every trade of a request, resolved with the
+ * same concurrency as the streaming endpoint. {@code hit} starts from a fully populated cache;
+ * {@code miss} starts from an empty one, so every distinct product goes through the lookup
+ * batcher and the repository once: the in-memory Redis stand-in in the given {@code layout}, or
+ * a local {@code embedded} index file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ProductLookupBenchmark {
+    private static final int CONCURRENCY = 256;
+
+    @State(Scope.Benchmark)
+    public static class Products {
+        @Param({"1000", "100000", "10000000"})
+        int trades;
+
+        @Param({"hash", "keys", "embedded"})
+        String layout;
+
+        String[] productIds;
+        Path indexDirectory;
+        ProductRepository repository;
+        ProductLookupBatcher batcher;
+
+        @Setup
+        public void setUp() throws IOException {
+            int products = BenchmarkData.products(trades);
+            productIds = new String[trades];
+            for (int i = 0; i < trades; i++) {
+                productIds[i] = BenchmarkData.productId(i, products);
+            }
+            indexDirectory = Files.createTempDirectory("products");
+            repository = layout.equals("embedded")
+                    ? new EmbeddedProductRepository(indexDirectory.resolve("products.sst"))
+                    : new RedisProductRepository(new InMemoryReactiveRedisTemplate(),
+                    new InMemoryReactiveStringRedisTemplate(), RedisProductRepository.Layout.valueOf(layout.toUpperCase()),
+                    8192);
+            Map<String, String> names = new HashMap<>();
+            for (int i = 0; i < products; i++) {
+                String id = Integer.toString(i);
+                names.put(id, "Product " + id);
+            }
+            repository.saveAll(names).then(repository.flush()).block();
+            batcher = new ProductLookupBatcher(repository, EnrichmentMetrics.standalone());
+            ReflectionTestUtils.setField(batcher, "batchSize", 500);
+            ReflectionTestUtils.setField(batcher, "batchWindow", Duration.ofMillis(2));
+            ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 8);
+            batcher.start();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            batcher.stop();
+            Files.deleteIfExists(indexDirectory.resolve("products.sst"));
+            Files.deleteIfExists(indexDirectory);
+        }
+
+        ProductMappingService newService() {
+            VersionedProductCache cache = new VersionedProductCache(
+                    restore -> new CaffeineProductCache(1_000_000, 0, 100_000, Duration.ofMinutes(5)));
+            return new ProductMappingService(repository, batcher, cache, EnrichmentMetrics.standalone(),
+                    ProductShards.disabled(), ProductAccessTracker.disabled());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmCache {
+        ProductMappingService service;
+
+        @Setup
+        public void setUp(Products products) {
+            service = products.newService();
+            resolveAll(service, products.productIds);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdCache {
+        ProductMappingService service;
+
+        @Setup(Level.Invocation)
+        public void setUp(Products products) {
+            service = products.newService();
+        }
+    }
+
+    @Benchmark
+    public long hit(Products products, WarmCache cache) {
+        return resolveAll(cache.service, products.productIds);
+    }
+
+    @Benchmark
+    public long miss(Products products, ColdCache cache) {
+        return resolveAll(cache.service, products.productIds);
+    }
+
+    private static long resolveAll(ProductMappingService service, String[] productIds) {
+        return Flux.fromArray(productIds)
+                .flatMapSequential(service::getProductName, CONCURRENCY)
+                .count()
+                .block();
+    }
+}
@@ -0,0 +1,57 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering an enriched trade list into a response buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class TradeFormatBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int trades;
+
+    @Param({"text/csv", "application/json", "application/xml", "application/x-trade-batch",
+            "application/x-trade-dictionary+json"})
+    private String contentType;
+
+    private final EnrichmentMetrics metrics = EnrichmentMetrics.standalone();
+    private List<EnrichedTradeDTO> enrichedTrades;
+
+    @Setup
+    public void setUp() {
+        enrichedTrades = BenchmarkData.enrichedTrades(trades);
+    }
+
+    @Benchmark
+    public int format() {
+        DataBuffer buffer = TradeFormatter.formatTrades(enrichedTrades, contentType,
+                DefaultDataBufferFactory.sharedInstance, metrics);
+        int bytes = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and validation of a whole request body, without enrichment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class TradeParseBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int trades;
+
+    @Param({"text/csv", "application/json", "application/xml", "application/x-trade-batch"})
+    private String contentType;
+
+    private TradeService tradeService;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        tradeService = new TradeService(null, EnrichmentMetrics.standalone(), TradeResultCache.disabled(),
+                BlockingEnrichmentEngine.disabled());
+        payload = BenchmarkData.body(contentType, trades);
+    }
+
+    @Benchmark
+    public long parse() {
+        return tradeService.validateAndParseTrades(payload, contentType).count().block();
+    }
+}
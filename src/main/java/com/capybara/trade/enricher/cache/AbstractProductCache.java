@@ -0,0 +1,53 @@
+package com.capybara.trade.enricher.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the hit, miss, eviction and load counters shared by all {@link ProductCache} implementations.
+ */
+public abstract class AbstractProductCache implements ProductCache {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    protected final LongAdder evictions = new LongAdder();
+
+    @Override
+    public final String get(String productId) {
+        String productName = lookup(productId);
+        if (productName != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return productName;
+    }
+
+    @Override
+    public final boolean isKnownMissing(String productId) {
+        boolean missing = lookupMissing(productId);
+        if (missing) {
+            negativeHits.increment();
+        }
+        return missing;
+    }
+
+    @Override
+    public void recordLoad(long loadTimeNanos) {
+        loads.increment();
+        totalLoadTime.add(loadTimeNanos);
+    }
+
+    @Override
+    public ProductCacheStats stats() {
+        return new ProductCacheStats(type(), size(), hits.sum(), misses.sum(), negativeHits.sum(),
+                evictions.sum(), loads.sum(), totalLoadTime.sum(), 0);
+    }
+
+    protected abstract String type();
+
+    protected abstract String lookup(String productId);
+
+    protected abstract boolean lookupMissing(String productId);
+}
@@ -0,0 +1,76 @@
+package com.capybara.trade.enricher.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.time.Duration;
+
+/**
+ * W-TinyLFU cache backed by Caffeine. Bounded either by entry count or, when {@code maxMemoryBytes}
+ * is positive, by the estimated heap footprint of the cached strings.
+ */
+public class CaffeineProductCache extends AbstractProductCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Cache<String, String> names;
+    private final Cache<String, Boolean> missing;
+
+    public CaffeineProductCache(long maxSize, long maxMemoryBytes, long maxMissingSize, Duration missingTtl) {
+        Caffeine<String, String> builder = Caffeine.newBuilder()
+                .evictionListener((String id, String name, RemovalCause cause) -> evictions.increment());
+        if (maxMemoryBytes > 0) {
+            builder.maximumWeight(maxMemoryBytes)
+                    .weigher((id, name) -> ENTRY_OVERHEAD_BYTES + 2 * (id.length() + name.length()));
+        } else {
+            builder.maximumSize(maxSize);
+        }
+        this.names = builder.build();
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(maxMissingSize)
+                .expireAfterWrite(missingTtl)
+                .build();
+    }
+
+    @Override
+    protected String type() {
+        return "caffeine";
+    }
+
+    @Override
+    protected String lookup(String productId) {
+        return names.getIfPresent(productId);
+    }
+
+    @Override
+    protected boolean lookupMissing(String productId) {
+        return missing.getIfPresent(productId) != null;
+    }
+
+    @Override
+    public void put(String productId, String productName) {
+        names.put(productId, productName);
+        missing.invalidate(productId);
+    }
+
+    @Override
+    public void putMissing(String productId) {
+        missing.put(productId, Boolean.TRUE);
+    }
+
+    @Override
+    public void invalidate(String productId) {
+        names.invalidate(productId);
+        missing.invalidate(productId);
+    }
+
+    @Override
+    public void invalidateMissing() {
+        missing.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return names.estimatedSize();
+    }
+}
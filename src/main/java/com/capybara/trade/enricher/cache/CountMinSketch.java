@@ -0,0 +1,101 @@
+package com.capybara.trade.enricher.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-min sketch of access frequencies: four rows of {@code width} counters, each key counted in
+ * one counter per row, and its frequency estimated as the smallest of them. Estimates never fall
+ * below the true count and exceed it only by collisions. {@link #halve()} ages all counts, so the
+ * sketch follows recent traffic.
+ */
+public class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L};
+
+    private final int width;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final LongAdder additions = new LongAdder();
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int width) {
+        this.width = width <= 2 ? 2 : Integer.highestOneBit(width - 1) << 1;
+        this.mask = this.width - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * this.width);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Counts one access and returns the new estimate.
+     */
+    public int increment(String key) {
+        int hash = key.hashCode();
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int count = counters.incrementAndGet(index(hash, row));
+            estimate = Math.min(estimate, count);
+        }
+        additions.increment();
+        return estimate;
+    }
+
+    public int estimate(String key) {
+        int hash = key.hashCode();
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Accesses counted since the last {@link #halve()}.
+     */
+    public long additions() {
+        return additions.sum();
+    }
+
+    /**
+     * Halves every counter. Increments racing with it may be kept in full or halved.
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+        additions.reset();
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        for (int i = 0; i < counters.length(); i++) {
+            out.writeInt(counters.get(i));
+        }
+    }
+
+    public static CountMinSketch readFrom(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        if (width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IOException("Invalid sketch width " + width);
+        }
+        CountMinSketch sketch = new CountMinSketch(width);
+        for (int i = 0; i < sketch.counters.length(); i++) {
+            sketch.counters.set(i, in.readInt());
+        }
+        return sketch;
+    }
+
+    private int index(int hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return row * width + ((int) (mixed >>> 32) & mask);
+    }
+}
@@ -0,0 +1,37 @@
+package com.capybara.trade.enricher.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Keeps results on the heap, up to {@code maxBytes} in total, each for at most {@code ttl}.
+ */
+public class LocalTradeResultStore implements TradeResultStore {
+    private final Cache<String, byte[]> results;
+
+    public LocalTradeResultStore(long maxBytes, Duration ttl) {
+        this.results = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, byte[] result) -> key.length() + result.length)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public Mono<byte[]> get(String key) {
+        return Mono.fromSupplier(() -> results.getIfPresent(key));
+    }
+
+    @Override
+    public Mono<Void> put(String key, byte[] result) {
+        return Mono.fromRunnable(() -> results.put(key, result));
+    }
+
+    @Override
+    public String type() {
+        return "local";
+    }
+}
@@ -0,0 +1,85 @@
+package com.capybara.trade.enricher.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plain access-ordered LRU cache. Simpler and more predictable than {@link CaffeineProductCache},
+ * but every access takes a single lock, so prefer Caffeine under high concurrency.
+ */
+public class LruProductCache extends AbstractProductCache {
+    private final Map<String, String> names;
+    private final Map<String, Long> missing;
+    private final long missingTtlNanos;
+
+    public LruProductCache(long maxSize, long maxMissingSize, Duration missingTtl) {
+        this.names = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.missing = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxMissingSize;
+            }
+        };
+        this.missingTtlNanos = missingTtl.toNanos();
+    }
+
+    @Override
+    protected String type() {
+        return "lru";
+    }
+
+    @Override
+    protected synchronized String lookup(String productId) {
+        return names.get(productId);
+    }
+
+    @Override
+    protected synchronized boolean lookupMissing(String productId) {
+        Long expiresAt = missing.get(productId);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt - System.nanoTime() <= 0) {
+            missing.remove(productId);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void put(String productId, String productName) {
+        names.put(productId, productName);
+        missing.remove(productId);
+    }
+
+    @Override
+    public synchronized void putMissing(String productId) {
+        missing.put(productId, System.nanoTime() + missingTtlNanos);
+    }
+
+    @Override
+    public synchronized void invalidate(String productId) {
+        names.remove(productId);
+        missing.remove(productId);
+    }
+
+    @Override
+    public synchronized void invalidateMissing() {
+        missing.clear();
+    }
+
+    @Override
+    public synchronized long size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,113 @@
+package com.capybara.trade.enricher.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Holds the whole product universe in an {@link OffHeapProductDictionary}, so product names cost no
+ * heap and no GC work. Nothing is evicted; unknown ids are still remembered in a small on-heap cache.
+ * When a snapshot path is configured the dictionary is mapped from it at startup (if {@code restore}
+ * is set) and written back on {@link #persist()}.
+ */
+public class OffHeapProductCache extends AbstractProductCache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapProductCache.class);
+
+    private final OffHeapProductDictionary dictionary;
+    private final Cache<String, Boolean> missing;
+    private final Path snapshot;
+
+    public OffHeapProductCache(int expectedSize, Path snapshot, long maxMissingSize, Duration missingTtl) {
+        this(expectedSize, snapshot, true, maxMissingSize, missingTtl);
+    }
+
+    public OffHeapProductCache(int expectedSize, Path snapshot, boolean restore, long maxMissingSize,
+                               Duration missingTtl) {
+        this.snapshot = snapshot;
+        this.dictionary = restore ? openOrCreate(snapshot, expectedSize) : OffHeapProductDictionary.create(expectedSize);
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(maxMissingSize)
+                .expireAfterWrite(missingTtl)
+                .build();
+    }
+
+    private static OffHeapProductDictionary openOrCreate(Path snapshot, int expectedSize) {
+        if (snapshot != null && Files.isRegularFile(snapshot)) {
+            try {
+                OffHeapProductDictionary dictionary = OffHeapProductDictionary.open(snapshot);
+                logger.info("Mapped {} products from snapshot {}", dictionary.size(), snapshot);
+                return dictionary;
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable product snapshot {}: {}", snapshot, e.getMessage());
+            }
+        }
+        return OffHeapProductDictionary.create(expectedSize);
+    }
+
+    @Override
+    protected String type() {
+        return "offheap";
+    }
+
+    @Override
+    protected String lookup(String productId) {
+        return dictionary.get(productId);
+    }
+
+    @Override
+    protected boolean lookupMissing(String productId) {
+        return missing.getIfPresent(productId) != null;
+    }
+
+    @Override
+    public void put(String productId, String productName) {
+        dictionary.put(productId, productName);
+        missing.invalidate(productId);
+    }
+
+    @Override
+    public void putMissing(String productId) {
+        missing.put(productId, Boolean.TRUE);
+    }
+
+    @Override
+    public void invalidate(String productId) {
+        dictionary.remove(productId);
+        missing.invalidate(productId);
+    }
+
+    @Override
+    public void invalidateMissing() {
+        missing.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return dictionary.size();
+    }
+
+    @Override
+    public void persist() {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            dictionary.writeSnapshot(snapshot);
+            logger.info("Wrote {} products ({} bytes off-heap) to snapshot {}",
+                    dictionary.size(), dictionary.offHeapBytes(), snapshot);
+        } catch (IOException e) {
+            logger.error("Failed to write product snapshot {}", snapshot, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        persist();
+    }
+}
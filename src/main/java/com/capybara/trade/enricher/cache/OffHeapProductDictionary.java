@@ -0,0 +1,361 @@
+package com.capybara.trade.enricher.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact product-id to product-name dictionary kept outside the Java heap.
+ * <p>
+ * Entries live in a UTF-8 arena ({@code [u16 idLength][u16 nameLength][id][name]}) and are located
+ * through an open-addressing index of {@code [int hash][int arenaRef]} slots. Lookups hash the
+ * {@link String#hashCode() cached} id hash and compare the id against the arena bytes in place.
+ * Entries are never changed once written, so decoded names are kept in a small direct-mapped cache
+ * keyed by entry, and {@link #get(String)} of a hot product returns the same {@code String} without
+ * allocating. Writes are serialized; readers are lock-free and see a slot only after its arena
+ * bytes are published with release/acquire ordering. A write that grows the index or the arena
+ * publishes new tables and leaves the old ones intact for readers still using them.
+ * <p>
+ * The dictionary can be written to a snapshot file and reopened with {@link #open(Path)}, which maps
+ * the file copy-on-write instead of rebuilding it. The arena is limited to 2 GB.
+ */
+public final class OffHeapProductDictionary {
+    private static final int MAGIC = 0x50444354;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 8;
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE - 8;
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final VarHandle INT_VIEW =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+    private static final int DECODED_BITS = 14;
+
+    private final Decoded[] decoded = new Decoded[1 << DECODED_BITS];
+    private volatile Tables tables;
+    private int size;
+    private int tombstones;
+
+    private OffHeapProductDictionary(Tables tables, int size, int tombstones) {
+        this.tables = tables;
+        this.size = size;
+        this.tombstones = tombstones;
+    }
+
+    public static OffHeapProductDictionary create(int expectedSize) {
+        int capacity = initialCapacity(expectedSize);
+        ByteBuffer index = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer arena = ByteBuffer.allocateDirect(initialArenaBytes(expectedSize)).order(ByteOrder.LITTLE_ENDIAN);
+        return new OffHeapProductDictionary(new Tables(index, capacity, arena, 0), 0, 0);
+    }
+
+    public static OffHeapProductDictionary open(Path snapshot) throws IOException {
+        // PRIVATE mappings need a writable channel, but writes stay in memory and never reach the file
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a product dictionary snapshot: " + snapshot);
+            }
+            int capacity = header.getInt();
+            int size = header.getInt();
+            int tombstones = header.getInt();
+            int arenaUsed = header.getInt();
+            long indexBytes = (long) capacity * SLOT_BYTES;
+            if (channel.size() < HEADER_BYTES + indexBytes + arenaUsed) {
+                throw new IOException("Truncated product dictionary snapshot: " + snapshot);
+            }
+
+            ByteBuffer index = channel.map(FileChannel.MapMode.PRIVATE, HEADER_BYTES, indexBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer arena = channel.map(FileChannel.MapMode.PRIVATE, HEADER_BYTES + indexBytes, arenaUsed)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new OffHeapProductDictionary(new Tables(index, capacity, arena, arenaUsed), size, tombstones);
+        }
+    }
+
+    public String get(String productId) {
+        // one snapshot for both steps, an entry is only valid in the arena it was found in
+        Tables t = tables;
+        int entry = find(t, productId);
+        return entry < 0 ? null : name(t, entry);
+    }
+
+    public synchronized void put(String productId, String productName) {
+        byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+        byte[] name = productName.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 0xFFFF || name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Product id or name longer than 65535 bytes: " + productId);
+        }
+        if ((size + tombstones + 1) > tables.capacity * LOAD_FACTOR) {
+            rehash(size + 1 > tables.capacity * LOAD_FACTOR / 2 ? tables.capacity * 2 : tables.capacity);
+        }
+        Tables t = ensureArena(4 + id.length + name.length);
+
+        int entry = t.arenaUsed;
+        t.arena.putShort(entry, (short) id.length);
+        t.arena.putShort(entry + 2, (short) name.length);
+        t.arena.put(entry + 4, id);
+        t.arena.put(entry + 4 + id.length, name);
+        t.arenaUsed += 4 + id.length + name.length;
+
+        int hash = spread(productId.hashCode());
+        int mask = t.capacity - 1;
+        int tombstone = -1;
+        int target;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slot * SLOT_BYTES;
+            int ref = t.index.getInt(position + 4);
+            if (ref == EMPTY) {
+                if (tombstone >= 0) {
+                    target = tombstone;
+                    tombstones--;
+                } else {
+                    target = position;
+                }
+                size++;
+                break;
+            }
+            if (ref == TOMBSTONE) {
+                if (tombstone < 0) {
+                    tombstone = position;
+                }
+            } else if (t.index.getInt(position) == hash && idEquals(t.arena, ref - 1, productId)) {
+                target = position;
+                break;
+            }
+        }
+        t.index.putInt(target, hash);
+        INT_VIEW.setRelease(t.index, target + 4, entry + 1);
+    }
+
+    public synchronized boolean remove(String productId) {
+        Tables t = tables;
+        int hash = spread(productId.hashCode());
+        int mask = t.capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slot * SLOT_BYTES;
+            int ref = t.index.getInt(position + 4);
+            if (ref == EMPTY) {
+                return false;
+            }
+            if (ref != TOMBSTONE && t.index.getInt(position) == hash && idEquals(t.arena, ref - 1, productId)) {
+                INT_VIEW.setRelease(t.index, position + 4, TOMBSTONE);
+                size--;
+                tombstones++;
+                return true;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long offHeapBytes() {
+        Tables t = tables;
+        return (long) t.capacity * SLOT_BYTES + t.arena.capacity();
+    }
+
+    /**
+     * Writes the dictionary to {@code file} atomically, so it can later be mapped with {@link #open(Path)}.
+     */
+    public synchronized void writeSnapshot(Path file) throws IOException {
+        Tables t = tables;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(t.capacity).putInt(size).putInt(tombstones).putInt(t.arenaUsed);
+            header.clear();
+            writeFully(channel, header);
+            writeFully(channel, t.index.duplicate().clear());
+            writeFully(channel, t.arena.duplicate().clear().limit(t.arenaUsed));
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Tables ensureArena(int bytes) {
+        Tables t = tables;
+        if (t.arena.capacity() - t.arenaUsed >= bytes) {
+            return t;
+        }
+        long required = (long) t.arenaUsed + bytes;
+        long grown = Math.max(required, (long) t.arena.capacity() * 2);
+        if (required > MAX_ARENA_BYTES) {
+            throw new IllegalStateException("Product dictionary arena exceeds 2 GB");
+        }
+        ByteBuffer arena = ByteBuffer.allocateDirect((int) Math.min(grown, MAX_ARENA_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        arena.put(0, t.arena, 0, t.arenaUsed);
+        // readers still on the old tables must not see slots that point past the end of the old arena
+        ByteBuffer index = ByteBuffer.allocateDirect(t.capacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        index.put(0, t.index, 0, t.capacity * SLOT_BYTES);
+        Tables grownTables = new Tables(index, t.capacity, arena, t.arenaUsed);
+        tables = grownTables;
+        return grownTables;
+    }
+
+    private void rehash(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Product dictionary index exceeds " + MAX_CAPACITY + " slots");
+        }
+        Tables t = tables;
+        ByteBuffer index = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int mask = capacity - 1;
+        for (int position = 0; position < t.capacity * SLOT_BYTES; position += SLOT_BYTES) {
+            int ref = t.index.getInt(position + 4);
+            if (ref == EMPTY || ref == TOMBSTONE) {
+                continue;
+            }
+            int hash = t.index.getInt(position);
+            int slot = hash & mask;
+            while (index.getInt(slot * SLOT_BYTES + 4) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            index.putInt(slot * SLOT_BYTES, hash);
+            index.putInt(slot * SLOT_BYTES + 4, ref);
+        }
+        tombstones = 0;
+        tables = new Tables(index, capacity, t.arena, t.arenaUsed);
+    }
+
+    /**
+     * Returns the offset of the entry for {@code productId} in the arena of {@code t}, or {@code -1}
+     * if it is absent.
+     */
+    private static int find(Tables t, String productId) {
+        int hash = spread(productId.hashCode());
+        int mask = t.capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slot * SLOT_BYTES;
+            int ref = (int) INT_VIEW.getAcquire(t.index, position + 4);
+            if (ref == EMPTY) {
+                return -1;
+            }
+            if (ref != TOMBSTONE && t.index.getInt(position) == hash && idEquals(t.arena, ref - 1, productId)) {
+                return ref - 1;
+            }
+        }
+    }
+
+    private String name(Tables t, int entry) {
+        int slot = (entry * 0x9E3779B9) >>> (Integer.SIZE - DECODED_BITS);
+        Decoded cached = decoded[slot];
+        if (cached != null && cached.entry() == entry) {
+            return cached.name();
+        }
+        ByteBuffer arena = t.arena;
+        int idLength = Short.toUnsignedInt(arena.getShort(entry));
+        int nameLength = Short.toUnsignedInt(arena.getShort(entry + 2));
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < nameLength) {
+            scratch = new byte[Integer.highestOneBit(nameLength) << 1];
+            SCRATCH.set(scratch);
+        }
+        arena.get(entry + 4 + idLength, scratch, 0, nameLength);
+        String name = new String(scratch, 0, nameLength, StandardCharsets.UTF_8);
+        // racy but safe: a reader sees either no entry, an older one, or this one fully built
+        decoded[slot] = new Decoded(entry, name);
+        return name;
+    }
+
+    /**
+     * Compares the UTF-8 id stored at {@code entry} with {@code productId} without decoding it to a String.
+     */
+    private static boolean idEquals(ByteBuffer arena, int entry, String productId) {
+        int idLength = Short.toUnsignedInt(arena.getShort(entry));
+        int position = entry + 4;
+        int end = position + idLength;
+        int i = 0;
+        int length = productId.length();
+        while (position < end) {
+            int b = arena.get(position) & 0xFF;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                position += 1;
+            } else if (b < 0xE0) {
+                codePoint = ((b & 0x1F) << 6) | (arena.get(position + 1) & 0x3F);
+                position += 2;
+            } else if (b < 0xF0) {
+                codePoint = ((b & 0x0F) << 12) | ((arena.get(position + 1) & 0x3F) << 6)
+                        | (arena.get(position + 2) & 0x3F);
+                position += 3;
+            } else {
+                codePoint = ((b & 0x07) << 18) | ((arena.get(position + 1) & 0x3F) << 12)
+                        | ((arena.get(position + 2) & 0x3F) << 6) | (arena.get(position + 3) & 0x3F);
+                position += 4;
+            }
+            if (i >= length || productId.codePointAt(i) != codePoint) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return i == length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Index slots for {@code expectedSize} products, at most {@code MAX_CAPACITY}; a larger
+     * dictionary fails when it outgrows the index.
+     */
+    static int initialCapacity(int expectedSize) {
+        long slots = (long) (Math.max(16, expectedSize) / (double) LOAD_FACTOR);
+        return tableSizeFor((int) Math.min(slots, MAX_CAPACITY));
+    }
+
+    /**
+     * Arena bytes for {@code expectedSize} products of about 32 bytes each, at most 2 GB.
+     */
+    static int initialArenaBytes(int expectedSize) {
+        return (int) Math.min(Math.max(4096, expectedSize * 32L), MAX_ARENA_BYTES);
+    }
+
+    private static int tableSizeFor(int n) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+    }
+
+    private record Decoded(int entry, String name) {
+    }
+
+    private static final class Tables {
+        final ByteBuffer index;
+        final int capacity;
+        final ByteBuffer arena;
+        int arenaUsed;
+
+        Tables(ByteBuffer index, int capacity, ByteBuffer arena, int arenaUsed) {
+            this.index = index;
+            this.capacity = capacity;
+            this.arena = arena;
+            this.arenaUsed = arenaUsed;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.capybara.trade.enricher.cache;
+
+/**
+ * Local product-name cache in front of Redis. Implementations are bounded and also remember
+ * ids that Redis does not know, so unknown products do not cause a round trip on every trade.
+ */
+public interface ProductCache {
+
+    /**
+     * Returns the cached product name, or {@code null} when the id is not cached.
+     */
+    String get(String productId);
+
+    /**
+     * Returns {@code true} when the id was recently looked up and not found.
+     */
+    boolean isKnownMissing(String productId);
+
+    void put(String productId, String productName);
+
+    void putMissing(String productId);
+
+    void invalidate(String productId);
+
+    void invalidateMissing();
+
+    void recordLoad(long loadTimeNanos);
+
+    long size();
+
+    ProductCacheStats stats();
+
+    /**
+     * Persists the cache contents when the implementation supports it, so a restart can reuse them.
+     */
+    default void persist() {
+    }
+}
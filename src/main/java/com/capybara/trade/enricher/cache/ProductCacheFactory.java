@@ -0,0 +1,13 @@
+package com.capybara.trade.enricher.cache;
+
+/**
+ * Creates empty {@link ProductCache} instances of the configured type, one per cache generation.
+ */
+@FunctionalInterface
+public interface ProductCacheFactory {
+
+    /**
+     * @param restore whether to start from a persisted snapshot when the implementation keeps one
+     */
+    ProductCache create(boolean restore);
+}
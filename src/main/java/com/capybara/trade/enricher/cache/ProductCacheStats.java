@@ -0,0 +1,26 @@
+package com.capybara.trade.enricher.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record ProductCacheStats(
+        String type,
+        long size,
+        long hits,
+        long misses,
+        long negativeHits,
+        long evictions,
+        long loads,
+        long totalLoadTimeNanos,
+        long version) {
+
+    @JsonProperty
+    public double hitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @JsonProperty
+    public double averageLoadTimeMillis() {
+        return loads == 0 ? 0.0 : totalLoadTimeNanos / 1_000_000.0 / loads;
+    }
+}
@@ -0,0 +1,16 @@
+package com.capybara.trade.enricher.cache;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Stores formatted trade responses by key, for the result cache of repeated submissions.
+ * Stores evict entries on their own, by size and age.
+ */
+public interface TradeResultStore {
+
+    Mono<byte[]> get(String key);
+
+    Mono<Void> put(String key, byte[] result);
+
+    String type();
+}
@@ -0,0 +1,164 @@
+package com.capybara.trade.enricher.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link ProductCache} that is replaced as a whole on reload. A reload fills a new generation in the
+ * background while readers keep using the current one, then swaps it in with a single volatile
+ * write, so a half-loaded cache is never visible.
+ * <p>
+ * Product changes that arrive during a reload are applied to both generations and win over the
+ * values read by the reload, which may be older. Counters of retired generations are carried over,
+ * so {@link #stats()} stays monotonic.
+ */
+public class VersionedProductCache implements ProductCache {
+    private final ProductCacheFactory factory;
+    private final Object reloadLock = new Object();
+    private final Set<String> changedDuringReload = new HashSet<>();
+    private volatile ProductCache current;
+    private ProductCache next;
+    private volatile long version;
+    private ProductCacheStats retired;
+
+    public VersionedProductCache(ProductCacheFactory factory) {
+        this.factory = factory;
+        this.current = factory.create(true);
+    }
+
+    @Override
+    public String get(String productId) {
+        return current.get(productId);
+    }
+
+    @Override
+    public boolean isKnownMissing(String productId) {
+        return current.isKnownMissing(productId);
+    }
+
+    @Override
+    public void put(String productId, String productName) {
+        current.put(productId, productName);
+    }
+
+    @Override
+    public void putMissing(String productId) {
+        current.putMissing(productId);
+    }
+
+    @Override
+    public void invalidate(String productId) {
+        current.invalidate(productId);
+    }
+
+    @Override
+    public void invalidateMissing() {
+        current.invalidateMissing();
+    }
+
+    @Override
+    public void recordLoad(long loadTimeNanos) {
+        current.recordLoad(loadTimeNanos);
+    }
+
+    @Override
+    public long size() {
+        return current.size();
+    }
+
+    @Override
+    public void persist() {
+        current.persist();
+    }
+
+    @Override
+    public ProductCacheStats stats() {
+        synchronized (reloadLock) {
+            ProductCacheStats stats = current.stats();
+            if (retired == null) {
+                return withVersion(stats, 0, 0, 0, 0, 0, 0);
+            }
+            return withVersion(stats, retired.hits(), retired.misses(), retired.negativeHits(),
+                    retired.evictions(), retired.loads(), retired.totalLoadTimeNanos());
+        }
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Applies a product change to the current generation and to a reload in progress.
+     *
+     * @param productName the new name, or {@code null} when the product was deleted
+     */
+    public void apply(String productId, String productName) {
+        synchronized (reloadLock) {
+            if (next != null) {
+                changedDuringReload.add(productId);
+                apply(next, productId, productName);
+            }
+        }
+        apply(current, productId, productName);
+    }
+
+    /**
+     * Starts filling a new, empty generation. A reload already in progress is discarded.
+     */
+    public void beginReload() {
+        ProductCache created = factory.create(false);
+        synchronized (reloadLock) {
+            changedDuringReload.clear();
+            next = created;
+        }
+    }
+
+    /**
+     * Adds a product read by the reload, unless it changed since the reload started.
+     */
+    public void putReloaded(String productId, String productName) {
+        synchronized (reloadLock) {
+            if (next != null && !changedDuringReload.contains(productId)) {
+                next.put(productId, productName);
+            }
+        }
+    }
+
+    /**
+     * Makes the reloaded generation current and returns its version.
+     */
+    public long commitReload() {
+        synchronized (reloadLock) {
+            if (next == null) {
+                return version;
+            }
+            retired = stats();
+            current = next;
+            next = null;
+            changedDuringReload.clear();
+            return ++version;
+        }
+    }
+
+    public void abortReload() {
+        synchronized (reloadLock) {
+            next = null;
+            changedDuringReload.clear();
+        }
+    }
+
+    private static void apply(ProductCache cache, String productId, String productName) {
+        if (productName != null) {
+            cache.put(productId, productName);
+        } else {
+            cache.invalidate(productId);
+        }
+    }
+
+    private ProductCacheStats withVersion(ProductCacheStats stats, long hits, long misses, long negativeHits,
+                                          long evictions, long loads, long loadTimeNanos) {
+        return new ProductCacheStats(stats.type(), stats.size(), stats.hits() + hits, stats.misses() + misses,
+                stats.negativeHits() + negativeHits, stats.evictions() + evictions, stats.loads() + loads,
+                stats.totalLoadTimeNanos() + loadTimeNanos, version);
+    }
+}
@@ -0,0 +1,110 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.exception.AdmissionRejectedException;
+import com.capybara.trade.enricher.service.AdmissionControl;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies {@link AdmissionControl} to the trade endpoints before their bodies are read, so rejected
+ * requests cost no more than their headers. The buffered endpoint holds its body bytes until the
+ * response is written; the streaming endpoint only takes a slot, as its memory does not grow with
+ * the body.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+public class AdmissionWebFilter implements WebFilter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionWebFilter.class);
+    private static final String TRADE_PATH = "/api/v1/trade";
+    private static final String STREAM_PATH = "/api/v1/trade/stream";
+
+    private final AdmissionControl admissionControl;
+
+    @Value("${trade.admission.client-header:X-Client-Id}")
+    private String clientHeader;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!admissionControl.isEnabled() || request.getMethod() != HttpMethod.POST
+                || !(TRADE_PATH.equals(path) || STREAM_PATH.equals(path))) {
+            return chain.filter(exchange);
+        }
+        boolean buffered = TRADE_PATH.equals(path);
+        long contentLength = request.getHeaders().getContentLength();
+        String contentType = String.valueOf(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        return admissionControl.admit(client(request), contentType, buffered ? Math.max(0, contentLength) : 0)
+                .flatMap(permit -> chain.filter(buffered && contentLength < 0
+                                ? exchange.mutate().request(counting(request, permit)).build()
+                                : exchange)
+                        .doFinally(signal -> permit.release()))
+                .onErrorResume(AdmissionRejectedException.class, e -> reject(exchange.getResponse(), e));
+    }
+
+    private String client(ServerHttpRequest request) {
+        String client = request.getHeaders().getFirst(clientHeader);
+        if (client != null) {
+            return client;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress == null ? "unknown" : remoteAddress.getHostString();
+    }
+
+    /**
+     * Reserves the bytes of a body without a Content-Length as they arrive.
+     */
+    private ServerHttpRequest counting(ServerHttpRequest request, AdmissionControl.Permit permit) {
+        return new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return super.getBody().handle((buffer, sink) -> {
+                    try {
+                        permit.reserve(buffer.readableByteCount());
+                        sink.next(buffer);
+                    } catch (AdmissionRejectedException e) {
+                        DataBufferUtils.release(buffer);
+                        sink.error(e);
+                    }
+                });
+            }
+        };
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, AdmissionRejectedException e) {
+        if (response.isCommitted()) {
+            return Mono.error(e);
+        }
+        logger.debug("Rejected trade request ({}): {}", e.getReason(), e.getMessage());
+        response.setStatusCode(e.getStatus());
+        if (e.getRetryAfter() != null) {
+            long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        }
+        response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        return response.writeWith(Mono.just(response.bufferFactory()
+                .wrap(e.getMessage().getBytes(StandardCharsets.UTF_8))));
+    }
+}
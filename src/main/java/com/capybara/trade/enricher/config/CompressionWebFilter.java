@@ -0,0 +1,208 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.io.ContentCoding;
+import com.capybara.trade.enricher.io.DataBufferOutputStream;
+import com.capybara.trade.enricher.io.DataBufferSubscriberInputStream;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Content-encoding for the trade endpoints. Request bodies sent with {@code Content-Encoding: gzip}
+ * or {@code zstd} are decompressed as they arrive. Responses are compressed with the coding the
+ * client prefers in {@code Accept-Encoding}, as a streaming stage over the formatted output: each
+ * chunk of a streamed response is compressed and flushed on its own, so clients can decode it on
+ * arrival. Buffered responses below {@code trade.compression.min-response-size} are sent as they
+ * are, since compressing them would cost more latency than it saves.
+ * <p>
+ * Runs before {@link AdmissionWebFilter}, so admission accounts for decompressed body bytes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class CompressionWebFilter implements WebFilter {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionWebFilter.class);
+    private static final String TRADE_PATH = "/api/v1/trade";
+    private static final int DECODE_PREFETCH = 4;
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    @Value("${trade.compression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trade.compression.min-response-size:8KB}")
+    private DataSize minResponseSize;
+
+    @Value("${trade.compression.gzip-level:6}")
+    private int gzipLevel;
+
+    @Value("${trade.compression.zstd-level:3}")
+    private int zstdLevel;
+
+    @Value("${trade.compression.buffer-size:64KB}")
+    private DataSize bufferSize;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!enabled || !(path.equals(TRADE_PATH) || path.startsWith(TRADE_PATH + "/"))) {
+            return chain.filter(exchange);
+        }
+
+        ServerWebExchange.Builder mutated = exchange.mutate();
+        String contentEncoding = request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            ContentCoding coding = ContentCoding.of(contentEncoding);
+            if (coding == null) {
+                return reject(exchange.getResponse(), contentEncoding);
+            }
+            mutated.request(decoding(request, coding, exchange.getResponse().bufferFactory()));
+        }
+        ContentCoding responseCoding = ContentCoding.negotiate(request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        exchange.getResponse().getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (responseCoding != null) {
+            mutated.response(encoding(exchange.getResponse(), responseCoding));
+        }
+        return chain.filter(mutated.build());
+    }
+
+    private ServerHttpRequest decoding(ServerHttpRequest request, ContentCoding coding,
+                                       DataBufferFactory bufferFactory) {
+        ServerHttpRequest stripped = request.mutate()
+                .headers(headers -> {
+                    headers.remove(HttpHeaders.CONTENT_ENCODING);
+                    headers.remove(HttpHeaders.CONTENT_LENGTH);
+                })
+                .build();
+        int chunkSize = (int) bufferSize.toBytes();
+        return new ServerHttpRequestDecorator(stripped) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                // the decoder blocks on the compressed body, so it reads on the bounded elastic scheduler
+                return DataBufferUtils.readInputStream(() -> coding.decoder(
+                                DataBufferSubscriberInputStream.subscribe(super.getBody(), DECODE_PREFETCH), chunkSize),
+                        bufferFactory, chunkSize)
+                        .subscribeOn(Schedulers.boundedElastic());
+            }
+        };
+    }
+
+    private ServerHttpResponse encoding(ServerHttpResponse response, ContentCoding coding) {
+        return new ServerHttpResponseDecorator(response) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                if (getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                    return super.writeWith(body);
+                }
+                if (body instanceof Mono<? extends DataBuffer> single) {
+                    return single.flatMap(buffer -> {
+                        if (buffer.readableByteCount() < minResponseSize.toBytes()) {
+                            return super.writeWith(Mono.just(buffer));
+                        }
+                        return encode(Mono.just(buffer), coding, bufferFactory())
+                                .collectList()
+                                .flatMap(chunks -> {
+                                    DataBuffer encoded = bufferFactory().join(chunks);
+                                    getHeaders().set(HttpHeaders.CONTENT_ENCODING, coding.token());
+                                    getHeaders().setContentLength(encoded.readableByteCount());
+                                    return super.writeWith(Mono.just(encoded));
+                                });
+                    });
+                }
+                getHeaders().set(HttpHeaders.CONTENT_ENCODING, coding.token());
+                getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                return super.writeWith(encode(body, coding, bufferFactory()));
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                return writeWith(Flux.concat(body));
+            }
+        };
+    }
+
+    /**
+     * Compresses {@code body} buffer by buffer, flushing the encoder after each one so every input
+     * chunk yields an output chunk.
+     */
+    private Flux<DataBuffer> encode(Publisher<? extends DataBuffer> body, ContentCoding coding,
+                                    DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            int chunkSize = (int) bufferSize.toBytes();
+            DataBufferOutputStream out = new DataBufferOutputStream(bufferFactory, OUTPUT_BUFFER_SIZE);
+            OutputStream encoder;
+            try {
+                encoder = coding.encoder(out, coding == ContentCoding.GZIP ? gzipLevel : zstdLevel, chunkSize);
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+            byte[] copy = new byte[OUTPUT_BUFFER_SIZE];
+            Flux<DataBuffer> chunks = Flux.<DataBuffer>from(body).handle((buffer, sink) -> {
+                try {
+                    while (buffer.readableByteCount() > 0) {
+                        int length = Math.min(copy.length, buffer.readableByteCount());
+                        buffer.read(copy, 0, length);
+                        encoder.write(copy, 0, length);
+                    }
+                    encoder.flush();
+                    sink.next(out.take());
+                } catch (IOException e) {
+                    sink.error(e);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            });
+            return Flux.concat(chunks, Mono.fromCallable(() -> {
+                        encoder.close();
+                        return out.take();
+                    }))
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            closeQuietly(encoder);
+                            out.discard();
+                        }
+                    });
+        });
+    }
+
+    private static void closeQuietly(OutputStream encoder) {
+        try {
+            encoder.close();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to close response encoder: {}", e.getMessage());
+        }
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, String contentEncoding) {
+        logger.debug("Rejected trade request with Content-Encoding {}", contentEncoding);
+        response.setStatusCode(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        return response.writeWith(Mono.just(response.bufferFactory()
+                .wrap(("Unsupported Content-Encoding: " + contentEncoding).getBytes(StandardCharsets.UTF_8))));
+    }
+}
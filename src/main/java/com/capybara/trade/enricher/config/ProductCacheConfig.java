@@ -0,0 +1,45 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.cache.CaffeineProductCache;
+import com.capybara.trade.enricher.cache.LruProductCache;
+import com.capybara.trade.enricher.cache.OffHeapProductCache;
+import com.capybara.trade.enricher.cache.ProductCacheFactory;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class ProductCacheConfig {
+
+    @Bean
+    public ProductCacheFactory productCacheFactory(
+            @Value("${product.cache.type:caffeine}") String type,
+            @Value("${product.cache.max-size:1000000}") long maxSize,
+            @Value("${product.cache.max-memory:0B}") DataSize maxMemory,
+            @Value("${product.cache.missing.max-size:100000}") long maxMissingSize,
+            @Value("${product.cache.missing.ttl:5m}") Duration missingTtl,
+            @Value("${product.cache.offheap.expected-size:1000000}") int expectedSize,
+            @Value("${product.cache.offheap.snapshot:}") String snapshot) {
+        Path snapshotPath = snapshot.isBlank() ? null : Path.of(snapshot);
+        return switch (type.toLowerCase()) {
+            case "caffeine" -> restore -> new CaffeineProductCache(maxSize, maxMemory.toBytes(), maxMissingSize, missingTtl);
+            case "lru" -> restore -> new LruProductCache(maxSize, maxMissingSize, missingTtl);
+            case "offheap" -> restore -> new OffHeapProductCache(expectedSize, snapshotPath, restore,
+                    maxMissingSize, missingTtl);
+            default -> throw new IllegalArgumentException("Unknown product.cache.type: " + type);
+        };
+    }
+
+    @Bean
+    public VersionedProductCache productCache(ProductCacheFactory productCacheFactory, EnrichmentMetrics metrics) {
+        VersionedProductCache cache = new VersionedProductCache(productCacheFactory);
+        metrics.bindProductCache(cache);
+        return cache;
+    }
+}
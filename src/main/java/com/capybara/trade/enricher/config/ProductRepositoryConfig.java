@@ -0,0 +1,35 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.repository.EmbeddedProductRepository;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import java.nio.file.Path;
+
+@Configuration
+public class ProductRepositoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "product.repository", havingValue = "redis", matchIfMissing = true)
+    public RedisProductRepository redisProductRepository(
+            ReactiveRedisTemplate<String, Product> reactiveRedisTemplate,
+            ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+            @Value("${product.redis.layout:hash}") String layout,
+            @Value("${product.redis.buckets:8192}") int buckets) {
+        return new RedisProductRepository(reactiveRedisTemplate, reactiveStringRedisTemplate,
+                RedisProductRepository.Layout.valueOf(layout.toUpperCase()), buckets);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "product.repository", havingValue = "embedded")
+    public EmbeddedProductRepository embeddedProductRepository(
+            @Value("${product.embedded.index:data/products.sst}") String index) {
+        return new EmbeddedProductRepository(Path.of(index));
+    }
+}
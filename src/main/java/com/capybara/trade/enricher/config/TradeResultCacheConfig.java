@@ -0,0 +1,22 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.cache.LocalTradeResultStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+public class TradeResultCacheConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "trade.result-cache.store", havingValue = "local")
+    public LocalTradeResultStore localTradeResultStore(
+            @Value("${trade.result-cache.max-size:256MB}") DataSize maxSize,
+            @Value("${trade.result-cache.ttl:10m}") Duration ttl) {
+        return new LocalTradeResultStore(maxSize.toBytes(), ttl);
+    }
+}
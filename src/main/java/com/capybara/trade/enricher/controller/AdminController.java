@@ -0,0 +1,92 @@
+package com.capybara.trade.enricher.controller;
+
+import com.capybara.trade.enricher.cache.ProductCacheStats;
+import com.capybara.trade.enricher.metrics.InMemoryTraceExporter;
+import com.capybara.trade.enricher.metrics.TraceView;
+import com.capybara.trade.enricher.service.ProductLoadResult;
+import com.capybara.trade.enricher.service.ProductLoaderService;
+import com.capybara.trade.enricher.service.ProductMappingService;
+import com.capybara.trade.enricher.service.ShardInfo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/admin")
+@RequiredArgsConstructor
+public class AdminController {
+    private final ProductMappingService productMappingService;
+    private final ProductLoaderService productLoaderService;
+    private final InMemoryTraceExporter traceExporter;
+
+    @GetMapping("/cache/stats")
+    public ProductCacheStats cacheStats() {
+        return productMappingService.cacheStats();
+    }
+
+    @GetMapping("/products/load")
+    public ProductLoadResult productLoad() {
+        return productLoaderService.progress();
+    }
+
+    /**
+     * Loads the product file again, writing only what changed when a snapshot of the last load exists.
+     */
+    @PostMapping("/products/load")
+    public Mono<ProductLoadResult> reloadProducts() {
+        return productLoaderService.load();
+    }
+
+    @GetMapping("/shards")
+    public ShardInfo shards() {
+        return productMappingService.shardInfo();
+    }
+
+    /**
+     * Replaces the cluster members, given as the nodes' base URLs, and reloads the product cache
+     * when this node's shard changed. Rejected when sharding is disabled or this node is not a member.
+     */
+    @PutMapping("/shards")
+    public Mono<ResponseEntity<ShardInfo>> updateShards(@RequestBody List<String> nodes) {
+        ShardInfo current = productMappingService.shardInfo();
+        if (!current.enabled()) {
+            return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(current));
+        }
+        if (!nodes.contains(current.self())) {
+            return Mono.just(ResponseEntity.badRequest().body(current));
+        }
+        return productMappingService.updateShardMembers(nodes).map(ResponseEntity::ok);
+    }
+
+    /**
+     * The last sampled trade requests with their stage timings, newest first.
+     */
+    @GetMapping("/traces")
+    public List<TraceView> recentTraces() {
+        return traceExporter.recent();
+    }
+
+    /**
+     * The slowest sampled trade requests since startup or the last reset, slowest first.
+     */
+    @GetMapping("/traces/slow")
+    public List<TraceView> slowTraces() {
+        return traceExporter.slowest();
+    }
+
+    @DeleteMapping("/traces/slow")
+    public ResponseEntity<Void> clearSlowTraces() {
+        traceExporter.clearSlowest();
+        return ResponseEntity.noContent().build();
+    }
+}
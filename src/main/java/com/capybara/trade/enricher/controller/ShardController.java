@@ -0,0 +1,28 @@
+package com.capybara.trade.enricher.controller;
+
+import com.capybara.trade.enricher.service.ProductMappingService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Peer-fetch endpoint of the sharded product cache: other nodes post the ids of this node's shard
+ * and receive the names that are known.
+ */
+@RestController
+@RequestMapping("/api/v1/internal")
+@RequiredArgsConstructor
+public class ShardController {
+    private final ProductMappingService productMappingService;
+
+    @PostMapping("/products")
+    public Mono<Map<String, String>> lookupProducts(@RequestBody List<String> productIds) {
+        return productMappingService.lookupOwned(productIds);
+    }
+}
@@ -1,15 +1,24 @@
 package com.capybara.trade.enricher.controller;
 
 import com.capybara.trade.enricher.exception.TradeValidationException;
+import com.capybara.trade.enricher.metrics.RequestTrace;
+import com.capybara.trade.enricher.metrics.RequestTracer;
+import com.capybara.trade.enricher.service.BinaryTradeFormat;
 import com.capybara.trade.enricher.service.TradeService;
+import com.capybara.trade.enricher.service.TradeWriter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+
 
 @RestController
 @RequestMapping("/api/v1")
@@ -17,29 +26,73 @@ import reactor.core.publisher.Mono;
 public class TradeController {
     private static final Logger logger = LoggerFactory.getLogger(TradeController.class);
     private final TradeService tradeService;
+    private final RequestTracer tracer;
 
     @PostMapping(value = "/trade")
-    public Mono<ResponseEntity<String>> handleTrade(
-            @RequestBody String trade,
-            @RequestHeader("Content-Type") String contentType) {
+    public Mono<ResponseEntity<DataBuffer>> handleTrade(
+            @RequestBody byte[] trade,
+            @RequestHeader("Content-Type") String contentType,
+            @RequestHeader(value = "Accept", required = false) String accept,
+            ServerHttpResponse response) {
         if (!isValidContentType(contentType)) {
             return Mono.just(ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
                     .header("Content-Type", "text/plain")
-                    .body("Unsupported Content-Type"));
+                    .body(unsupportedContentType(response)));
         }
 
-
-        return tradeService.enrichTrades(trade, contentType)
+        String responseType = responseType(contentType, accept);
+        RequestTrace requestTrace = tracer.start("POST /api/v1/trade", contentType);
+        requestTrace.count("request_bytes", trade.length);
+        Mono<ResponseEntity<DataBuffer>> enriched = tradeService
+                .enrichTrades(trade, contentType, responseType, response.bufferFactory())
                 .doOnError(TradeValidationException.class, e -> logger.error("Trade validation error: {}", e.getMessage()))
                 .map(res -> ResponseEntity.ok()
-                        .header("Content-Type", contentType)
-                        .body(res));
+                        .header("Content-Type", responseType)
+                        .body(res))
+                .onErrorResume(TradeValidationException.class, e -> Mono.just(ResponseEntity.badRequest()
+                        .header("Content-Type", "text/plain")
+                        .body(response.bufferFactory().wrap(e.getMessage().getBytes(StandardCharsets.UTF_8)))));
+        return tracer.trace(requestTrace, enriched);
+    }
+
+    @PostMapping(value = "/trade/stream")
+    public ResponseEntity<Flux<DataBuffer>> handleTradeStream(
+            @RequestBody Flux<DataBuffer> trades,
+            @RequestHeader("Content-Type") String contentType,
+            @RequestHeader(value = "Accept", required = false) String accept,
+            ServerHttpResponse response) {
+        if (!isValidContentType(contentType)) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .header("Content-Type", "text/plain")
+                    .body(Flux.just(unsupportedContentType(response)));
+        }
+
+        String responseType = responseType(contentType, accept);
+        RequestTrace requestTrace = tracer.start("POST /api/v1/trade/stream", contentType);
+        return ResponseEntity.ok()
+                .header("Content-Type", responseType)
+                .body(tracer.trace(requestTrace,
+                        tradeService.enrichTradeStream(trades, contentType, responseType, response.bufferFactory())));
+    }
+
+    /**
+     * Responses use the request format, unless the client accepts the dictionary-encoded JSON variant.
+     */
+    private String responseType(String contentType, String accept) {
+        return accept != null && accept.toLowerCase().contains(TradeWriter.DICTIONARY_JSON)
+                ? TradeWriter.DICTIONARY_JSON
+                : contentType;
+    }
+
+    private DataBuffer unsupportedContentType(ServerHttpResponse response) {
+        return response.bufferFactory().wrap("Unsupported Content-Type".getBytes(StandardCharsets.UTF_8));
     }
 
     private boolean isValidContentType(String contentType) {
         return "text/csv".equalsIgnoreCase(contentType)
                 || "application/json".equalsIgnoreCase(contentType)
-                || "application/xml".equalsIgnoreCase(contentType);
+                || "application/xml".equalsIgnoreCase(contentType)
+                || BinaryTradeFormat.CONTENT_TYPE.equalsIgnoreCase(contentType);
     }
 
 }
\ No newline at end of file
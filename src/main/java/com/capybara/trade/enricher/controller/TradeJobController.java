@@ -0,0 +1,66 @@
+package com.capybara.trade.enricher.controller;
+
+import com.capybara.trade.enricher.service.BinaryTradeFormat;
+import com.capybara.trade.enricher.service.TradeJobService;
+import com.capybara.trade.enricher.service.TradeJobStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Bulk enrichment jobs: submit a trade file, poll its progress and download the result once the
+ * job has completed.
+ */
+@RestController
+@RequestMapping("/api/v1/jobs")
+@RequiredArgsConstructor
+public class TradeJobController {
+    private final TradeJobService tradeJobService;
+
+    @PostMapping
+    public Mono<ResponseEntity<TradeJobStatus>> submit(
+            @RequestBody Flux<DataBuffer> trades,
+            @RequestHeader("Content-Type") String contentType) {
+        if (!isValidContentType(contentType)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build());
+        }
+        return tradeJobService.submit(trades, contentType)
+                .map(status -> ResponseEntity.accepted()
+                        .location(URI.create("/api/v1/jobs/" + status.id()))
+                        .body(status));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<TradeJobStatus> status(@PathVariable String id) {
+        return ResponseEntity.of(tradeJobService.status(id));
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Flux<DataBuffer>> result(@PathVariable String id) {
+        return tradeJobService.status(id)
+                .map(status -> status.state() == TradeJobStatus.State.COMPLETED
+                        ? ResponseEntity.ok()
+                        .header("Content-Type", status.contentType())
+                        .body(tradeJobService.result(id))
+                        : ResponseEntity.status(HttpStatus.CONFLICT).<Flux<DataBuffer>>build())
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable String id) {
+        return tradeJobService.delete(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private boolean isValidContentType(String contentType) {
+        return "text/csv".equalsIgnoreCase(contentType)
+                || "application/json".equalsIgnoreCase(contentType)
+                || "application/xml".equalsIgnoreCase(contentType)
+                || BinaryTradeFormat.CONTENT_TYPE.equalsIgnoreCase(contentType);
+    }
+}
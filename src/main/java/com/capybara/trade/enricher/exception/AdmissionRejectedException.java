@@ -0,0 +1,34 @@
+package com.capybara.trade.enricher.exception;
+
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a trade request is turned away by admission control. {@code retryAfter} is {@code null}
+ * when retrying the same request cannot succeed.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    private final HttpStatus status;
+    private final String reason;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(HttpStatus status, String reason, Duration retryAfter, String message) {
+        super(message, null, false, false);
+        this.status = status;
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
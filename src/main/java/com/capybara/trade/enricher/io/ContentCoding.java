@@ -0,0 +1,126 @@
+package com.capybara.trade.enricher.io;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content codings supported for trade request and response bodies.
+ */
+public enum ContentCoding {
+    ZSTD("zstd") {
+        @Override
+        public OutputStream encoder(OutputStream out, int level, int bufferSize) throws IOException {
+            return new ZstdOutputStream(out, level);
+        }
+
+        @Override
+        public InputStream decoder(InputStream in, int bufferSize) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        public OutputStream encoder(OutputStream out, int level, int bufferSize) throws IOException {
+            // sync flush, so each flushed chunk of a streamed response can be decoded on arrival
+            return new GZIPOutputStream(out, bufferSize, true) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decoder(InputStream in, int bufferSize) throws IOException {
+            return new GZIPInputStream(in, bufferSize);
+        }
+    };
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    /**
+     * Wraps {@code out} in a compressing stream; {@code flush()} emits everything written so far.
+     */
+    public abstract OutputStream encoder(OutputStream out, int level, int bufferSize) throws IOException;
+
+    public abstract InputStream decoder(InputStream in, int bufferSize) throws IOException;
+
+    /**
+     * Returns the coding named by a {@code Content-Encoding} value, or {@code null} if unsupported.
+     */
+    public static ContentCoding of(String contentEncoding) {
+        String name = contentEncoding.trim();
+        for (ContentCoding coding : values()) {
+            if (coding.token.equalsIgnoreCase(name) || coding == GZIP && "x-gzip".equalsIgnoreCase(name)) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the coding a client accepts with the highest quality from an {@code Accept-Encoding}
+     * value, preferring zstd on ties, or {@code null} if it accepts neither. A wildcard only
+     * stands for gzip, which every client sending one can be expected to decode.
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        ContentCoding best = null;
+        double bestQuality = 0;
+        double wildcard = -1;
+        double[] qualities = new double[values().length];
+        Arrays.fill(qualities, -1);
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim();
+            double quality = quality(parts);
+            if ("*".equals(name)) {
+                wildcard = quality;
+            } else {
+                ContentCoding coding = of(name);
+                if (coding != null) {
+                    qualities[coding.ordinal()] = quality;
+                }
+            }
+        }
+        for (ContentCoding coding : values()) {
+            double quality = qualities[coding.ordinal()] >= 0 ? qualities[coding.ordinal()]
+                    : coding == GZIP ? wildcard : -1;
+            if (quality > bestQuality) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.capybara.trade.enricher.io;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} that writes into buffers allocated from a {@link DataBufferFactory}.
+ * {@link #take()} hands the bytes written so far to the caller and starts a new buffer, so one
+ * stream can produce the successive chunks of a response. {@link #discard()} may be called from
+ * another thread (e.g. on cancellation); writes after it are dropped.
+ */
+public class DataBufferOutputStream extends OutputStream {
+    private final DataBufferFactory bufferFactory;
+    private final int initialCapacity;
+    private DataBuffer buffer;
+    private boolean discarded;
+
+    public DataBufferOutputStream(DataBufferFactory bufferFactory, int initialCapacity) {
+        this.bufferFactory = bufferFactory;
+        this.initialCapacity = Math.max(16, initialCapacity);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (!discarded) {
+            current(1).write((byte) b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        if (!discarded) {
+            current(length).write(bytes, offset, length);
+        }
+    }
+
+    public synchronized int size() {
+        return buffer == null ? 0 : buffer.readableByteCount();
+    }
+
+    /**
+     * Returns the bytes written since the last call; the caller owns the returned buffer.
+     */
+    public synchronized DataBuffer take() {
+        DataBuffer taken = buffer != null ? buffer : bufferFactory.allocateBuffer(0);
+        buffer = null;
+        return taken;
+    }
+
+    /**
+     * Releases any bytes not yet taken and ignores further writes.
+     */
+    public synchronized void discard() {
+        discarded = true;
+        if (buffer != null) {
+            DataBufferUtils.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private DataBuffer current(int length) {
+        if (buffer == null) {
+            buffer = bufferFactory.allocateBuffer(Math.max(initialCapacity, length));
+        }
+        buffer.ensureWritable(length);
+        return buffer;
+    }
+}
@@ -0,0 +1,156 @@
+package com.capybara.trade.enricher.io;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Blocking {@link InputStream} view over a {@code Publisher<DataBuffer>}.
+ * At most {@code prefetch} buffers are requested ahead of the reader, so memory
+ * stays bounded by the buffer size no matter how large the body is.
+ * Must only be read from a thread that is allowed to block.
+ */
+public class DataBufferSubscriberInputStream extends InputStream implements Subscriber<DataBuffer> {
+    private static final Object COMPLETE = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final int prefetch;
+
+    private volatile Subscription subscription;
+    private volatile boolean closed;
+    private DataBuffer current;
+    private boolean done;
+
+    private DataBufferSubscriberInputStream(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public static DataBufferSubscriberInputStream subscribe(Publisher<DataBuffer> source, int prefetch) {
+        DataBufferSubscriberInputStream in = new DataBufferSubscriberInputStream(Math.max(1, prefetch));
+        source.subscribe(in);
+        return in;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        subscription = s;
+        if (closed) {
+            s.cancel();
+        } else {
+            s.request(prefetch);
+        }
+    }
+
+    @Override
+    public void onNext(DataBuffer buffer) {
+        if (closed) {
+            DataBufferUtils.release(buffer);
+            return;
+        }
+        queue.offer(buffer);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        queue.offer(new Failure(t));
+    }
+
+    @Override
+    public void onComplete() {
+        queue.offer(COMPLETE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        DataBuffer buffer = nextReadable();
+        return buffer == null ? -1 : buffer.read() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        DataBuffer buffer = nextReadable();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.readableByteCount());
+        buffer.read(bytes, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.readableByteCount();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        releaseCurrent();
+        Object item;
+        while ((item = queue.poll()) != null) {
+            if (item instanceof DataBuffer buffer) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    private DataBuffer nextReadable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || current.readableByteCount() == 0) {
+            if (current != null) {
+                releaseCurrent();
+                subscription.request(1);
+            }
+            if (done) {
+                return null;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for request body");
+            }
+            if (item == COMPLETE) {
+                done = true;
+                return null;
+            }
+            if (item instanceof Failure failure) {
+                done = true;
+                throw new IOException("Request body failed", failure.error());
+            }
+            current = (DataBuffer) item;
+        }
+        return current;
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            DataBufferUtils.release(current);
+            current = null;
+        }
+    }
+
+    private record Failure(Throwable error) {
+    }
+}
@@ -0,0 +1,233 @@
+package com.capybara.trade.enricher.metrics;
+
+import com.capybara.trade.enricher.cache.ProductCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters for each stage of the enrichment pipeline: parsing, product lookups, formatting and the
+ * product file load. Meter names are kept here so the stages only report what happened.
+ * Timers and summaries publish histograms when enabled via
+ * {@code management.metrics.distribution.percentiles-histogram.*}.
+ */
+@Component
+public class EnrichmentMetrics {
+    public static final String INVALID_DATE = "invalid_date";
+    public static final String INVALID_PRICE = "invalid_price";
+    public static final String WRONG_COLUMNS = "wrong_columns";
+    public static final String MALFORMED = "malformed";
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public EnrichmentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Metrics that are recorded into a private registry, for code that runs outside the application.
+     */
+    public static EnrichmentMetrics standalone() {
+        return new EnrichmentMetrics(new SimpleMeterRegistry());
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public void recordParse(String contentType, long nanos, long acceptedRows) {
+        String format = format(contentType);
+        timer("trade.parse", "format", format).record(nanos, TimeUnit.NANOSECONDS);
+        rows(format, "accepted").increment(acceptedRows);
+    }
+
+    public void recordSkippedRows(String contentType, String reason, long count) {
+        if (count > 0) {
+            rows(format(contentType), reason).increment(count);
+        }
+    }
+
+    public void recordFormat(String contentType, long nanos, long bytes) {
+        String format = format(contentType);
+        timer("trade.format", "format", format).record(nanos, TimeUnit.NANOSECONDS);
+        summaries.computeIfAbsent(format, f -> DistributionSummary.builder("trade.output")
+                        .description("Response body size")
+                        .baseUnit("bytes")
+                        .tag("format", f)
+                        .register(registry))
+                .record(bytes);
+    }
+
+    /**
+     * Records how many of one request's product lookups had to go to Redis.
+     */
+    public void recordRemoteLookups(String contentType, long lookups) {
+        summaries.computeIfAbsent("remote:" + format(contentType), key -> DistributionSummary
+                        .builder("trade.request.redis.lookups")
+                        .description("Product lookups per request that missed the local cache")
+                        .tag("format", format(contentType))
+                        .register(registry))
+                .record(lookups);
+    }
+
+    public void recordLookup(String result, long nanos) {
+        timer("product.lookup", "result", result).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one Redis round trip of the lookup batcher.
+     */
+    public void recordLookupBatch(String outcome, int size, long nanos) {
+        timer("product.lookup.batch", "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+        summaries.computeIfAbsent("batch-size", key -> DistributionSummary.builder("product.lookup.batch.size")
+                        .description("Product ids per MGET")
+                        .register(registry))
+                .record(size);
+    }
+
+    public void recordLoaderBatch(String outcome, int products, long nanos) {
+        timer("product.loader.batch", "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+        if ("success".equals(outcome)) {
+            counter("product.loader.products", "outcome", "loaded").increment(products);
+        }
+    }
+
+    public void recordLoad(long nanos, long invalidLines, String outcome) {
+        timer("product.loader.load", "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+        counter("product.loader.products", "outcome", "invalid").increment(invalidLines);
+    }
+
+    /**
+     * Publishes the cache's own counters, so hits and misses are counted once, in the cache.
+     */
+    public void bindProductCache(ProductCache cache) {
+        String type = cache.stats().type();
+        FunctionCounter.builder("product.cache.gets", cache, c -> c.stats().hits())
+                .tags("type", type, "result", "hit").register(registry);
+        FunctionCounter.builder("product.cache.gets", cache, c -> c.stats().misses())
+                .tags("type", type, "result", "miss").register(registry);
+        FunctionCounter.builder("product.cache.gets", cache, c -> c.stats().negativeHits())
+                .tags("type", type, "result", "negative_hit").register(registry);
+        FunctionCounter.builder("product.cache.evictions", cache, c -> c.stats().evictions())
+                .tag("type", type).register(registry);
+        Gauge.builder("product.cache.size", cache, ProductCache::size)
+                .tag("type", type).register(registry);
+        Gauge.builder("product.cache.hit.ratio", cache, c -> c.stats().hitRatio())
+                .tag("type", type).register(registry);
+        Gauge.builder("product.cache.version", cache, c -> c.stats().version())
+                .description("Number of full reloads swapped in")
+                .tag("type", type).register(registry);
+    }
+
+    /**
+     * Publishes the size and hit ratio of the near-cache of foreign product shards, which is
+     * replaced whenever the cluster members change.
+     */
+    public void bindNearCache(Supplier<ProductCache> nearCache) {
+        Gauge.builder("product.shard.near.cache.size", () -> nearCache.get().size()).register(registry);
+        Gauge.builder("product.shard.near.cache.hit.ratio", () -> nearCache.get().stats().hitRatio()).register(registry);
+    }
+
+    /**
+     * Records one lookup request to the node owning a product shard.
+     */
+    public void recordPeerBatch(String node, String outcome, int size, long nanos) {
+        timer("product.shard.peer.batch", "node", node, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+        counter("product.shard.peer.products", "node", node).increment(size);
+    }
+
+    /**
+     * Records product changes applied to the local cache from Redis notifications.
+     */
+    public void recordProductChanges(String kind, long count) {
+        counter("product.sync.changes", "kind", kind).increment(count);
+    }
+
+    public void recordTradeJob(String contentType, String outcome, long nanos) {
+        timer("trade.job", "format", format(contentType), "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Publishes the number of bulk enrichment jobs in each state.
+     */
+    public <S extends Enum<S>> void bindTradeJobs(Class<S> states, ToDoubleFunction<S> jobsInState) {
+        for (S state : states.getEnumConstants()) {
+            Gauge.builder("trade.jobs", () -> jobsInState.applyAsDouble(state))
+                    .tag("state", state.name().toLowerCase())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Publishes the admission controller's occupancy, so a load balancer can steer away from busy nodes.
+     */
+    public void bindAdmission(Supplier<Number> active, Supplier<Number> queued, Supplier<Number> inFlightBytes) {
+        Gauge.builder("trade.admission.active", active)
+                .description("Admitted trade requests in progress")
+                .register(registry);
+        Gauge.builder("trade.admission.queued", queued)
+                .description("Trade requests waiting for an enrichment slot")
+                .register(registry);
+        Gauge.builder("trade.admission.in.flight", inFlightBytes)
+                .description("Request body bytes held by admitted trade requests")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public void recordAdmissionRejection(String contentType, String reason) {
+        counter("trade.admission.rejections", "format", format(contentType), "reason", reason).increment();
+    }
+
+    public void recordAdmissionWait(long nanos) {
+        timer("trade.admission.wait").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a lookup in the trade result cache: a {@code hit}, a {@code miss}, or whether the
+     * computed result was {@code stored} or {@code skipped}.
+     */
+    public void recordResultCache(String store, String result) {
+        counter("trade.result.cache", "store", store, "result", result).increment();
+    }
+
+    private Counter rows(String format, String outcome) {
+        return counter("trade.rows", "format", format, "outcome", outcome);
+    }
+
+    private Counter counter(String name, String... tags) {
+        return counters.computeIfAbsent(key(name, tags), key -> Counter.builder(name).tags(tags).register(registry));
+    }
+
+    private Timer timer(String name, String... tags) {
+        return timers.computeIfAbsent(key(name, tags), key -> Timer.builder(name).tags(tags).register(registry));
+    }
+
+    private static String key(String name, String... tags) {
+        return name + ':' + String.join(":", tags);
+    }
+
+    private static String format(String contentType) {
+        return switch (contentType.toLowerCase()) {
+            case "text/csv" -> "csv";
+            case "application/json" -> "json";
+            case "application/xml" -> "xml";
+            case "application/x-trade-batch" -> "binary";
+            case "application/x-trade-dictionary+json" -> "json_dictionary";
+            default -> "other";
+        };
+    }
+}
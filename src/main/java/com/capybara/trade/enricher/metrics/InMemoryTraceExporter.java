@@ -0,0 +1,67 @@
+package com.capybara.trade.enricher.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps traces in process, without a collector: a ring buffer of the last
+ * {@code trade.tracing.recent-size} traces, and the {@code trade.tracing.slow-size} slowest ones
+ * since startup or the last {@link #clearSlowest()}.
+ */
+@Component
+public class InMemoryTraceExporter implements TraceExporter {
+    private final TraceView[] recent;
+    private final PriorityQueue<TraceView> slowest = new PriorityQueue<>(
+            Comparator.comparingDouble(TraceView::durationMillis));
+    private final int slowSize;
+    private long exported;
+
+    public InMemoryTraceExporter(@Value("${trade.tracing.recent-size:100}") int recentSize,
+                                 @Value("${trade.tracing.slow-size:20}") int slowSize) {
+        this.recent = new TraceView[Math.max(1, recentSize)];
+        this.slowSize = slowSize;
+    }
+
+    @Override
+    public synchronized void export(TraceView trace) {
+        recent[(int) (exported++ % recent.length)] = trace;
+        if (slowSize <= 0) {
+            return;
+        }
+        if (slowest.size() < slowSize) {
+            slowest.add(trace);
+        } else if (trace.durationMillis() > slowest.peek().durationMillis()) {
+            slowest.poll();
+            slowest.add(trace);
+        }
+    }
+
+    /**
+     * The last traces, newest first.
+     */
+    public synchronized List<TraceView> recent() {
+        List<TraceView> traces = new ArrayList<>();
+        for (long i = exported - 1; i >= 0 && i >= exported - recent.length; i--) {
+            traces.add(recent[(int) (i % recent.length)]);
+        }
+        return traces;
+    }
+
+    /**
+     * The slowest traces, slowest first.
+     */
+    public synchronized List<TraceView> slowest() {
+        List<TraceView> traces = new ArrayList<>(slowest);
+        traces.sort(Comparator.comparingDouble(TraceView::durationMillis).reversed());
+        return traces;
+    }
+
+    public synchronized void clearSlowest() {
+        slowest.clear();
+    }
+}
@@ -0,0 +1,120 @@
+package com.capybara.trade.enricher.metrics;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings of one sampled trade request: spans of its stages, stages that repeat many times (such as
+ * product lookups) folded into one aggregate each, and counters such as rows and cache misses.
+ * Stages report from any thread. Requests that are not sampled carry {@link #NONE}, which records
+ * nothing.
+ */
+public class RequestTrace {
+    public static final RequestTrace NONE = new RequestTrace("", "", "");
+
+    private final String id;
+    private final String name;
+    private final String contentType;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final List<TraceView.Span> spans = new ArrayList<>();
+    private final Map<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private volatile long durationNanos = -1;
+    private volatile String outcome;
+
+    RequestTrace(String name, String contentType) {
+        this(Long.toHexString(ThreadLocalRandom.current().nextLong()), name, contentType);
+    }
+
+    private RequestTrace(String id, String name, String contentType) {
+        this.id = id;
+        this.name = name;
+        this.contentType = contentType;
+    }
+
+    public boolean isRecording() {
+        return this != NONE;
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos} ({@link System#nanoTime()}) and ends now.
+     */
+    public void span(String stage, long startNanos) {
+        if (this == NONE) {
+            return;
+        }
+        long end = System.nanoTime();
+        synchronized (spans) {
+            spans.add(new TraceView.Span(stage, millis(startNanos - this.startNanos), millis(end - startNanos)));
+        }
+    }
+
+    /**
+     * Adds one occurrence of a repeated stage that took {@code nanos}.
+     */
+    public void accumulate(String stage, long nanos) {
+        if (this == NONE) {
+            return;
+        }
+        aggregates.computeIfAbsent(stage, key -> new Aggregate()).add(nanos);
+    }
+
+    public void count(String counter, long amount) {
+        if (this == NONE || amount == 0) {
+            return;
+        }
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Ends the trace, returning {@code false} if it had ended already.
+     */
+    synchronized boolean finish(String outcome) {
+        if (this.outcome != null) {
+            return false;
+        }
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.outcome = outcome;
+        return true;
+    }
+
+    TraceView view() {
+        List<TraceView.Span> spanViews;
+        synchronized (spans) {
+            spanViews = List.copyOf(spans);
+        }
+        Map<String, TraceView.Aggregate> aggregateViews = new LinkedHashMap<>();
+        aggregates.forEach((stage, aggregate) -> aggregateViews.put(stage, aggregate.view()));
+        Map<String, Long> counterViews = new LinkedHashMap<>();
+        counters.forEach((counter, value) -> counterViews.put(counter, value.sum()));
+        return new TraceView(id, name, contentType, startedAt, millis(durationNanos), outcome, spanViews,
+                aggregateViews, counterViews);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class Aggregate {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized TraceView.Aggregate view() {
+            return new TraceView.Aggregate(count, millis(totalNanos), millis(maxNanos));
+        }
+    }
+}
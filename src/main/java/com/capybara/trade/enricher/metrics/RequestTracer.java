@@ -0,0 +1,114 @@
+package com.capybara.trade.enricher.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.ContextView;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts a {@link RequestTrace} for {@code trade.tracing.sample-rate} of the trade requests and
+ * hands it to the {@link TraceExporter}s when the request ends. The trace travels in the Reactor
+ * context, so stages find it with {@link #current} and time themselves with {@link #span}. With
+ * sampling off, which is the default, no trace is created and stages only look up the context.
+ */
+@Component
+public class RequestTracer {
+    private static final Logger logger = LoggerFactory.getLogger(RequestTracer.class);
+    private static final String CONTEXT_KEY = RequestTracer.class.getName() + ".trace";
+
+    private final List<TraceExporter> exporters;
+
+    @Value("${trade.tracing.sample-rate:0}")
+    private double sampleRate;
+
+    public RequestTracer(List<TraceExporter> exporters) {
+        this.exporters = exporters;
+    }
+
+    /**
+     * Returns a new trace if this request is sampled, or {@link RequestTrace#NONE}.
+     */
+    public RequestTrace start(String name, String contentType) {
+        if (sampleRate <= 0 || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return RequestTrace.NONE;
+        }
+        return new RequestTrace(name, contentType);
+    }
+
+    /**
+     * Makes {@code trace} current for {@code request} and exports it when the request terminates.
+     */
+    public <T> Mono<T> trace(RequestTrace trace, Mono<T> request) {
+        if (!trace.isRecording()) {
+            return request;
+        }
+        // a Mono has succeeded once it emits, so a subscriber that cancels right after the value does not count as
+        // a cancellation
+        return request.doOnSuccess(value -> finish(trace, SignalType.ON_COMPLETE))
+                .doFinally(signal -> finish(trace, signal))
+                .contextWrite(context -> context.put(CONTEXT_KEY, trace));
+    }
+
+    public <T> Flux<T> trace(RequestTrace trace, Flux<T> request) {
+        if (!trace.isRecording()) {
+            return request;
+        }
+        return request.doFinally(signal -> finish(trace, signal))
+                .contextWrite(context -> context.put(CONTEXT_KEY, trace));
+    }
+
+    /**
+     * The trace of the request {@code context} belongs to, or {@link RequestTrace#NONE}.
+     */
+    public static RequestTrace current(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, RequestTrace.NONE);
+    }
+
+    /**
+     * Records {@code stage} as a span from subscription to termination of {@code mono}.
+     */
+    public static <T> Mono<T> span(String stage, Mono<T> mono) {
+        return Mono.deferContextual(context -> {
+            RequestTrace trace = current(context);
+            if (!trace.isRecording()) {
+                return mono;
+            }
+            long start = System.nanoTime();
+            AtomicBoolean ended = new AtomicBoolean();
+            Runnable end = () -> {
+                if (ended.compareAndSet(false, true)) {
+                    trace.span(stage, start);
+                }
+            };
+            // ends when the value is emitted, before the request can finish downstream of it
+            return mono.doOnSuccess(value -> end.run()).doFinally(signal -> end.run());
+        });
+    }
+
+    private void finish(RequestTrace trace, SignalType signal) {
+        boolean finished = trace.finish(switch (signal) {
+            case ON_COMPLETE -> "completed";
+            case ON_ERROR -> "failed";
+            default -> "cancelled";
+        });
+        if (!finished) {
+            return;
+        }
+        TraceView view = trace.view();
+        for (TraceExporter exporter : exporters) {
+            try {
+                exporter.export(view);
+            } catch (RuntimeException e) {
+                logger.warn("Trace exporter {} failed: {}", exporter.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.capybara.trade.enricher.metrics;
+
+/**
+ * Receives every finished, sampled request trace.
+ */
+public interface TraceExporter {
+
+    void export(TraceView trace);
+}
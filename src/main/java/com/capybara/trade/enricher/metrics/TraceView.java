@@ -0,0 +1,27 @@
+package com.capybara.trade.enricher.metrics;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finished {@link RequestTrace}, as exported. Times are in milliseconds; span starts are relative
+ * to the start of the request.
+ */
+public record TraceView(
+        String id,
+        String name,
+        String contentType,
+        Instant startedAt,
+        double durationMillis,
+        String outcome,
+        List<Span> spans,
+        Map<String, Aggregate> aggregates,
+        Map<String, Long> counters) {
+
+    public record Span(String stage, double startMillis, double durationMillis) {
+    }
+
+    public record Aggregate(long count, double totalMillis, double maxMillis) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Products kept in a local {@link ProductTable} file instead of Redis, for single-node deployments.
+ * <p>
+ * An existing index file is mapped at startup, so the service is ready without reading the product
+ * CSV again. Products written with {@link #saveAll} are collected by a {@link ProductTable.Writer},
+ * which sorts them in bounded runs on disk, and replace the whole index on {@link #flush()}; until
+ * then readers keep using the previous index. {@link #beginLoad()}
+ * discards what a failed load collected, so it cannot end up in the next index.
+ */
+public class EmbeddedProductRepository implements ProductRepository {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedProductRepository.class);
+
+    private final Path indexFile;
+    private ProductTable.Writer pending;
+    private volatile ProductTable table;
+
+    public EmbeddedProductRepository(Path indexFile) {
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            try {
+                table = ProductTable.open(indexFile);
+                logger.info("Opened product index {} with {} products", indexFile, table.size());
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable product index {}: {}", indexFile, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Mono<List<String>> findNames(List<String> productIds) {
+        return Mono.fromSupplier(() -> {
+            ProductTable current = table;
+            List<String> names = new ArrayList<>(productIds.size());
+            for (String productId : productIds) {
+                names.add(current != null ? current.find(productId) : null);
+            }
+            return names;
+        });
+    }
+
+    @Override
+    public Mono<String> findName(String productId) {
+        return Mono.fromSupplier(() -> {
+            ProductTable current = table;
+            return current != null ? current.find(productId) : null;
+        });
+    }
+
+    @Override
+    public void beginLoad() {
+        ProductTable.Writer discarded = take();
+        if (discarded == null) {
+            return;
+        }
+        logger.warn("Discarding {} products of a load that did not complete", discarded.collected());
+        try {
+            discarded.close();
+        } catch (IOException e) {
+            logger.warn("Failed to remove the products of a load that did not complete: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Mono<Boolean> saveAll(Map<String, String> namesById) {
+        return Mono.fromCallable(() -> {
+                    pending().putAll(namesById);
+                    return true;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Drops products saved since the last flush. Loads of a local repository are always full, so the
+     * index is rebuilt from the saved products and deletes only ever reach products not yet flushed.
+     */
+    @Override
+    public Mono<Boolean> deleteAll(Collection<String> productIds) {
+        return Mono.fromCallable(() -> {
+                    pending().removeAll(productIds);
+                    return true;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Writes the products saved since the last flush as the new index and maps it.
+     */
+    @Override
+    public Mono<Void> flush() {
+        return Mono.<Void>fromCallable(() -> {
+                    long start = System.nanoTime();
+                    ProductTable.Writer products = take();
+                    (products != null ? products : new ProductTable.Writer(indexFile)).finish(indexFile);
+                    table = ProductTable.open(indexFile);
+                    logger.info("Wrote product index {} with {} products in {} ms", indexFile, table.size(),
+                            (System.nanoTime() - start) / 1_000_000);
+                    return null;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private synchronized ProductTable.Writer pending() {
+        if (pending == null) {
+            pending = new ProductTable.Writer(indexFile);
+        }
+        return pending;
+    }
+
+    private synchronized ProductTable.Writer take() {
+        ProductTable.Writer products = pending;
+        pending = null;
+        return products;
+    }
+
+    @Override
+    public Flux<Product> findAll() {
+        return Flux.defer(() -> {
+            ProductTable current = table;
+            return current != null ? Flux.fromIterable(current) : Flux.empty();
+        });
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    /**
+     * The index is current when it is at least as new as the product file it would be built from.
+     */
+    @Override
+    public boolean isCurrent(Resource source) {
+        if (table == null) {
+            return false;
+        }
+        try {
+            return source.lastModified() <= Files.getLastModifiedTime(indexFile).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.capybara.trade.enricher.repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two product sets: the names of inserted and renamed products, and the ids of
+ * removed ones.
+ */
+public record ProductDelta(Map<String, String> upserts, List<String> deletes, long inserted, long updated) {
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && deletes.isEmpty();
+    }
+}
@@ -0,0 +1,93 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Source of truth for product names, behind the local product cache.
+ */
+public interface ProductRepository {
+
+    /**
+     * Returns the names of the given products in the same order, with {@code null} for unknown ids.
+     */
+    Mono<List<String>> findNames(List<String> productIds);
+
+    /**
+     * Returns the name of one product, or completes empty when the id is unknown.
+     */
+    default Mono<String> findName(String productId) {
+        return findNames(List.of(productId)).mapNotNull(names -> names.get(0));
+    }
+
+    /**
+     * Stores product names keyed by product id. Completes with {@code true} once every write succeeded.
+     * Writes may only become visible after {@link #flush()}.
+     */
+    Mono<Boolean> saveAll(Map<String, String> namesById);
+
+    /**
+     * Removes products by id. Completes with {@code true} once every delete succeeded. Deletes may only
+     * become visible after {@link #flush()}, like writes.
+     */
+    Mono<Boolean> deleteAll(Collection<String> productIds);
+
+    /**
+     * Starts writing every product again. Repositories that collect writes until {@link #flush()}
+     * drop the writes of an earlier load that never flushed.
+     */
+    default void beginLoad() {
+    }
+
+    /**
+     * Makes every product written so far visible to readers.
+     */
+    default Mono<Void> flush() {
+        return Mono.empty();
+    }
+
+    /**
+     * Lists every stored product.
+     */
+    Flux<Product> findAll();
+
+    /**
+     * Lists the stored products whose {@link #partition partition} is accepted by {@code owned}.
+     * Repositories partitioned the same way read only the accepted partitions.
+     */
+    default Flux<Product> findAll(int partitions, IntPredicate owned) {
+        return findAll().filter(product -> owned.test(partition(product.getProductId(), partitions)));
+    }
+
+    /**
+     * Whether lookups are answered in-process without I/O waits, so batching them only adds latency.
+     */
+    default boolean isLocal() {
+        return false;
+    }
+
+    /**
+     * Whether the stored products were already built from {@code source}, so loading it again can be skipped.
+     */
+    default boolean isCurrent(Resource source) {
+        return false;
+    }
+
+    /**
+     * Partition of a product: {@code CRC32(productId) mod partitions}, which other writers can compute too.
+     */
+    static int partition(String productId, int partitions) {
+        CRC32 crc = new CRC32();
+        crc.update(productId.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % partitions);
+    }
+}
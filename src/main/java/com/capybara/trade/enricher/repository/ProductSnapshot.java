@@ -0,0 +1,147 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The product set of the last completed load, kept on disk as a {@link ProductTable}, so that loading
+ * a changed product file only has to write the difference.
+ * <p>
+ * The products of a load are {@link #add collected} batch by batch with an external sort, so the
+ * product file is never held on the heap. {@link #stage} writes them as a table next to the snapshot
+ * and compares the two tables in one merge pass, as both are sorted by id; only the difference is
+ * kept. The staged table replaces the snapshot on {@link #commit()}, once the difference has been
+ * applied; until then a failed load can be retried against the old one.
+ */
+public final class ProductSnapshot {
+    private final Path file;
+    private final Path staged;
+    private ProductTable.Writer products;
+
+    public ProductSnapshot(Path file) {
+        this.file = file;
+        this.staged = file.resolveSibling(file.getFileName() + ".next");
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Returns an id of the snapshot, or {@code null} if it holds no products.
+     */
+    public String sampleId() throws IOException {
+        Iterator<Product> products = ProductTable.open(file).iterator();
+        return products.hasNext() ? products.next().getProductId() : null;
+    }
+
+    /**
+     * Collects a batch of the product set being loaded. Batches may arrive in any order and from any
+     * thread; they are sorted in bounded runs spilled next to the snapshot.
+     */
+    public void add(Map<String, String> namesById) throws IOException {
+        collected().putAll(namesById);
+    }
+
+    /**
+     * Replaces the snapshot with the collected products without comparing, after a full load.
+     */
+    public void write() throws IOException {
+        take().finish(file);
+    }
+
+    /**
+     * Writes the collected products as the staged snapshot and returns how it differs from the current
+     * one.
+     */
+    public ProductDelta stage() throws IOException {
+        take().finish(staged);
+        Iterator<Product> before = ProductTable.open(file).iterator();
+        Iterator<Product> after = ProductTable.open(staged).iterator();
+        Map<String, String> upserts = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        long inserted = 0;
+        long updated = 0;
+        Product previous = next(before);
+        Product current = next(after);
+        while (previous != null || current != null) {
+            int order = previous == null ? 1 : current == null ? -1
+                    : compare(previous.getProductId(), current.getProductId());
+            if (order < 0) {
+                deletes.add(previous.getProductId());
+                previous = next(before);
+            } else if (order > 0) {
+                upserts.put(current.getProductId(), current.getProductName());
+                inserted++;
+                current = next(after);
+            } else {
+                if (!previous.getProductName().equals(current.getProductName())) {
+                    upserts.put(current.getProductId(), current.getProductName());
+                    updated++;
+                }
+                previous = next(before);
+                current = next(after);
+            }
+        }
+        return new ProductDelta(upserts, deletes, inserted, updated);
+    }
+
+    public void commit() throws IOException {
+        Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Drops the collected products and the staged snapshot.
+     */
+    public void discard() throws IOException {
+        ProductTable.Writer writer = take();
+        try {
+            writer.close();
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    public void delete() throws IOException {
+        discard();
+        Files.deleteIfExists(file);
+    }
+
+    private synchronized ProductTable.Writer collected() {
+        if (products == null) {
+            products = new ProductTable.Writer(file);
+        }
+        return products;
+    }
+
+    /**
+     * Hands over the collected products, so that the next ones start a new product set.
+     */
+    private synchronized ProductTable.Writer take() {
+        ProductTable.Writer writer = collected();
+        products = null;
+        return writer;
+    }
+
+    private static Product next(Iterator<Product> products) {
+        return products.hasNext() ? products.next() : null;
+    }
+
+    /**
+     * Orders ids as the table stores them, by their unsigned UTF-8 bytes.
+     */
+    private static int compare(String left, String right) {
+        return Arrays.compareUnsigned(left.getBytes(StandardCharsets.UTF_8), right.getBytes(StandardCharsets.UTF_8));
+    }
+}
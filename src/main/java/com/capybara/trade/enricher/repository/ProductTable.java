@@ -0,0 +1,498 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable sorted string table of product names, read through a read-only memory mapping.
+ * <p>
+ * The file holds a header ({@code [int magic][int version][int count][int blocks][int indexOffset]}),
+ * the entries sorted by the unsigned UTF-8 bytes of their id ({@code [u16 idLength][u16 nameLength][id][name]})
+ * and a sparse index with the offset and first id of every block of {@value #BLOCK_ENTRIES} entries.
+ * Only the sparse index is loaded onto the heap: a lookup binary-searches it and scans one block in
+ * the mapping, so opening a table costs one pass over its index and lookups touch a few pages.
+ * Tables are limited to 2 GB. A {@link Writer} builds one from products in any order with an
+ * external merge sort, so only a bounded run of them is on the heap.
+ */
+final class ProductTable implements Iterable<Product> {
+    private static final int MAGIC = 0x50535354;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int BLOCK_ENTRIES = 32;
+    private static final int MAX_FIELD_BYTES = 0xFFFF;
+    private static final int RUN_ENTRIES = 1 << 18;
+
+    private final MappedByteBuffer data;
+    private final int count;
+    private final int indexOffset;
+    private final int[] blockOffsets;
+    private final byte[][] firstIds;
+
+    private ProductTable(MappedByteBuffer data, int count, int indexOffset, int[] blockOffsets, byte[][] firstIds) {
+        this.data = data;
+        this.count = count;
+        this.indexOffset = indexOffset;
+        this.blockOffsets = blockOffsets;
+        this.firstIds = firstIds;
+    }
+
+    /**
+     * Writes a table to a temporary file next to {@code path} and atomically moves it into place, so
+     * readers of an existing table at {@code path} are not affected.
+     */
+    static void write(Path path, Map<String, String> namesById) throws IOException {
+        try (Writer writer = new Writer(path)) {
+            writer.putAll(namesById);
+            writer.finish(path);
+        }
+    }
+
+    /**
+     * Writes the entries of {@code entries}, sorted by id without duplicates, as in {@link #write}.
+     * Removed entries, whose name is {@code null}, are left out. Returns the number of entries written.
+     */
+    private static int write(Path path, Cursor entries) throws IOException {
+        int[] blockOffsets = new int[16];
+        List<byte[]> firstIds = new ArrayList<>();
+        int count = 0;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.write(new byte[HEADER_BYTES]);
+            long offset = HEADER_BYTES;
+            for (byte[][] entry = entries.next(); entry != null; entry = entries.next()) {
+                byte[] id = entry[0];
+                byte[] name = entry[1];
+                if (name == null) {
+                    continue;
+                }
+                if (count % BLOCK_ENTRIES == 0) {
+                    int block = count / BLOCK_ENTRIES;
+                    if (block == blockOffsets.length) {
+                        blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                    }
+                    blockOffsets[block] = (int) offset;
+                    firstIds.add(id);
+                }
+                out.writeShort(id.length);
+                out.writeShort(name.length);
+                out.write(id);
+                out.write(name);
+                count++;
+                offset += 4 + id.length + name.length;
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("Product table exceeds 2 GB: " + path);
+                }
+            }
+            int indexOffset = (int) offset;
+            for (int block = 0; block < firstIds.size(); block++) {
+                byte[] firstId = firstIds.get(block);
+                out.writeInt(blockOffsets[block]);
+                out.writeShort(firstId.length);
+                out.write(firstId);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(count).putInt(firstIds.size()).putInt(indexOffset)
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    static ProductTable open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a product table: " + path);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Not a product table: " + path);
+            }
+            int count = data.getInt(8);
+            int blocks = data.getInt(12);
+            int indexOffset = data.getInt(16);
+            int[] blockOffsets = new int[blocks];
+            byte[][] firstIds = new byte[blocks][];
+            int position = indexOffset;
+            for (int block = 0; block < blocks; block++) {
+                blockOffsets[block] = data.getInt(position);
+                int length = Short.toUnsignedInt(data.getShort(position + 4));
+                firstIds[block] = new byte[length];
+                data.get(position + 6, firstIds[block]);
+                position += 6 + length;
+            }
+            return new ProductTable(data, count, indexOffset, blockOffsets, firstIds);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the name of {@code productId}, or {@code null} if the table does not contain it.
+     */
+    String find(String productId) {
+        byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+        int block = floorBlock(id);
+        if (block < 0) {
+            return null;
+        }
+        int position = blockOffsets[block];
+        int end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : indexOffset;
+        while (position < end) {
+            int idLength = Short.toUnsignedInt(data.getShort(position));
+            int nameLength = Short.toUnsignedInt(data.getShort(position + 2));
+            int comparison = compare(position + 4, idLength, id);
+            if (comparison == 0) {
+                return string(position + 4 + idLength, nameLength);
+            }
+            if (comparison > 0) {
+                return null;
+            }
+            position += 4 + idLength + nameLength;
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<Product> iterator() {
+        return new Iterator<>() {
+            private int position = HEADER_BYTES;
+
+            @Override
+            public boolean hasNext() {
+                return position < indexOffset;
+            }
+
+            @Override
+            public Product next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int idLength = Short.toUnsignedInt(data.getShort(position));
+                int nameLength = Short.toUnsignedInt(data.getShort(position + 2));
+                Product product = new Product(string(position + 4, idLength),
+                        string(position + 4 + idLength, nameLength));
+                position += 4 + idLength + nameLength;
+                return product;
+            }
+        };
+    }
+
+    /**
+     * Returns the last block whose first id is not greater than {@code id}, or {@code -1}.
+     */
+    private int floorBlock(byte[] id) {
+        int low = 0;
+        int high = firstIds.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(firstIds[middle], id) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private int compare(int position, int length, byte[] id) {
+        int common = Math.min(length, id.length);
+        for (int i = 0; i < common; i++) {
+            int difference = Byte.toUnsignedInt(data.get(position + i)) - Byte.toUnsignedInt(id[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - id.length;
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+        data.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects products in any order and writes them as a table without holding them all on the heap.
+     * <p>
+     * Every {@value #RUN_ENTRIES} collected entries are sorted and spilled to a run file next to the
+     * table; {@link #finish} merges the runs into the table in one pass. A later entry for an id
+     * replaces an earlier one, and {@link #removeAll} drops the ids collected so far. Closing a writer
+     * deletes its runs. Writers are thread-safe.
+     */
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final int runEntries;
+        private final List<Path> runs = new ArrayList<>();
+        private final List<Integer> runSizes = new ArrayList<>();
+        private byte[][][] buffer;
+        private int buffered;
+        private long collected;
+        private boolean closed;
+
+        /**
+         * Starts collecting entries, with runs spilled next to {@code path}.
+         */
+        Writer(Path path) {
+            this(path, RUN_ENTRIES);
+        }
+
+        Writer(Path path, int runEntries) {
+            this.path = path;
+            this.runEntries = runEntries;
+            this.buffer = new byte[Math.min(runEntries, 1024)][][];
+        }
+
+        synchronized void putAll(Map<String, String> namesById) throws IOException {
+            for (Map.Entry<String, String> entry : namesById.entrySet()) {
+                byte[] name = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                if (name.length > MAX_FIELD_BYTES) {
+                    throw new IOException("Product " + entry.getKey() + " exceeds " + MAX_FIELD_BYTES + " bytes");
+                }
+                add(entry.getKey(), name);
+            }
+        }
+
+        synchronized void removeAll(Collection<String> productIds) throws IOException {
+            for (String productId : productIds) {
+                add(productId, null);
+            }
+        }
+
+        /**
+         * Returns how many entries were collected, counting every put and removal.
+         */
+        synchronized long collected() {
+            return collected;
+        }
+
+        /**
+         * Writes the collected entries as the table at {@code target}, as {@link ProductTable#write} does,
+         * and returns the number of products in it. The writer is closed afterwards.
+         */
+        synchronized int finish(Path target) throws IOException {
+            ensureOpen();
+            try {
+                if (runs.isEmpty()) {
+                    int size = sort();
+                    return write(target, new Cursor() {
+                        private int next;
+
+                        @Override
+                        public byte[][] next() {
+                            return next < size ? buffer[next++] : null;
+                        }
+                    });
+                }
+                spill();
+                List<Run> readers = new ArrayList<>(runs.size());
+                try {
+                    for (int i = 0; i < runs.size(); i++) {
+                        readers.add(new Run(runs.get(i), runSizes.get(i), i));
+                    }
+                    return write(target, merge(readers));
+                } finally {
+                    for (Run reader : readers) {
+                        reader.close();
+                    }
+                }
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            buffer = null;
+            try {
+                for (Path run : runs) {
+                    Files.deleteIfExists(run);
+                }
+            } finally {
+                runs.clear();
+                runSizes.clear();
+            }
+        }
+
+        private void add(String productId, byte[] name) throws IOException {
+            ensureOpen();
+            byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+            if (id.length > MAX_FIELD_BYTES) {
+                throw new IOException("Product " + productId + " exceeds " + MAX_FIELD_BYTES + " bytes");
+            }
+            if (buffered == buffer.length) {
+                if (buffered == runEntries) {
+                    spill();
+                } else {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffered * 2, runEntries));
+                }
+            }
+            buffer[buffered++] = new byte[][]{id, name};
+            collected++;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Product table writer for " + path + " is closed");
+            }
+        }
+
+        /**
+         * Sorts the buffered entries by id and keeps the last one of each id. Returns how many are left.
+         */
+        private int sort() {
+            // stable, so entries of one id stay in the order they were added
+            Arrays.sort(buffer, 0, buffered, (a, b) -> Arrays.compareUnsigned(a[0], b[0]));
+            int size = 0;
+            for (int i = 0; i < buffered; i++) {
+                if (size > 0 && Arrays.equals(buffer[size - 1][0], buffer[i][0])) {
+                    size--;
+                }
+                buffer[size++] = buffer[i];
+            }
+            Arrays.fill(buffer, size, buffered, null);
+            return size;
+        }
+
+        /**
+         * Writes the sorted buffer as a run of {@code [u16 idLength][int nameLength][id][name]}
+         * entries, with a name length of {@code -1} for a removed id.
+         */
+        private void spill() throws IOException {
+            int size = sort();
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path run = Files.createTempFile(parent, path.getFileName() + ".", ".run");
+            runs.add(run);
+            runSizes.add(size);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                    1 << 16))) {
+                for (int i = 0; i < size; i++) {
+                    byte[] id = buffer[i][0];
+                    byte[] name = buffer[i][1];
+                    out.writeShort(id.length);
+                    out.writeInt(name == null ? -1 : name.length);
+                    out.write(id);
+                    if (name != null) {
+                        out.write(name);
+                    }
+                }
+            }
+            Arrays.fill(buffer, 0, size, null);
+            buffered = 0;
+        }
+
+        /**
+         * Merges sorted runs, taking an id from the latest run that holds it.
+         */
+        private static Cursor merge(List<Run> runs) throws IOException {
+            PriorityQueue<Run> heads = new PriorityQueue<>((a, b) -> {
+                int order = Arrays.compareUnsigned(a.head[0], b.head[0]);
+                return order != 0 ? order : Integer.compare(b.order, a.order);
+            });
+            for (Run run : runs) {
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+            return () -> {
+                Run first = heads.poll();
+                if (first == null) {
+                    return null;
+                }
+                byte[][] entry = first.head;
+                if (first.advance()) {
+                    heads.add(first);
+                }
+                while (!heads.isEmpty() && Arrays.equals(heads.peek().head[0], entry[0])) {
+                    Run older = heads.poll();
+                    if (older.advance()) {
+                        heads.add(older);
+                    }
+                }
+                return entry;
+            };
+        }
+    }
+
+    /**
+     * Entries in id order, ending with {@code null}.
+     */
+    private interface Cursor {
+        byte[][] next() throws IOException;
+    }
+
+    /**
+     * Reads a run written by {@link Writer#spill()}.
+     */
+    private static final class Run implements Closeable {
+        private final DataInputStream in;
+        private final int order;
+        private int remaining;
+        private byte[][] head;
+
+        private Run(Path file, int size, int order) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 15));
+            this.remaining = size;
+            this.order = order;
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            byte[] id = new byte[in.readUnsignedShort()];
+            int nameLength = in.readInt();
+            in.readFully(id);
+            byte[] name = null;
+            if (nameLength >= 0) {
+                name = new byte[nameLength];
+                in.readFully(name);
+            }
+            head = new byte[][]{id, name};
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Product repository in Redis, in one of two layouts.
+ * <p>
+ * {@link Layout#HASH} keeps products in {@code products:{bucket}} hashes whose fields are product ids
+ * and whose values are the raw UTF-8 names. The bucket is {@code CRC32(productId) mod buckets}, so
+ * other writers can compute it too. Small hashes are stored by Redis as compact listpacks, which
+ * makes this layout several times smaller than one key per product; keep
+ * {@code products / buckets} below the server's {@code hash-max-listpack-entries} (128 by default).
+ * Lookups send one {@code HMGET} per bucket touched and a full read is one {@code HSCAN} per bucket.
+ * <p>
+ * {@link Layout#KEYS} is the original layout: one {@code product:<id>} key per product holding the
+ * product as JSON, read with {@code MGET} and listed with {@code SCAN}.
+ */
+public class RedisProductRepository implements ProductRepository {
+    public static final String KEY_PREFIX = "product:";
+    public static final String BUCKET_PREFIX = "products:";
+    private static final int SCAN_COUNT = 1000;
+    private static final int CONCURRENT_BUCKETS = 16;
+
+    public enum Layout {
+        KEYS, HASH
+    }
+
+    private final ReactiveRedisTemplate<String, Product> productTemplate;
+    private final ReactiveHashOperations<String, String, String> hashOperations;
+    private final Layout layout;
+    private final int buckets;
+
+    public RedisProductRepository(ReactiveRedisTemplate<String, Product> productTemplate,
+                                  ReactiveStringRedisTemplate stringTemplate, Layout layout, int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("product.redis.buckets must be positive: " + buckets);
+        }
+        this.productTemplate = productTemplate;
+        this.hashOperations = stringTemplate.opsForHash();
+        this.layout = layout;
+        this.buckets = buckets;
+    }
+
+    public Layout layout() {
+        return layout;
+    }
+
+    public int bucketOf(String productId) {
+        return ProductRepository.partition(productId, buckets);
+    }
+
+    @Override
+    public Mono<List<String>> findNames(List<String> productIds) {
+        if (productIds.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        if (layout == Layout.KEYS) {
+            List<String> keys = productIds.stream().map(id -> KEY_PREFIX + id).toList();
+            return productTemplate.opsForValue().multiGet(keys)
+                    .defaultIfEmpty(List.of())
+                    .map(products -> {
+                        List<String> names = new ArrayList<>(productIds.size());
+                        for (int i = 0; i < productIds.size(); i++) {
+                            Product product = i < products.size() ? products.get(i) : null;
+                            names.add(product != null ? product.getProductName() : null);
+                        }
+                        return names;
+                    });
+        }
+
+        Map<Integer, List<Integer>> positionsByBucket = new HashMap<>();
+        for (int i = 0; i < productIds.size(); i++) {
+            positionsByBucket.computeIfAbsent(bucketOf(productIds.get(i)), bucket -> new ArrayList<>()).add(i);
+        }
+        String[] names = new String[productIds.size()];
+        return Flux.fromIterable(positionsByBucket.entrySet())
+                .flatMap(entry -> {
+                    List<Integer> positions = entry.getValue();
+                    List<String> fields = positions.stream().map(productIds::get).toList();
+                    return hashOperations.multiGet(bucketKey(entry.getKey()), fields)
+                            .doOnNext(values -> {
+                                for (int k = 0; k < positions.size() && k < values.size(); k++) {
+                                    names[positions.get(k)] = values.get(k);
+                                }
+                            });
+                }, CONCURRENT_BUCKETS)
+                .then(Mono.fromSupplier(() -> Arrays.asList(names)));
+    }
+
+    @Override
+    public Mono<Boolean> saveAll(Map<String, String> namesById) {
+        if (namesById.isEmpty()) {
+            return Mono.just(true);
+        }
+        if (layout == Layout.KEYS) {
+            Map<String, Product> products = new LinkedHashMap<>(namesById.size() * 4 / 3 + 1);
+            namesById.forEach((id, name) -> products.put(KEY_PREFIX + id, new Product(id, name)));
+            return productTemplate.opsForValue().multiSet(products);
+        }
+
+        Map<Integer, Map<String, String>> byBucket = new HashMap<>();
+        namesById.forEach((id, name) -> byBucket.computeIfAbsent(bucketOf(id), bucket -> new HashMap<>()).put(id, name));
+        return Flux.fromIterable(byBucket.entrySet())
+                .flatMap(entry -> hashOperations.putAll(bucketKey(entry.getKey()), entry.getValue()), CONCURRENT_BUCKETS)
+                .all(Boolean.TRUE::equals);
+    }
+
+    @Override
+    public Mono<Boolean> deleteAll(Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return Mono.just(true);
+        }
+        if (layout == Layout.KEYS) {
+            return productTemplate.delete(Flux.fromIterable(productIds).map(id -> KEY_PREFIX + id))
+                    .thenReturn(true);
+        }
+
+        Map<Integer, List<String>> byBucket = new HashMap<>();
+        productIds.forEach(id -> byBucket.computeIfAbsent(bucketOf(id), bucket -> new ArrayList<>()).add(id));
+        return Flux.fromIterable(byBucket.entrySet())
+                .flatMap(entry -> hashOperations.remove(bucketKey(entry.getKey()), entry.getValue().toArray()),
+                        CONCURRENT_BUCKETS)
+                .then(Mono.just(true));
+    }
+
+    /**
+     * Lists every stored product without blocking Redis: bucket by bucket with {@code HSCAN}, or
+     * with {@code SCAN} over the product keys.
+     */
+    @Override
+    public Flux<Product> findAll() {
+        if (layout == Layout.KEYS) {
+            return productTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(SCAN_COUNT).build())
+                    .buffer(SCAN_COUNT)
+                    .concatMap(keys -> productTemplate.opsForValue().multiGet(keys)
+                            .flatMapIterable(products -> products)
+                            .filter(Objects::nonNull));
+        }
+        return scanBuckets(bucket -> true);
+    }
+
+    /**
+     * With the hash layout and one partition per bucket, scans only the owned buckets.
+     */
+    @Override
+    public Flux<Product> findAll(int partitions, IntPredicate owned) {
+        if (layout == Layout.HASH && partitions == buckets) {
+            return scanBuckets(owned);
+        }
+        return ProductRepository.super.findAll(partitions, owned);
+    }
+
+    private Flux<Product> scanBuckets(IntPredicate owned) {
+        ScanOptions options = ScanOptions.scanOptions().count(SCAN_COUNT).build();
+        return Flux.range(0, buckets)
+                .filter(owned::test)
+                .flatMap(bucket -> hashOperations.scan(bucketKey(bucket), options)
+                        .map(entry -> new Product(entry.getKey(), entry.getValue())), CONCURRENT_BUCKETS);
+    }
+
+    static String bucketKey(int bucket) {
+        return BUCKET_PREFIX + "{" + bucket + "}";
+    }
+}
@@ -0,0 +1,274 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.exception.AdmissionRejectedException;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides whether a trade request may start, so the node refuses work it cannot finish instead of
+ * running out of heap.
+ * <p>
+ * A request first takes a token from its rate-limit bucket, keyed by client or content type, and is
+ * rejected with 429 when the bucket is empty. It then needs one of {@code trade.admission.max-concurrent}
+ * enrichment slots and room for its body within {@code trade.admission.max-in-flight-bytes}. Requests
+ * that find neither wait in a short FIFO queue; when the queue is full, or the wait exceeds
+ * {@code trade.admission.queue-timeout}, they are rejected with 503.
+ */
+@Service
+@RequiredArgsConstructor
+public class AdmissionControl {
+    public static final String RATE_LIMITED = "rate_limited";
+    public static final String OVERLOADED = "overloaded";
+    public static final String QUEUE_TIMEOUT = "queue_timeout";
+    public static final String IN_FLIGHT_BYTES = "in_flight_bytes";
+    public static final String TOO_LARGE = "too_large";
+
+    private final EnrichmentMetrics metrics;
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private Cache<String, TokenBucket> buckets;
+    private int active;
+    private long inFlightBytes;
+
+    @Value("${trade.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trade.admission.max-concurrent:64}")
+    private int maxConcurrent;
+
+    @Value("${trade.admission.max-queued:128}")
+    private int maxQueued;
+
+    @Value("${trade.admission.queue-timeout:2s}")
+    private Duration queueTimeout;
+
+    @Value("${trade.admission.max-in-flight-bytes:512MB}")
+    private DataSize maxInFlightBytes;
+
+    @Value("${trade.admission.retry-after:1s}")
+    private Duration retryAfter;
+
+    @Value("${trade.admission.rate-limit.key:client}")
+    private String rateLimitKey;
+
+    @Value("${trade.admission.rate-limit.requests-per-second:0}")
+    private double requestsPerSecond;
+
+    @Value("${trade.admission.rate-limit.burst:0}")
+    private int burst;
+
+    @PostConstruct
+    public void start() {
+        buckets = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        metrics.bindAdmission(this::active, this::queued, this::inFlightBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits a request of {@code bytes} body bytes, or fails with {@link AdmissionRejectedException}.
+     * The returned permit must be released when the response is complete.
+     */
+    public Mono<Permit> admit(String client, String contentType, long bytes) {
+        return Mono.defer(() -> {
+            if (bytes > maxInFlightBytes.toBytes()) {
+                return reject(contentType, HttpStatus.PAYLOAD_TOO_LARGE, TOO_LARGE, null,
+                        "Request body exceeds " + maxInFlightBytes);
+            }
+            if (requestsPerSecond > 0) {
+                String key = "content-type".equals(rateLimitKey) ? contentType.toLowerCase() : client;
+                long waitNanos = buckets.get(key, k -> new TokenBucket(requestsPerSecond,
+                        burst > 0 ? burst : Math.max(1, (int) Math.ceil(requestsPerSecond)))).tryTake();
+                if (waitNanos > 0) {
+                    return reject(contentType, HttpStatus.TOO_MANY_REQUESTS, RATE_LIMITED,
+                            Duration.ofNanos(waitNanos), "Rate limit exceeded for " + key);
+                }
+            }
+            Waiter waiter;
+            synchronized (this) {
+                if (waiting.isEmpty() && fits(bytes)) {
+                    return Mono.just(acquire(bytes, contentType));
+                }
+                if (waiting.size() >= maxQueued) {
+                    waiter = null;
+                } else {
+                    waiter = new Waiter(bytes, contentType);
+                    waiting.addLast(waiter);
+                }
+            }
+            if (waiter == null) {
+                return reject(contentType, HttpStatus.SERVICE_UNAVAILABLE, OVERLOADED, retryAfter,
+                        "Too many trade requests in progress");
+            }
+            return waiter.sink.asMono()
+                    .timeout(queueTimeout, Mono.defer(() -> timedOut(waiter)))
+                    .doOnNext(permit -> metrics.recordAdmissionWait(System.nanoTime() - waiter.queuedAt))
+                    .doOnCancel(() -> abandon(waiter));
+        });
+    }
+
+    public synchronized int active() {
+        return active;
+    }
+
+    public synchronized int queued() {
+        return waiting.size();
+    }
+
+    public synchronized long inFlightBytes() {
+        return inFlightBytes;
+    }
+
+    private Mono<Permit> reject(String contentType, HttpStatus status, String reason, Duration retry, String message) {
+        metrics.recordAdmissionRejection(contentType, reason);
+        return Mono.error(new AdmissionRejectedException(status, reason, retry, message));
+    }
+
+    private Mono<Permit> timedOut(Waiter waiter) {
+        synchronized (this) {
+            if (!waiting.remove(waiter)) {
+                // granted while the timeout fired
+                return Mono.just(waiter.permit);
+            }
+        }
+        return reject(waiter.contentType, HttpStatus.SERVICE_UNAVAILABLE, QUEUE_TIMEOUT, retryAfter,
+                "Timed out waiting for an enrichment slot");
+    }
+
+    private void abandon(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            granted = waiting.remove(waiter) ? null : waiter.permit;
+        }
+        if (granted != null) {
+            granted.release();
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return active < maxConcurrent && inFlightBytes + bytes <= maxInFlightBytes.toBytes();
+    }
+
+    private Permit acquire(long bytes, String contentType) {
+        active++;
+        inFlightBytes += bytes;
+        return new Permit(bytes, contentType);
+    }
+
+    private void release(Permit permit) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            active--;
+            inFlightBytes -= permit.bytes;
+            while (!waiting.isEmpty() && fits(waiting.peekFirst().bytes)) {
+                Waiter waiter = waiting.pollFirst();
+                waiter.permit = acquire(waiter.bytes, waiter.contentType);
+                granted.add(waiter);
+            }
+        }
+        // outside the lock, the request continues on this thread
+        granted.forEach(waiter -> waiter.sink.tryEmitValue(waiter.permit));
+    }
+
+    /**
+     * One admitted request: its enrichment slot and the body bytes it holds.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final String contentType;
+        private long bytes;
+
+        private Permit(long bytes, String contentType) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Accounts for body bytes that were not known when the request was admitted, such as those of
+         * a chunked upload.
+         */
+        public void reserve(long more) {
+            synchronized (AdmissionControl.this) {
+                if (released.get()) {
+                    return;
+                }
+                if (inFlightBytes + more > maxInFlightBytes.toBytes()) {
+                    metrics.recordAdmissionRejection(contentType, IN_FLIGHT_BYTES);
+                    throw new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, IN_FLIGHT_BYTES, retryAfter,
+                            "Too many request bytes in flight");
+                }
+                inFlightBytes += more;
+                bytes += more;
+            }
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionControl.this.release(this);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final long bytes;
+        final String contentType;
+        final long queuedAt = System.nanoTime();
+        final Sinks.One<Permit> sink = Sinks.one();
+        Permit permit;
+
+        Waiter(long bytes, String contentType) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Refills continuously at {@code rate} tokens per second up to {@code capacity}.
+     */
+    private static final class TokenBucket {
+        private final double nanosPerToken;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double rate, int capacity) {
+            this.nanosPerToken = 1e9 / rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        /**
+         * Takes a token and returns 0, or returns how long until one is available.
+         */
+        synchronized long tryTake() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) / nanosPerToken);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * nanosPerToken);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.capybara.trade.enricher.service;
+
+/**
+ * Layout of the {@value #CONTENT_TYPE} trade format, a columnar binary format for internal clients.
+ * All numbers are big-endian.
+ * <pre>
+ * document   = header batch* end
+ * header     = int magic ("TRDB") | byte version (1) | byte flags | short reserved (0)
+ * batch      = int rows (1..{@value #MAX_BATCH_ROWS})
+ *              | int[rows] dates as yyyyMMdd
+ *              | double[rows] prices, NaN when missing
+ *              | column productIds | column currencies | column productNames (if flags has ENRICHED)
+ * column     = int entries | entries * (u16 length | UTF-8 bytes) | rows * index
+ * index      = u8 if entries &lt;= 256, u16 if entries &lt;= 65536, otherwise int
+ * end        = int 0
+ * </pre>
+ * String columns are dictionary-encoded per batch, so a product id or currency that repeats within
+ * a batch is stored once. Requests carry no product names; responses set {@link #ENRICHED} and add
+ * the name column, and can be sent back as requests since parsers skip that column.
+ */
+public final class BinaryTradeFormat {
+    public static final String CONTENT_TYPE = "application/x-trade-batch";
+
+    static final int MAGIC = 0x54524442;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int ENRICHED = 1;
+    static final int MAX_BATCH_ROWS = 1 << 20;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private BinaryTradeFormat() {
+    }
+
+    static int indexBytes(int entries) {
+        return entries <= 0x100 ? 1 : entries <= 0x10000 ? 2 : 4;
+    }
+}
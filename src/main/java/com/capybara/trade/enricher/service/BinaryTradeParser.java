@@ -0,0 +1,280 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.capybara.trade.enricher.service.BinaryTradeFormat.ENRICHED;
+import static com.capybara.trade.enricher.service.BinaryTradeFormat.HEADER_BYTES;
+import static com.capybara.trade.enricher.service.BinaryTradeFormat.MAGIC;
+import static com.capybara.trade.enricher.service.BinaryTradeFormat.MAX_BATCH_ROWS;
+import static com.capybara.trade.enricher.service.BinaryTradeFormat.VERSION;
+
+/**
+ * Parser for {@link BinaryTradeFormat} documents.
+ * <p>
+ * Input can be fed in arbitrary chunks; a batch is decoded once all of its bytes have arrived.
+ * Columns are read in place: the only allocations per record are the {@link TradeDTO} and its
+ * price, as dictionary entries and dates are decoded once and reused across batches. Records with
+ * invalid dates are counted and skipped. A malformed or truncated document ends the input after
+ * the trades decoded so far. Instances are not thread-safe; use one per request.
+ */
+public final class BinaryTradeParser {
+    private static final int DATE_CACHE_BITS = 10;
+    private static final int COLUMNS = 3;
+
+    private final ByteStringCache strings = new ByteStringCache(1024);
+    private final int[] dateKeys = new int[1 << DATE_CACHE_BITS];
+    private final String[] dateValues = new String[1 << DATE_CACHE_BITS];
+    private final String[][] dictionaries = new String[COLUMNS][];
+    private final int[] columnStart = new int[COLUMNS];
+    private byte[] window = new byte[8192];
+    private ByteBuffer view = ByteBuffer.wrap(window);
+    private int pending;
+    private boolean started;
+    private boolean headerRead;
+    private boolean enriched;
+    private boolean ended;
+    private String error;
+
+    private long rows;
+    private long invalidDates;
+    private long malformedBatches;
+
+    /**
+     * Parses every complete batch in {@code buffer} into {@code out}. The buffer is not released.
+     */
+    public void feed(DataBuffer buffer, List<TradeDTO> out) {
+        int length = buffer.readableByteCount();
+        ensureCapacity(pending + length);
+        buffer.read(window, pending, length);
+        pending += length;
+        parse(out);
+    }
+
+    public void feed(byte[] bytes, int offset, int length, List<TradeDTO> out) {
+        ensureCapacity(pending + length);
+        System.arraycopy(bytes, offset, window, pending, length);
+        pending += length;
+        parse(out);
+    }
+
+    /**
+     * Parses a complete input in place, without copying it.
+     */
+    public void parseAll(byte[] bytes, List<TradeDTO> out) {
+        byte[] previous = window;
+        window = bytes;
+        view = ByteBuffer.wrap(bytes);
+        pending = bytes.length;
+        try {
+            parse(out);
+            finish(out);
+        } finally {
+            window = previous;
+            view = ByteBuffer.wrap(previous);
+        }
+    }
+
+    /**
+     * Ends the input; a document without its end marker counts as a malformed batch.
+     */
+    public void finish(List<TradeDTO> out) {
+        if (started && !ended && error == null) {
+            fail("Truncated document");
+        }
+        pending = 0;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public long invalidDates() {
+        return invalidDates;
+    }
+
+    public long malformedBatches() {
+        return malformedBatches;
+    }
+
+    /**
+     * Why the input ended early, or {@code null}.
+     */
+    public String error() {
+        return error;
+    }
+
+    private void parse(List<TradeDTO> out) {
+        started |= pending > 0;
+        int position = 0;
+        while (error == null && !ended) {
+            int next = headerRead ? parseBatch(position, out) : parseHeader(position);
+            if (next < 0) {
+                break;
+            }
+            position = next;
+        }
+        if (error != null || ended) {
+            pending = 0;
+        } else if (position > 0) {
+            System.arraycopy(window, position, window, 0, pending - position);
+            pending -= position;
+        }
+    }
+
+    private int parseHeader(int position) {
+        if (pending - position < HEADER_BYTES) {
+            return -1;
+        }
+        if (view.getInt(position) != MAGIC || window[position + 4] != VERSION) {
+            return fail("Not a version " + VERSION + " trade batch document");
+        }
+        enriched = (window[position + 5] & ENRICHED) != 0;
+        headerRead = true;
+        return position + HEADER_BYTES;
+    }
+
+    /**
+     * Decodes one batch starting at {@code position} and returns the start of the next one, or
+     * {@code -1} if the batch has not fully arrived yet.
+     */
+    private int parseBatch(int position, List<TradeDTO> out) {
+        if (pending - position < 4) {
+            return -1;
+        }
+        int count = view.getInt(position);
+        if (count == 0) {
+            ended = true;
+            return position + 4;
+        }
+        if (count < 0 || count > MAX_BATCH_ROWS) {
+            return fail("Invalid batch size " + count);
+        }
+        int datesAt = position + 4;
+        int pricesAt = datesAt + 4 * count;
+        int end = pricesAt + 8 * count;
+        int columns = enriched ? 3 : 2;
+        for (int column = 0; column < columns; column++) {
+            if (end > pending) {
+                return -1;
+            }
+            columnStart[column] = end;
+            end = columnEnd(end, count);
+            if (end < 0) {
+                return end == -1 ? -1 : fail("Invalid dictionary in batch of " + count + " trades");
+            }
+        }
+        if (end > pending) {
+            return -1;
+        }
+
+        int idIndexAt = decodeDictionary(0, count);
+        int currencyIndexAt = decodeDictionary(1, count);
+        String[] productIds = dictionaries[0];
+        String[] currencies = dictionaries[1];
+        int idEntries = view.getInt(columnStart[0]);
+        int currencyEntries = view.getInt(columnStart[1]);
+        for (int row = 0; row < count; row++) {
+            int date = view.getInt(datesAt + 4 * row);
+            if (!TradeDates.isValid(date)) {
+                invalidDates++;
+                continue;
+            }
+            int id = index(idIndexAt, row, idEntries);
+            int currency = index(currencyIndexAt, row, currencyEntries);
+            if (id >= idEntries || currency >= currencyEntries) {
+                return fail("Dictionary index out of range");
+            }
+            double price = view.getDouble(pricesAt + 8 * row);
+            out.add(new TradeDTO(date(date), productIds[id], currencies[currency], Double.isNaN(price) ? null : price));
+        }
+        rows += count;
+        return end;
+    }
+
+    /**
+     * Returns the end of the column at {@code position}, {@code -1} if it has not fully arrived or
+     * {@code -2} if it is malformed.
+     */
+    private int columnEnd(int position, int count) {
+        if (pending - position < 4) {
+            return -1;
+        }
+        int entries = view.getInt(position);
+        if (entries < 0 || entries > count) {
+            return -2;
+        }
+        int p = position + 4;
+        for (int entry = 0; entry < entries; entry++) {
+            if (pending - p < 2) {
+                return -1;
+            }
+            p += 2 + Short.toUnsignedInt(view.getShort(p));
+        }
+        return p + count * BinaryTradeFormat.indexBytes(entries);
+    }
+
+    /**
+     * Decodes the dictionary of a column and returns where its indexes start.
+     */
+    private int decodeDictionary(int column, int count) {
+        int p = columnStart[column];
+        int entries = view.getInt(p);
+        p += 4;
+        String[] dictionary = dictionaries[column];
+        if (dictionary == null || dictionary.length < entries) {
+            dictionary = new String[Math.max(entries, 16)];
+            dictionaries[column] = dictionary;
+        }
+        for (int entry = 0; entry < entries; entry++) {
+            int length = Short.toUnsignedInt(view.getShort(p));
+            dictionary[entry] = strings.get(window, p + 2, length);
+            p += 2 + length;
+        }
+        return p;
+    }
+
+    private int index(int indexAt, int row, int entries) {
+        return switch (BinaryTradeFormat.indexBytes(entries)) {
+            case 1 -> Byte.toUnsignedInt(window[indexAt + row]);
+            case 2 -> Short.toUnsignedInt(view.getShort(indexAt + 2 * row));
+            default -> view.getInt(indexAt + 4 * row);
+        };
+    }
+
+    /**
+     * Returns the {@code yyyyMMdd} string of a date, shared between records with the same date.
+     */
+    private String date(int yyyyMMdd) {
+        int slot = (yyyyMMdd * 0x9E3779B1) >>> (32 - DATE_CACHE_BITS);
+        String value = dateValues[slot];
+        if (value != null && dateKeys[slot] == yyyyMMdd) {
+            return value;
+        }
+        char[] digits = new char[8];
+        for (int i = 7, v = yyyyMMdd; i >= 0; i--, v /= 10) {
+            digits[i] = (char) ('0' + v % 10);
+        }
+        value = new String(digits);
+        dateKeys[slot] = yyyyMMdd;
+        dateValues[slot] = value;
+        return value;
+    }
+
+    private int fail(String reason) {
+        error = reason;
+        malformedBatches++;
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > window.length) {
+            window = Arrays.copyOf(window, Math.max(capacity, window.length * 2));
+            view = ByteBuffer.wrap(window);
+        }
+    }
+}
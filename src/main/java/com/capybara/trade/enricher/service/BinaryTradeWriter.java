@@ -0,0 +1,159 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes enriched trades as a {@link BinaryTradeFormat} document. Trades are collected into column
+ * arrays and written as one batch per {@value #BATCH_ROWS} trades or per {@link #flush()}, so
+ * streamed chunks each end on a batch boundary.
+ */
+final class BinaryTradeWriter implements TradeWriter {
+    private static final int BATCH_ROWS = 4096;
+
+    private final DataOutputStream out;
+    private final int[] dates = new int[BATCH_ROWS];
+    private final double[] prices = new double[BATCH_ROWS];
+    private final Dictionary productIds = new Dictionary();
+    private final Dictionary currencies = new Dictionary();
+    private final Dictionary productNames = new Dictionary();
+    private int rows;
+
+    BinaryTradeWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 8192));
+    }
+
+    @Override
+    public void writeStart() throws IOException {
+        out.writeInt(BinaryTradeFormat.MAGIC);
+        out.writeByte(BinaryTradeFormat.VERSION);
+        out.writeByte(BinaryTradeFormat.ENRICHED);
+        out.writeShort(0);
+    }
+
+    @Override
+    public void write(EnrichedTradeDTO trade) throws IOException {
+        dates[rows] = date(trade.getDate());
+        prices[rows] = trade.getPrice() != null ? trade.getPrice() : Double.NaN;
+        productIds.add(trade.getProductId(), rows);
+        currencies.add(trade.getCurrency(), rows);
+        productNames.add(trade.getProductName(), rows);
+        if (++rows == BATCH_ROWS) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        writeBatch();
+        out.writeInt(0);
+        out.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBatch();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void writeBatch() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        out.writeInt(rows);
+        for (int row = 0; row < rows; row++) {
+            out.writeInt(dates[row]);
+        }
+        for (int row = 0; row < rows; row++) {
+            out.writeDouble(prices[row]);
+        }
+        productIds.write(out, rows);
+        currencies.write(out, rows);
+        productNames.write(out, rows);
+        rows = 0;
+    }
+
+    /**
+     * Converts a {@code yyyyMMdd} date to its integer value, or 0 when it is not eight digits.
+     */
+    private static int date(String date) {
+        if (date == null || date.length() != 8) {
+            return 0;
+        }
+        int value = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = date.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Dictionary-encoded string column of one batch. Missing values are written as empty strings.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> entries = new ArrayList<>();
+        private final int[] indexes = new int[BATCH_ROWS];
+
+        void add(String value, int row) {
+            String key = value != null ? value : "";
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = entries.size();
+                codes.put(key, code);
+                entries.add(key);
+            }
+            indexes[row] = code;
+        }
+
+        void write(DataOutputStream out, int rows) throws IOException {
+            out.writeInt(entries.size());
+            for (String entry : entries) {
+                byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > BinaryTradeFormat.MAX_STRING_BYTES) {
+                    throw new IOException("Value exceeds " + BinaryTradeFormat.MAX_STRING_BYTES + " bytes: "
+                            + entry.substring(0, 32) + "...");
+                }
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            switch (BinaryTradeFormat.indexBytes(entries.size())) {
+                case 1 -> {
+                    for (int row = 0; row < rows; row++) {
+                        out.writeByte(indexes[row]);
+                    }
+                }
+                case 2 -> {
+                    for (int row = 0; row < rows; row++) {
+                        out.writeShort(indexes[row]);
+                    }
+                }
+                default -> {
+                    for (int row = 0; row < rows; row++) {
+                        out.writeInt(indexes[row]);
+                    }
+                }
+            }
+            codes.clear();
+            entries.clear();
+        }
+    }
+}
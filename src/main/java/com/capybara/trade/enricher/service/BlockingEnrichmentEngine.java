@@ -0,0 +1,140 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Imperative alternative to the {@link EnrichmentEngine}, selected with
+ * {@code trade.enrich.mode=blocking}: a request is enriched with plain loops over chunks of
+ * {@code trade.enrich.chunk-size} trades, and the cache misses of a chunk are resolved with one
+ * blocking, batched repository call. There is no Reactor operator per trade, and stack traces and
+ * profiles show the enrichment code itself.
+ * <p>
+ * Chunks run on Spring's {@code applicationTaskExecutor}. On Java 21 with
+ * {@code spring.threads.virtual.enabled=true} that executor starts a virtual thread per task, and
+ * requests run on virtual threads too. Otherwise it is the platform pool configured by
+ * {@code spring.task.execution.pool.*}; requests then wait on the bounded elastic scheduler, so
+ * they cannot occupy the pool threads their chunks need.
+ */
+@Service
+public class BlockingEnrichmentEngine {
+    private final ProductMappingService productMappingService;
+    private final AsyncTaskExecutor taskExecutor;
+    private final Scheduler requestScheduler;
+
+    @Value("${trade.enrich.mode:reactive}")
+    private String mode;
+
+    @Value("${trade.enrich.chunk-size:512}")
+    private int chunkSize;
+
+    @Value("${trade.enrich.blocking.lookup-timeout:30s}")
+    private Duration lookupTimeout;
+
+    @Value("${trade.enrich.intern:true}")
+    private boolean intern;
+
+    @Value("${trade.enrich.intern-max-entries:65536}")
+    private int internMaxEntries;
+
+    public BlockingEnrichmentEngine(ProductMappingService productMappingService,
+                                    @Qualifier("applicationTaskExecutor") AsyncTaskExecutor taskExecutor) {
+        this.productMappingService = productMappingService;
+        this.taskExecutor = taskExecutor;
+        this.requestScheduler = taskExecutor == null || taskExecutor instanceof ThreadPoolTaskExecutor
+                ? Schedulers.boundedElastic()
+                : Schedulers.fromExecutor(taskExecutor);
+    }
+
+    /**
+     * Engine that is switched off, for callers that run without a Spring context.
+     */
+    public static BlockingEnrichmentEngine disabled() {
+        return new BlockingEnrichmentEngine(null, null);
+    }
+
+    public boolean isEnabled() {
+        return "blocking".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Scheduler that whole requests run on, since they block while their chunks are enriched.
+     */
+    public Scheduler requestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * Enriches {@code trades} in input order, blocking the calling thread. A request of one chunk is
+     * enriched on the calling thread; larger ones run the first chunk there and the rest on the
+     * task executor. {@code lookupContext} is the Reactor context of the request, for the lookups of
+     * cache misses.
+     */
+    public List<EnrichedTradeDTO> enrich(List<TradeDTO> trades, ContextView lookupContext) {
+        ValueDictionary dictionary = intern ? new ValueDictionary(internMaxEntries) : null;
+        if (trades.size() <= chunkSize) {
+            return Arrays.asList(enrichChunk(trades, dictionary, lookupContext));
+        }
+        List<CompletableFuture<EnrichedTradeDTO[]>> chunks = new ArrayList<>();
+        for (int from = chunkSize; from < trades.size(); from += chunkSize) {
+            List<TradeDTO> chunk = trades.subList(from, Math.min(from + chunkSize, trades.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> enrichChunk(chunk, dictionary, lookupContext),
+                    taskExecutor));
+        }
+        List<EnrichedTradeDTO> enriched = new ArrayList<>(trades.size());
+        try {
+            enriched.addAll(Arrays.asList(enrichChunk(trades.subList(0, chunkSize), dictionary, lookupContext)));
+            for (CompletableFuture<EnrichedTradeDTO[]> chunk : chunks) {
+                enriched.addAll(Arrays.asList(chunk.join()));
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } finally {
+            chunks.forEach(chunk -> chunk.cancel(false));
+        }
+        return enriched;
+    }
+
+    private EnrichedTradeDTO[] enrichChunk(List<TradeDTO> chunk, ValueDictionary dictionary,
+                                           ContextView lookupContext) {
+        EnrichedTradeDTO[] enriched = new EnrichedTradeDTO[chunk.size()];
+        int[] misses = new int[chunk.size()];
+        List<String> missingIds = new ArrayList<>();
+        for (int i = 0; i < enriched.length; i++) {
+            TradeDTO trade = chunk.get(i);
+            String productName = productMappingService.findCachedProductName(trade.getProductId());
+            if (productName != null) {
+                enriched[i] = EnrichmentEngine.enrich(trade, productName, dictionary);
+            } else {
+                misses[missingIds.size()] = i;
+                missingIds.add(trade.getProductId());
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return enriched;
+        }
+        List<String> names = productMappingService.getProductNames(missingIds)
+                .contextWrite(lookupContext)
+                .block(lookupTimeout);
+        for (int k = 0; k < missingIds.size(); k++) {
+            int i = misses[k];
+            enriched[i] = EnrichmentEngine.enrich(chunk.get(i), names.get(k), dictionary);
+        }
+        return enriched;
+    }
+}
@@ -0,0 +1,35 @@
+package com.capybara.trade.enricher.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Direct-mapped cache from byte ranges to Strings, so highly repetitive fields share instances.
+ */
+final class ByteStringCache {
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+
+    ByteStringCache(int size) {
+        this.keys = new byte[size][];
+        this.values = new String[size];
+        this.mask = size - 1;
+    }
+
+    String get(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        byte[] key = keys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+            return values[slot];
+        }
+        String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+        values[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,68 @@
+package com.capybara.trade.enricher.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring of cluster nodes. Every node is placed at {@code virtualNodes} points on the
+ * ring, and a key belongs to the first node at or after its own hash, so adding or removing a node
+ * only moves the keys next to that node's points.
+ */
+public class ConsistentHashRing {
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodes = List.copyOf(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + '#' + i), node);
+            }
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public String nodeFor(String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Assigns partitions {@code 0..partitions-1} to nodes, so a lookup only needs the partition number.
+     */
+    public String[] assign(int partitions) {
+        String[] owners = new String[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            owners[partition] = nodeFor("partition-" + partition);
+        }
+        return owners;
+    }
+
+    private static long hash(String key) {
+        byte[] digest = md5().digest(key.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = hash << 8 | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
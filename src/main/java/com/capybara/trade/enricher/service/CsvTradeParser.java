@@ -0,0 +1,298 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass, byte-level parser for {@code date,productId,currency,price} trade CSV.
+ * <p>
+ * Input can be fed in arbitrary chunks; an incomplete trailing record is carried over to the next
+ * chunk. Fields may be quoted (RFC 4180, {@code ""} escapes a quote) and are trimmed. Dates are
+ * validated arithmetically and prices are parsed straight from the bytes, so bad rows are counted
+ * and skipped without exceptions. Repeated dates, product ids and currencies reuse the same String.
+ * <p>
+ * The first record is the header and is skipped. Instances are not thread-safe; use one per request.
+ */
+public final class CsvTradeParser {
+    private static final int COLUMNS = 4;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ByteStringCache strings = new ByteStringCache(1024);
+    private final int[] fieldStart = new int[COLUMNS];
+    private final int[] fieldEnd = new int[COLUMNS];
+    private final boolean[] fieldEscaped = new boolean[COLUMNS];
+    private byte[] window = new byte[8192];
+    private int pending;
+    private boolean headerSkipped;
+
+    private long rows;
+    private long invalidDates;
+    private long invalidPrices;
+    private long wrongColumnCounts;
+
+    /**
+     * Parses every complete record in {@code buffer} into {@code out}. The buffer is not released.
+     */
+    public void feed(DataBuffer buffer, List<TradeDTO> out) {
+        int length = buffer.readableByteCount();
+        ensureCapacity(pending + length);
+        buffer.read(window, pending, length);
+        pending += length;
+        parse(out, false);
+    }
+
+    public void feed(byte[] bytes, int offset, int length, List<TradeDTO> out) {
+        ensureCapacity(pending + length);
+        System.arraycopy(bytes, offset, window, pending, length);
+        pending += length;
+        parse(out, false);
+    }
+
+    /**
+     * Parses a complete input in place, without copying it.
+     */
+    public void parseAll(byte[] bytes, List<TradeDTO> out) {
+        byte[] previous = window;
+        window = bytes;
+        pending = bytes.length;
+        try {
+            parse(out, true);
+        } finally {
+            window = previous;
+        }
+    }
+
+    /**
+     * Parses the record left over at the end of the input, if any.
+     */
+    public void finish(List<TradeDTO> out) {
+        parse(out, true);
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public long invalidDates() {
+        return invalidDates;
+    }
+
+    public long invalidPrices() {
+        return invalidPrices;
+    }
+
+    public long wrongColumnCounts() {
+        return wrongColumnCounts;
+    }
+
+    public long skippedRows() {
+        return invalidDates + invalidPrices + wrongColumnCounts;
+    }
+
+    private void parse(List<TradeDTO> out, boolean last) {
+        int position = 0;
+        while (position < pending) {
+            int next = parseRecord(position, last, out);
+            if (next < 0) {
+                break;
+            }
+            position = next;
+        }
+        if (last) {
+            pending = 0;
+        } else if (position > 0) {
+            System.arraycopy(window, position, window, 0, pending - position);
+            pending -= position;
+        }
+    }
+
+    /**
+     * Parses one record starting at {@code position} and returns the start of the next one,
+     * or {@code -1} if the record is not complete yet.
+     */
+    private int parseRecord(int position, boolean last, List<TradeDTO> out) {
+        byte[] b = window;
+        int end = pending;
+        int fields = 0;
+        boolean blank = true;
+        int p = position;
+
+        while (true) {
+            while (p < end && (b[p] == ' ' || b[p] == '\t')) {
+                p++;
+            }
+            int start;
+            int stop;
+            boolean escaped = false;
+            if (p < end && b[p] == '"') {
+                blank = false;
+                start = ++p;
+                while (true) {
+                    if (p >= end) {
+                        return last ? finishRecord(fields, end, out) : -1;
+                    }
+                    if (b[p] == '"') {
+                        if (p + 1 >= end && !last) {
+                            return -1;
+                        }
+                        if (p + 1 < end && b[p + 1] == '"') {
+                            escaped = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                stop = p++;
+                while (p < end && b[p] != ',' && b[p] != '\n') {
+                    p++;
+                }
+            } else {
+                start = p;
+                while (p < end && b[p] != ',' && b[p] != '\n') {
+                    p++;
+                }
+                stop = p;
+                while (stop > start && (b[stop - 1] == ' ' || b[stop - 1] == '\t' || b[stop - 1] == '\r')) {
+                    stop--;
+                }
+                if (stop > start) {
+                    blank = false;
+                }
+            }
+
+            if (p >= end && !last) {
+                return -1;
+            }
+            if (fields < COLUMNS) {
+                fieldStart[fields] = start;
+                fieldEnd[fields] = stop;
+                fieldEscaped[fields] = escaped;
+            }
+            fields++;
+
+            if (p < end && b[p] == ',') {
+                p++;
+                blank = false;
+                continue;
+            }
+            int next = p < end ? p + 1 : end;
+            if (blank && fields == 1) {
+                return next;
+            }
+            return finishRecord(fields, next, out);
+        }
+    }
+
+    private int finishRecord(int fields, int next, List<TradeDTO> out) {
+        if (!headerSkipped) {
+            headerSkipped = true;
+            return next;
+        }
+        rows++;
+        if (fields != COLUMNS) {
+            wrongColumnCounts++;
+            return next;
+        }
+        if (fieldEscaped[0] || !TradeDates.isValid(window, fieldStart[0], fieldEnd[0] - fieldStart[0])) {
+            invalidDates++;
+            return next;
+        }
+        double price = parsePrice(fieldStart[3], fieldEnd[3]);
+        if (Double.isNaN(price)) {
+            invalidPrices++;
+            return next;
+        }
+        out.add(new TradeDTO(field(0), field(1), field(2), price));
+        return next;
+    }
+
+    private String field(int index) {
+        int start = fieldStart[index];
+        int length = fieldEnd[index] - start;
+        if (!fieldEscaped[index]) {
+            return strings.get(window, start, length);
+        }
+        byte[] unescaped = new byte[length];
+        int n = 0;
+        for (int i = start; i < start + length; i++) {
+            unescaped[n++] = window[i];
+            if (window[i] == '"') {
+                i++;
+            }
+        }
+        return new String(unescaped, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a plain decimal such as {@code -123.45} without building a String. Returns NaN when the
+     * field is not a number. Values that cannot be converted exactly on the fast path (more than 15
+     * significant digits or an exponent) fall back to {@link Double#parseDouble}.
+     */
+    private double parsePrice(int start, int end) {
+        if (start >= end) {
+            return Double.NaN;
+        }
+        int p = start;
+        boolean negative = false;
+        if (window[p] == '-' || window[p] == '+') {
+            negative = window[p] == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        boolean exact = true;
+        for (; p < end; p++) {
+            byte c = window[p];
+            if (c >= '0' && c <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (c - '0');
+                } else {
+                    exact = false;
+                }
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c == 'e' || c == 'E') {
+                exact = false;
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (!exact || fraction >= POWERS_OF_TEN.length) {
+            return parseSlow(start, end);
+        }
+        double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseSlow(int start, int end) {
+        try {
+            return Double.parseDouble(new String(window, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > window.length) {
+            window = Arrays.copyOf(window, Math.max(capacity, window.length * 2));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@code date,productName,currency,price} rows straight into a byte buffer. Prices are
+ * formatted with exactly two decimals (rounded half up) without {@code String.format}, so the
+ * output does not depend on the default locale. Fields containing a comma, quote or line break
+ * are quoted as in RFC 4180. Product names and currencies repeat across rows, so their encoded
+ * bytes are kept in an {@link EncodedValueCache}.
+ */
+final class CsvTradeWriter implements TradeWriter {
+    static final String HEADER = "date,productName,currency,price";
+
+    private static final byte[] HEADER_LINE = (HEADER + '\n').getBytes(StandardCharsets.US_ASCII);
+    private static final double MAX_FAST_PRICE = 1e13;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private final byte[] digits = new byte[20];
+    private final EncodedValueCache<byte[]> encoded = new EncodedValueCache<>(CsvTradeWriter::encode);
+    private int count;
+
+    CsvTradeWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void writeStart() throws IOException {
+        writeBytes(HEADER_LINE);
+    }
+
+    @Override
+    public void write(EnrichedTradeDTO trade) throws IOException {
+        writeText(trade.getDate());
+        put(',');
+        writeEncoded(trade.getProductName());
+        put(',');
+        writeEncoded(trade.getCurrency());
+        put(',');
+        writePrice(trade.getPrice());
+        put('\n');
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writePrice(Double price) throws IOException {
+        if (price == null) {
+            return;
+        }
+        double value = price;
+        if (!Double.isFinite(value)) {
+            writeText(Double.toString(value));
+            return;
+        }
+        double scaled = Math.abs(value) * 100;
+        if (Math.abs(value) >= MAX_FAST_PRICE || isNearHalfCent(scaled)) {
+            // prices like 1.005 are a half cent only in their shortest decimal form, which %.2f rounds up
+            writeText(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long cents = Math.round(scaled);
+        if (value < 0 && cents != 0) {
+            put('-');
+        }
+        writeLong(cents / 100);
+        int fraction = (int) (cents % 100);
+        put('.');
+        put('0' + fraction / 10);
+        put('0' + fraction % 10);
+    }
+
+    /**
+     * Whether {@code scaled} is too close to a half cent for its binary value to decide the rounding.
+     */
+    private static boolean isNearHalfCent(double scaled) {
+        double fraction = scaled - Math.floor(scaled);
+        return Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled);
+    }
+
+    private void writeLong(long value) throws IOException {
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        ensureCapacity(digits.length - position);
+        System.arraycopy(digits, position, buffer, count, digits.length - position);
+        count += digits.length - position;
+    }
+
+    private void writeText(String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        boolean quoted = needsQuoting(text);
+        if (quoted) {
+            put('"');
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                String rest = text.substring(i);
+                writeBytes((quoted ? rest.replace("\"", "\"\"") : rest).getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+            if (c == '"') {
+                put('"');
+            }
+            put(c);
+        }
+        if (quoted) {
+            put('"');
+        }
+    }
+
+    private void writeEncoded(String text) throws IOException {
+        if (text != null) {
+            writeBytes(encoded.get(text));
+        }
+    }
+
+    private static byte[] encode(String text) {
+        String field = needsQuoting(text) ? '"' + text.replace("\"", "\"\"") + '"' : text;
+        return field.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean needsQuoting(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flushBuffer();
+            out.write(bytes);
+            return;
+        }
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void put(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (count + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+}
@@ -0,0 +1,143 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the {@value TradeWriter#DICTIONARY_JSON} variant of the JSON output, where each product
+ * name is sent once and trades refer to it by index:
+ * <pre>
+ * [{"productNames":["Bond","Swap"],
+ *   "trades":[{"date":"20240120","productId":"5","currency":"USD","price":100.5,"productNameIndex":0}, ...]},
+ *  {"productNames":["Future"], "trades":[...]}]
+ * </pre>
+ * Trades are written in blocks of up to {@value #BLOCK_TRADES} trades, one per {@link #flush()} when
+ * streaming. Indexes count across the whole response; each block lists only the names first used in
+ * it, which clients append to the names they already have.
+ */
+final class DictionaryJsonTradeWriter implements TradeWriter {
+    private static final int BLOCK_TRADES = 4096;
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final SerializableString PRODUCT_NAMES = new SerializedString("productNames");
+    private static final SerializableString TRADES = new SerializedString("trades");
+    private static final SerializableString DATE = new SerializedString("date");
+    private static final SerializableString PRODUCT_ID = new SerializedString("productId");
+    private static final SerializableString CURRENCY = new SerializedString("currency");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString PRODUCT_NAME_INDEX = new SerializedString("productNameIndex");
+
+    private final JsonGenerator generator;
+    private final EncodedValueCache<SerializableString> encoded = new EncodedValueCache<>(SerializedString::new);
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+    private final List<String> newNames = new ArrayList<>();
+    private final EnrichedTradeDTO[] block = new EnrichedTradeDTO[BLOCK_TRADES];
+    private final int[] blockIndexes = new int[BLOCK_TRADES];
+    private int blockSize;
+
+    DictionaryJsonTradeWriter(OutputStream out) throws IOException {
+        this.generator = jsonFactory.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void writeStart() throws IOException {
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void write(EnrichedTradeDTO trade) throws IOException {
+        blockIndexes[blockSize] = index(trade.getProductName());
+        block[blockSize] = trade;
+        if (++blockSize == BLOCK_TRADES) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        writeBlock();
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    private int index(String productName) {
+        if (productName == null) {
+            return -1;
+        }
+        Integer index = nameIndexes.get(productName);
+        if (index == null) {
+            index = nameIndexes.size();
+            nameIndexes.put(productName, index);
+            newNames.add(productName);
+        }
+        return index;
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockSize == 0) {
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName(PRODUCT_NAMES);
+        generator.writeStartArray();
+        for (String name : newNames) {
+            generator.writeString(name);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(TRADES);
+        generator.writeStartArray();
+        for (int i = 0; i < blockSize; i++) {
+            EnrichedTradeDTO trade = block[i];
+            generator.writeStartObject();
+            generator.writeFieldName(DATE);
+            generator.writeString(trade.getDate());
+            generator.writeFieldName(PRODUCT_ID);
+            generator.writeString(trade.getProductId());
+            generator.writeFieldName(CURRENCY);
+            if (trade.getCurrency() != null) {
+                generator.writeString(encoded.get(trade.getCurrency()));
+            } else {
+                generator.writeNull();
+            }
+            generator.writeFieldName(PRICE);
+            if (trade.getPrice() != null) {
+                generator.writeNumber(trade.getPrice());
+            } else {
+                generator.writeNull();
+            }
+            generator.writeFieldName(PRODUCT_NAME_INDEX);
+            if (blockIndexes[i] >= 0) {
+                generator.writeNumber(blockIndexes[i]);
+            } else {
+                generator.writeNull();
+            }
+            generator.writeEndObject();
+            block[i] = null;
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        newNames.clear();
+        blockSize = 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com.capybara.trade.enricher.service;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Remembers the encoded form of values a writer emits over and over, keyed by identity: values
+ * interned by the {@link EnrichmentEngine} are encoded once per response and then copied as bytes.
+ * Holds at most {@value #MAX_ENTRIES} values; later ones are encoded on every use.
+ */
+final class EncodedValueCache<T> {
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Map<String, T> values = new IdentityHashMap<>();
+    private final Function<String, T> encoder;
+
+    EncodedValueCache(Function<String, T> encoder) {
+        this.encoder = encoder;
+    }
+
+    T get(String value) {
+        T encoded = values.get(value);
+        if (encoded == null) {
+            encoded = encoder.apply(value);
+            if (values.size() < MAX_ENTRIES) {
+                values.put(value, encoded);
+            }
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,133 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.dto.TradeDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enriches trades in chunks of {@code trade.enrich.chunk-size} on a dedicated parallel scheduler,
+ * so one large request can use every core while the output keeps the input order.
+ * <p>
+ * Each chunk is first answered from the local product cache on a worker thread; only the misses
+ * go to Redis. At most {@code trade.enrich.parallelism} chunks are in flight per request, and
+ * their Redis lookups together stay within {@code trade.enrich.max-outstanding-lookups}.
+ * <p>
+ * With {@code trade.enrich.intern} on, product names and currencies are interned into a
+ * {@link ValueDictionary} per request, so a value that repeats across millions of trades is held
+ * once and the writers encode it once.
+ */
+@Service
+@RequiredArgsConstructor
+public class EnrichmentEngine {
+    private final ProductMappingService productMappingService;
+
+    @Value("${trade.enrich.chunk-size:512}")
+    private int chunkSize;
+
+    @Value("${trade.enrich.parallelism:0}")
+    private int parallelism;
+
+    @Value("${trade.enrich.max-outstanding-lookups:256}")
+    private int maxOutstandingLookups;
+
+    @Value("${trade.enrich.intern:true}")
+    private boolean intern;
+
+    @Value("${trade.enrich.intern-max-entries:65536}")
+    private int internMaxEntries;
+
+    private Scheduler scheduler;
+    private int workers;
+
+    @PostConstruct
+    public void start() {
+        workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        scheduler = Schedulers.newParallel("trade-enrich", workers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * Enriches {@code trades} in input order. In-memory sources are also subscribed on the enrichment
+     * scheduler, so their parsing does not run on the event loop.
+     */
+    public Flux<EnrichedTradeDTO> enrich(Flux<TradeDTO> trades) {
+        return enrich(trades, workers);
+    }
+
+    /**
+     * Enriches {@code trades} in input order with at most {@code maxChunks} chunks in flight, for
+     * background work that should leave workers to requests.
+     */
+    public Flux<EnrichedTradeDTO> enrich(Flux<TradeDTO> trades, int maxChunks) {
+        int lookupsPerChunk = Math.max(1, maxOutstandingLookups / workers);
+        return Flux.defer(() -> {
+            ValueDictionary dictionary = intern ? new ValueDictionary(internMaxEntries) : null;
+            return trades
+                    .subscribeOn(scheduler)
+                    .buffer(chunkSize)
+                    .flatMapSequential(chunk -> enrichChunk(chunk, lookupsPerChunk, dictionary)
+                            .subscribeOn(scheduler), Math.max(1, Math.min(maxChunks, workers)))
+                    .flatMapIterable(chunk -> chunk);
+        });
+    }
+
+    private Mono<List<EnrichedTradeDTO>> enrichChunk(List<TradeDTO> chunk, int maxLookups,
+                                                     ValueDictionary dictionary) {
+        return Mono.defer(() -> {
+            EnrichedTradeDTO[] enriched = new EnrichedTradeDTO[chunk.size()];
+            int[] misses = new int[chunk.size()];
+            int missCount = 0;
+            for (int i = 0; i < enriched.length; i++) {
+                TradeDTO trade = chunk.get(i);
+                String productName = productMappingService.findCachedProductName(trade.getProductId());
+                if (productName != null) {
+                    enriched[i] = enrich(trade, productName, dictionary);
+                } else {
+                    misses[missCount++] = i;
+                }
+            }
+            List<EnrichedTradeDTO> result = Arrays.asList(enriched);
+            if (missCount == 0) {
+                return Mono.just(result);
+            }
+            return Flux.range(0, missCount)
+                    .map(k -> misses[k])
+                    .flatMap(i -> productMappingService.getProductName(chunk.get(i).getProductId())
+                            .defaultIfEmpty(ProductMappingService.MISSING_PRODUCT_NAME)
+                            .doOnNext(productName -> enriched[i] = enrich(chunk.get(i), productName, dictionary)),
+                            maxLookups)
+                    .then(Mono.fromSupplier(() -> result));
+        });
+    }
+
+    static EnrichedTradeDTO enrich(TradeDTO trade, String productName, ValueDictionary dictionary) {
+        String currency = trade.getCurrency();
+        if (dictionary != null) {
+            currency = dictionary.intern(currency);
+            productName = dictionary.intern(productName);
+        }
+        return new EnrichedTradeDTO(
+                trade.getDate(),
+                trade.getProductId(),
+                currency,
+                trade.getPrice(),
+                productName);
+    }
+}
@@ -0,0 +1,58 @@
+package com.capybara.trade.enricher.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Re-reads the hottest products every {@code product.access.refresh-interval}, so their cached
+ * names are corrected before a lost change notification leaves them stale for long.
+ */
+@Service
+@RequiredArgsConstructor
+public class HotProductRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(HotProductRefresher.class);
+
+    private final ProductMappingService productMappingService;
+    private final ProductAccessTracker accessTracker;
+    private Disposable subscription;
+
+    @Value("${product.access.refresh-interval:5m}")
+    private Duration refreshInterval;
+
+    @PostConstruct
+    public void start() {
+        if (!accessTracker.isEnabled() || refreshInterval.isZero()) {
+            return;
+        }
+        subscription = Flux.interval(refreshInterval, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> productMappingService.refreshHot()
+                        .doOnNext(changed -> {
+                            if (changed > 0) {
+                                logger.info("Refreshed hot products, {} names changed", changed);
+                            }
+                        })
+                        .onErrorResume(e -> {
+                            logger.warn("Failed to refresh hot products: {}", e.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.capybara.trade.enricher.service;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PeerClient} that posts the ids to the peer's {@code /api/v1/internal/products} endpoint.
+ * Node names are the peers' base URLs.
+ */
+@Component
+public class HttpPeerClient implements PeerClient {
+    static final String PATH = "/api/v1/internal/products";
+    private static final ParameterizedTypeReference<Map<String, String>> NAMES = new ParameterizedTypeReference<>() {
+    };
+
+    private final WebClient webClient;
+
+    public HttpPeerClient(WebClient.Builder webClientBuilder) {
+        this.webClient = webClientBuilder.build();
+    }
+
+    @Override
+    public Mono<Map<String, String>> lookup(String node, List<String> productIds) {
+        return webClient.post()
+                .uri(node + PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(productIds)
+                .retrieve()
+                .bodyToMono(NAMES);
+    }
+}
@@ -0,0 +1,107 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parses a JSON array of trades fed in arbitrary chunks with Jackson's non-blocking parser, so the
+ * request body is parsed as it arrives without a thread waiting on it.
+ * <p>
+ * The tokens of each top-level element are collected until the element is complete and then read
+ * by a {@link TradeTokenReader}, which also keeps the element counts. A document that is a single
+ * object is read as one trade, like the blocking reader does. Syntax errors are thrown from
+ * {@link #feed} and {@link #finish}. Instances are not thread-safe; use one per request.
+ */
+public final class JsonTradeStreamParser {
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final TradeTokenReader reader;
+    private TokenBuffer element;
+    private int depth;
+    private boolean started;
+    private boolean array;
+    private boolean ended;
+
+    public JsonTradeStreamParser(ObjectMapper mapper) throws IOException {
+        this.parser = mapper.getFactory().createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.reader = new TradeTokenReader(parser, false);
+    }
+
+    /**
+     * Parses every element completed by {@code buffer} into {@code out}. The buffer is not released.
+     */
+    public void feed(DataBuffer buffer, List<TradeDTO> out) throws IOException {
+        try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+            while (buffers.hasNext()) {
+                feeder.feedInput(buffers.next());
+                drain(out);
+            }
+        }
+    }
+
+    /**
+     * Parses what is left after the last chunk, failing if the document is incomplete.
+     */
+    public void finish(List<TradeDTO> out) throws IOException {
+        feeder.endOfInput();
+        drain(out);
+        if (element != null || (array && !ended)) {
+            throw new JsonParseException(parser, "Unexpected end of input after " + reader.elements() + " trades");
+        }
+    }
+
+    /**
+     * The reader of the completed elements, for their counts and to close the parser.
+     */
+    public TradeTokenReader reader() {
+        return reader;
+    }
+
+    private void drain(List<TradeDTO> out) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (ended) {
+                // anything after the document is ignored, as by the blocking reader
+                continue;
+            }
+            if (!started) {
+                started = true;
+                if (token == JsonToken.START_ARRAY) {
+                    array = true;
+                    continue;
+                }
+            }
+            if (array && depth == 0 && token == JsonToken.END_ARRAY) {
+                ended = true;
+                continue;
+            }
+            if (element == null) {
+                element = new TokenBuffer(parser);
+            }
+            element.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if (depth == 0) {
+                TradeDTO trade = reader.read(element.asParser());
+                element = null;
+                ended = !array;
+                if (trade != null) {
+                    out.add(trade);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes trades as a JSON array through a streaming {@link JsonGenerator}, with the same field
+ * names and order as the data-binding output. Field names and repeated product names and
+ * currencies are written from pre-quoted {@link SerializedString}s.
+ */
+final class JsonTradeWriter implements TradeWriter {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final SerializableString DATE = new SerializedString("date");
+    private static final SerializableString PRODUCT_ID = new SerializedString("productId");
+    private static final SerializableString CURRENCY = new SerializedString("currency");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString PRODUCT_NAME = new SerializedString("productName");
+
+    private final JsonGenerator generator;
+    private final EncodedValueCache<SerializableString> encoded = new EncodedValueCache<>(SerializedString::new);
+
+    JsonTradeWriter(OutputStream out) throws IOException {
+        this.generator = jsonFactory.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void writeStart() throws IOException {
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void write(EnrichedTradeDTO trade) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(DATE);
+        generator.writeString(trade.getDate());
+        generator.writeFieldName(PRODUCT_ID);
+        generator.writeString(trade.getProductId());
+        generator.writeFieldName(CURRENCY);
+        writeEncoded(trade.getCurrency());
+        generator.writeFieldName(PRICE);
+        if (trade.getPrice() != null) {
+            generator.writeNumber(trade.getPrice());
+        } else {
+            generator.writeNull();
+        }
+        generator.writeFieldName(PRODUCT_NAME);
+        writeEncoded(trade.getProductName());
+        generator.writeEndObject();
+    }
+
+    private void writeEncoded(String value) throws IOException {
+        if (value != null) {
+            generator.writeString(encoded.get(value));
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,192 @@
+package com.capybara.trade.enricher.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Gathers product ids into micro-batches of up to {@code batchSize} ids or {@code batchWindow},
+ * whichever comes first, and hands each batch to a {@link Resolver}, with at most
+ * {@code maxConcurrentBatches} batches in flight. Concurrent lookups of the same id share one
+ * pending result.
+ * <p>
+ * Batches are only formed when a slot is free, so ids queue up instead of overflowing the
+ * pipeline while all slots are busy. Should the pipeline fail anyway, pending lookups fail and a
+ * new pipeline takes over. Lookups that get no result within {@code timeout} fail, and the next
+ * lookup of the id starts a new one; a batch is given as long before its slot is freed.
+ */
+final class MicroBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final int batchSize;
+    private final Duration batchWindow;
+    private final int maxConcurrentBatches;
+    private final Duration timeout;
+    private final Resolver resolver;
+    private final Map<String, Sinks.One<String>> inFlight = new ConcurrentHashMap<>();
+    private Sinks.Many<String> requests;
+    private Disposable subscription;
+    private boolean stopped;
+
+    /**
+     * Resolves one batch of distinct ids, completing each of them through {@code batch}. Ids that
+     * are still open when the returned {@link Mono} terminates fail.
+     */
+    @FunctionalInterface
+    interface Resolver {
+        Mono<Void> resolve(List<String> ids, Batch batch);
+    }
+
+    MicroBatcher(String name, int batchSize, Duration batchWindow, int maxConcurrentBatches, Duration timeout,
+                 Resolver resolver) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.timeout = timeout;
+        this.resolver = resolver;
+    }
+
+    synchronized void start() {
+        stopped = false;
+        subscribe();
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        failAll(new IllegalStateException(name + " stopped"));
+    }
+
+    /**
+     * Resolves {@code productId} as part of the next batch. Completes empty when the resolver
+     * completes the id empty.
+     */
+    Mono<String> lookup(String productId) {
+        return Mono.defer(() -> {
+            Sinks.One<String> created = Sinks.one();
+            Sinks.One<String> existing = inFlight.putIfAbsent(productId, created);
+            Sinks.One<String> sink = existing != null ? existing : created;
+            if (existing == null && !enqueue(productId)) {
+                inFlight.remove(productId, created);
+                return Mono.error(new IllegalStateException(name + " is not accepting lookups"));
+            }
+            return sink.asMono()
+                    .timeout(timeout)
+                    .doOnError(TimeoutException.class, e -> inFlight.remove(productId, sink));
+        });
+    }
+
+    private synchronized boolean enqueue(String productId) {
+        // Sinks.Many rejects concurrent emissions, callers arrive from many event-loop threads
+        return requests != null && !stopped && requests.tryEmitNext(productId).isSuccess();
+    }
+
+    private synchronized void subscribe() {
+        Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+        requests = sink;
+        subscription = sink.asFlux()
+                .bufferTimeout(batchSize, batchWindow, true)
+                .flatMap(this::dispatch, maxConcurrentBatches)
+                .subscribe(null, this::restart);
+    }
+
+    private synchronized void restart(Throwable error) {
+        logger.error("{} failed, failing {} pending lookups and restarting", name, inFlight.size(), error);
+        failAll(error);
+        if (!stopped) {
+            subscribe();
+        }
+    }
+
+    private Mono<Void> dispatch(List<String> productIds) {
+        Map<String, Sinks.One<String>> sinks = new LinkedHashMap<>();
+        for (String productId : new LinkedHashSet<>(productIds)) {
+            Sinks.One<String> sink = inFlight.get(productId);
+            if (sink != null) {
+                sinks.put(productId, sink);
+            }
+        }
+        if (sinks.isEmpty()) {
+            return Mono.empty();
+        }
+        Batch batch = new Batch(sinks);
+        // a batch that hangs would hold its slot for good, so it ends with the lookups waiting for it
+        return Mono.defer(() -> resolver.resolve(new ArrayList<>(sinks.keySet()), batch))
+                .timeout(timeout)
+                .onErrorResume(e -> {
+                    logger.error("{} failed to resolve a batch of {} product ids", name, sinks.size(), e);
+                    batch.failAll(e);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> batch.failAll(new IllegalStateException(name + " left product ids unresolved")));
+    }
+
+    private void failAll(Throwable error) {
+        for (String productId : List.copyOf(inFlight.keySet())) {
+            Sinks.One<String> sink = inFlight.remove(productId);
+            if (sink != null) {
+                sink.tryEmitError(error);
+            }
+        }
+    }
+
+    /**
+     * The pending lookups of one batch.
+     */
+    final class Batch {
+        private final Map<String, Sinks.One<String>> sinks;
+
+        private Batch(Map<String, Sinks.One<String>> sinks) {
+            this.sinks = new ConcurrentHashMap<>(sinks);
+        }
+
+        /**
+         * Completes the lookups of {@code productId}, empty when {@code productName} is {@code null}.
+         */
+        void complete(String productId, String productName) {
+            Sinks.One<String> sink = take(productId);
+            if (sink == null) {
+                return;
+            }
+            if (productName != null) {
+                sink.tryEmitValue(productName);
+            } else {
+                sink.tryEmitEmpty();
+            }
+        }
+
+        void fail(String productId, Throwable error) {
+            Sinks.One<String> sink = take(productId);
+            if (sink != null) {
+                sink.tryEmitError(error);
+            }
+        }
+
+        void failAll(Throwable error) {
+            sinks.keySet().forEach(productId -> fail(productId, error));
+        }
+
+        private Sinks.One<String> take(String productId) {
+            Sinks.One<String> sink = sinks.remove(productId);
+            if (sink != null) {
+                inFlight.remove(productId, sink);
+            }
+            return sink;
+        }
+    }
+}
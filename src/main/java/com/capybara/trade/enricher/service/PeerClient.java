@@ -0,0 +1,17 @@
+package com.capybara.trade.enricher.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asks the node owning a shard of the product cache for product names.
+ */
+public interface PeerClient {
+
+    /**
+     * Returns the names the node found; ids it does not know are left out of the map.
+     */
+    Mono<Map<String, String>> lookup(String node, List<String> productIds);
+}
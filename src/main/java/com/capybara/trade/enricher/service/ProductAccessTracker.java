@@ -0,0 +1,223 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.CountMinSketch;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks which products are looked up most. One in {@code product.access.sample-rate} lookups is
+ * counted in a {@link CountMinSketch}, and ids whose estimate reaches the current top
+ * {@code product.access.top-n} are kept as candidates. Counts are halved once the sketch has
+ * counted ten accesses per counter, so the ranking follows recent traffic.
+ * <p>
+ * The sketch and the candidates are saved to {@code product.access.file} every
+ * {@code product.access.save-interval} and on shutdown, and read back at startup, so a restarted
+ * instance knows the hot products before its first request.
+ */
+@Service
+public class ProductAccessTracker {
+    private static final Logger logger = LoggerFactory.getLogger(ProductAccessTracker.class);
+    private static final int MAGIC = 0x50414353;
+    private static final int VERSION = 1;
+
+    private final Set<String> candidates = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock compaction = new ReentrantLock();
+    private volatile CountMinSketch sketch;
+    private volatile int threshold;
+    private Disposable saver;
+
+    @Value("${product.access.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.access.sample-rate:16}")
+    private int sampleRate;
+
+    @Value("${product.access.sketch-width:65536}")
+    private int sketchWidth;
+
+    @Value("${product.access.top-n:10000}")
+    private int topN;
+
+    @Value("${product.access.file:}")
+    private String file;
+
+    @Value("${product.access.save-interval:5m}")
+    private Duration saveInterval;
+
+    /**
+     * Tracker that is switched off, for callers that run without a Spring context.
+     */
+    public static ProductAccessTracker disabled() {
+        return new ProductAccessTracker();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        sketch = new CountMinSketch(sketchWidth);
+        if (!file.isBlank()) {
+            load(Path.of(file));
+            saver = Flux.interval(saveInterval, saveInterval, Schedulers.boundedElastic())
+                    .subscribe(tick -> save());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (saver != null) {
+            saver.dispose();
+            save();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts a lookup of {@code productId}, if it is sampled. Costs a field read when tracking is off.
+     */
+    public void record(String productId) {
+        if (!enabled || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        CountMinSketch current = sketch;
+        int estimate = current.increment(productId);
+        if (estimate >= threshold && candidates.add(productId) && candidates.size() > 2 * topN) {
+            compact();
+        }
+        if (current.additions() >= 10L * current.width()) {
+            age(current);
+        }
+    }
+
+    /**
+     * The tracked products, most accessed first; at most {@code product.access.top-n}.
+     */
+    public List<String> hottest() {
+        if (!enabled) {
+            return List.of();
+        }
+        CountMinSketch current = sketch;
+        return candidates.stream()
+                .map(productId -> new Candidate(productId, current.estimate(productId)))
+                .sorted(Comparator.comparingInt(Candidate::estimate).reversed())
+                .limit(topN)
+                .map(Candidate::productId)
+                .toList();
+    }
+
+    public int estimate(String productId) {
+        return enabled ? sketch.estimate(productId) : 0;
+    }
+
+    /**
+     * Writes the sketch and the candidates to {@code product.access.file}, replacing the previous copy.
+     */
+    public void save() {
+        if (!enabled || file.isBlank()) {
+            return;
+        }
+        Path target = Path.of(file);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        List<String> hottest = hottest();
+        try {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                sketch.writeTo(out);
+                out.writeInt(hottest.size());
+                for (String productId : hottest) {
+                    out.writeUTF(productId);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Saved access counts of {} hot products to {}", hottest.size(), target);
+        } catch (IOException e) {
+            logger.warn("Failed to save product access counts to {}: {}", target, e.getMessage());
+        }
+    }
+
+    private void load(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a product access file");
+            }
+            CountMinSketch loaded = CountMinSketch.readFrom(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                candidates.add(in.readUTF());
+            }
+            sketch = loaded;
+            logger.info("Read access counts of {} hot products from {}", count, path);
+        } catch (IOException e) {
+            candidates.clear();
+            logger.warn("Ignoring unreadable product access file {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the top {@code product.access.top-n} candidates and raises the threshold for new ones to
+     * the lowest estimate kept. Skipped while another thread compacts.
+     */
+    private void compact() {
+        if (!compaction.tryLock()) {
+            return;
+        }
+        try {
+            List<String> kept = hottest();
+            candidates.retainAll(Set.copyOf(kept));
+            if (kept.size() >= topN) {
+                threshold = sketch.estimate(kept.get(kept.size() - 1));
+            }
+        } finally {
+            compaction.unlock();
+        }
+    }
+
+    private void age(CountMinSketch current) {
+        compaction.lock();
+        try {
+            if (current.additions() >= 10L * current.width()) {
+                current.halve();
+                threshold >>>= 1;
+            }
+        } finally {
+            compaction.unlock();
+        }
+    }
+
+    private record Candidate(String productId, int estimate) {
+    }
+}
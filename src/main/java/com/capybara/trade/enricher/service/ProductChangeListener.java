@@ -0,0 +1,163 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the local product cache in sync with Redis between full reloads.
+ * <p>
+ * Listens on the {@code product.sync.channel} channel, whose messages are product ids, and, when
+ * {@code product.sync.keyspace-events} is set and products are stored one key each, on keyspace
+ * notifications for {@code product:*} keys (the server needs {@code notify-keyspace-events} to
+ * include {@code K$g}). Changed ids are gathered into small batches and re-read from Redis; existing
+ * products are upserted and missing ones removed from the cache. Batches are applied one at a time, so a later change always wins.
+ * <p>
+ * Changes published while the subscription is down are lost, so every reconnect triggers a full
+ * reload.
+ */
+@Service
+@ConditionalOnProperty(name = "product.repository", havingValue = "redis", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ProductChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(ProductChangeListener.class);
+    private static final String KEY_PREFIX = RedisProductRepository.KEY_PREFIX;
+    private static final String KEYSPACE_PATTERN = "__keyspace@*__:" + KEY_PREFIX + "*";
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+    private final RedisProductRepository productRepository;
+    private final ProductMappingService productMappingService;
+    private final EnrichmentMetrics metrics;
+
+    @Value("${product.sync.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.sync.channel:products:changes}")
+    private String channel;
+
+    @Value("${product.sync.keyspace-events:false}")
+    private boolean keyspaceEvents;
+
+    @Value("${product.sync.batch-size:500}")
+    private int batchSize;
+
+    @Value("${product.sync.batch-window:10ms}")
+    private Duration batchWindow;
+
+    private Disposable subscription;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicBoolean subscribedBefore = new AtomicBoolean();
+        subscription = receive(() -> {
+                    logger.info("Listening for product changes on channel {}", channel);
+                    if (subscribedBefore.getAndSet(true)) {
+                        productMappingService.reloadCache().subscribe();
+                    }
+                })
+                .mapNotNull(this::productId)
+                .bufferTimeout(batchSize, batchWindow)
+                .concatMap(this::refresh)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> logger.warn("Product change subscription failed, retrying: {}",
+                                signal.failure().getMessage())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Subscribes to the change topics in a new listener container, calling {@code onSubscribed}
+     * once the channel subscription is in place.
+     */
+    Flux<ReactiveSubscription.Message<String, String>> receive(Runnable onSubscribed) {
+        return Flux.using(
+                () -> new ReactiveRedisMessageListenerContainer(connectionFactory),
+                container -> container.receive(topics(), new SubscriptionListener() {
+                    @Override
+                    public void onChannelSubscribed(byte[] subscribed, long count) {
+                        onSubscribed.run();
+                    }
+                }),
+                ReactiveRedisMessageListenerContainer::destroy);
+    }
+
+    private List<Topic> topics() {
+        List<Topic> topics = new ArrayList<>();
+        topics.add(ChannelTopic.of(channel));
+        if (keyspaceEvents && productRepository.layout() == RedisProductRepository.Layout.KEYS) {
+            topics.add(PatternTopic.of(KEYSPACE_PATTERN));
+        } else if (keyspaceEvents) {
+            // a hash notification names the bucket, not the product that changed
+            logger.warn("Keyspace events need product.redis.layout=keys, only channel {} is used", channel);
+        }
+        return topics;
+    }
+
+    /**
+     * Extracts the product id from a change message: the payload on the change channel, or the key
+     * in the channel name of a keyspace notification.
+     */
+    private String productId(ReactiveSubscription.Message<String, String> message) {
+        String source = message.getChannel().equals(channel) ? message.getMessage() : message.getChannel();
+        int keyStart = source.indexOf(KEY_PREFIX);
+        String productId = keyStart >= 0 ? source.substring(keyStart + KEY_PREFIX.length()) : source.trim();
+        return productId.isEmpty() ? null : productId;
+    }
+
+    private Mono<Void> refresh(List<String> productIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        return productRepository.findNames(ids)
+                .doOnNext(names -> {
+                    long deleted = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        String name = i < names.size() ? names.get(i) : null;
+                        productMappingService.applyChange(ids.get(i), name);
+                        if (name == null) {
+                            deleted++;
+                        }
+                    }
+                    metrics.recordProductChanges("upsert", ids.size() - deleted);
+                    metrics.recordProductChanges("delete", deleted);
+                    logger.debug("Applied {} product changes ({} deleted)", ids.size(), deleted);
+                })
+                .onErrorResume(e -> {
+                    logger.error("Failed to refresh {} changed products", ids.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,183 @@
+package com.capybara.trade.enricher.service;
+
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits a {@code productId,productName} CSV into newline-aligned chunks and parses each chunk
+ * straight from its bytes. File resources are memory-mapped chunk by chunk, so the file is never
+ * copied onto the heap and no String is built per line.
+ */
+final class ProductFileParser {
+    private static final long MAX_CHUNK_BYTES = 64L * 1024 * 1024;
+    private static final int BOUNDARY_WINDOW = 8192;
+
+    private ProductFileParser() {
+    }
+
+    static List<ByteBuffer> split(Resource resource, int targetChunks) throws IOException {
+        if (resource.isFile()) {
+            try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+                return splitFile(channel, targetChunks);
+            }
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return splitBuffer(ByteBuffer.wrap(in.readAllBytes()), targetChunks);
+        }
+    }
+
+    /**
+     * Lazily parses one chunk into batches of at most {@code batchSize} product names keyed by product id.
+     * The first chunk starts with the CSV header, which is skipped.
+     */
+    static Flux<Map<String, String>> parse(ByteBuffer chunk, boolean skipHeader, int batchSize, LongAdder invalidLines) {
+        return Flux.generate(
+                () -> {
+                    ChunkCursor cursor = new ChunkCursor(chunk.duplicate());
+                    if (skipHeader) {
+                        cursor.skipLine();
+                    }
+                    return cursor;
+                },
+                (cursor, sink) -> {
+                    Map<String, String> batch = new HashMap<>(batchSize * 4 / 3 + 1);
+                    while (batch.size() < batchSize && cursor.buffer.hasRemaining()) {
+                        if (!cursor.parseLine(batch)) {
+                            invalidLines.increment();
+                        }
+                    }
+                    if (batch.isEmpty()) {
+                        sink.complete();
+                    } else {
+                        sink.next(batch);
+                    }
+                    return cursor;
+                });
+    }
+
+    private static List<ByteBuffer> splitFile(FileChannel channel, int targetChunks) throws IOException {
+        long size = channel.size();
+        long chunkBytes = Math.max(1, Math.min(MAX_CHUNK_BYTES, size / Math.max(1, targetChunks) + 1));
+        List<ByteBuffer> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = nextLineStart(channel, Math.min(size, start + chunkBytes), size);
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static List<ByteBuffer> splitBuffer(ByteBuffer data, int targetChunks) {
+        int size = data.limit();
+        int chunkBytes = (int) Math.max(1, Math.min(MAX_CHUNK_BYTES, size / Math.max(1, targetChunks) + 1));
+        List<ByteBuffer> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < size) {
+            int end = Math.min(size, start + chunkBytes);
+            while (end < size && data.get(end - 1) != '\n') {
+                end++;
+            }
+            chunks.add(data.slice(start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static final class ChunkCursor {
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[128];
+
+        private ChunkCursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void skipLine() {
+            while (buffer.hasRemaining() && buffer.get() != '\n') {
+                // skip
+            }
+        }
+
+        /**
+         * Parses the line at the cursor into {@code batch}; returns {@code false} if it is not a valid product line.
+         */
+        private boolean parseLine(Map<String, String> batch) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int comma = -1;
+            int commas = 0;
+            int p = start;
+            while (p < limit) {
+                byte b = buffer.get(p);
+                if (b == '\n') {
+                    break;
+                }
+                if (b == ',' && commas++ == 0) {
+                    comma = p;
+                }
+                p++;
+            }
+            buffer.position(p < limit ? p + 1 : limit);
+            int end = p > start && buffer.get(p - 1) == '\r' ? p - 1 : p;
+
+            if (commas != 1) {
+                return false;
+            }
+            String productId = decodeTrimmed(start, comma);
+            String productName = decodeTrimmed(comma + 1, end);
+            if (productId == null || productName == null) {
+                return false;
+            }
+            batch.put(productId, productName);
+            return true;
+        }
+
+        private String decodeTrimmed(int from, int to) {
+            while (from < to && (buffer.get(from) & 0xFF) <= ' ') {
+                from++;
+            }
+            while (to > from && (buffer.get(to - 1) & 0xFF) <= ' ') {
+                to--;
+            }
+            int length = to - from;
+            if (length == 0) {
+                return null;
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
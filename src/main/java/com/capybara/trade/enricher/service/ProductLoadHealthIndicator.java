@@ -0,0 +1,27 @@
+package com.capybara.trade.enricher.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the instance out of service until the product file is loaded, with the progress of the
+ * last load as detail. Part of the readiness group, so a load that failed at startup keeps the
+ * instance from taking traffic with a half-filled repository and cache.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductLoadHealthIndicator implements HealthIndicator {
+    private final ProductLoaderService productLoaderService;
+
+    @Override
+    public Health health() {
+        Health.Builder health = productLoaderService.productsLoaded() ? Health.up() : Health.outOfService();
+        ProductLoadResult progress = productLoaderService.progress();
+        if (progress != null) {
+            health.withDetail("load", progress);
+        }
+        return health.build();
+    }
+}
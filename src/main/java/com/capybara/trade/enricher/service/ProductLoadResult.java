@@ -0,0 +1,27 @@
+package com.capybara.trade.enricher.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Duration;
+
+/**
+ * Progress or outcome of a product file load. A delta load only writes the products that were
+ * inserted or renamed since the last load ({@code products}) and removes the {@code deleted} ones.
+ */
+public record ProductLoadResult(
+        String file,
+        boolean completed,
+        boolean delta,
+        long products,
+        long deleted,
+        long invalidLines,
+        long batches,
+        long failedBatches,
+        Duration elapsed) {
+
+    @JsonProperty
+    public double productsPerSecond() {
+        long millis = elapsed.toMillis();
+        return millis == 0 ? products : products * 1000.0 / millis;
+    }
+}
@@ -1,92 +1,509 @@
 package com.capybara.trade.enricher.service;
 
-import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.ProductDelta;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import com.capybara.trade.enricher.repository.ProductSnapshot;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @RequiredArgsConstructor
 public class ProductLoaderService {
     private static final Logger logger = LoggerFactory.getLogger(ProductLoaderService.class);
-    private static final int BATCH_SIZE = 1000;
 
-    private final ReactiveRedisTemplate<String, Product> reactiveRedisTemplate;
+    private final ProductRepository productRepository;
     private final ProductMappingService productMappingService;
+    private final EnrichmentMetrics metrics;
 
     @Value("${product.loader.file}")
     private String productFile;
 
+    @Value("${product.loader.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${product.loader.parallelism:0}")
+    private int parallelism;
+
+    @Value("${product.loader.write-concurrency:8}")
+    private int writeConcurrency;
+
+    @Value("${product.loader.timeout:10m}")
+    private Duration loadTimeout;
+
+    @Value("${product.loader.progress-interval:5s}")
+    private Duration progressInterval;
+
+    @Value("${product.loader.snapshot:}")
+    private String snapshotFile;
+
+    @Value("${product.loader.watch:false}")
+    private boolean watch;
+
+    @Value("${product.loader.watch-delay:2s}")
+    private Duration watchDelay;
+
+    private volatile LoadProgress progress;
+    private Mono<ProductLoadResult> running;
+    private volatile boolean cacheLoaded;
+    private volatile boolean productsLoaded;
+    private Disposable watcher;
+
+    /**
+     * Loads the product file before the application finishes starting, so the web server only
+     * opens once the product repository and the local cache are filled. When the load fails, times
+     * out or leaves failed batches, the application starts anyway, but the
+     * {@link ProductLoadHealthIndicator} keeps it out of service until a later load succeeds.
+     */
     @PostConstruct
     public void loadProductsFromFile() {
-        logger.debug("Starting product load from file: {}", productFile);
+        try {
+            ProductLoadResult result = load().block(loadTimeout);
+            if (result != null) {
+                logger.info("Loaded {} products from {} in {} ms ({} products/s, {} invalid lines, {} failed batches)",
+                        result.products(), result.file(), result.elapsed().toMillis(),
+                        Math.round(result.productsPerSecond()), result.invalidLines(), result.failedBatches());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Product load from {} did not complete", productFile, e);
+        }
+        if (!productsLoaded) {
+            logger.warn("Products from {} are not fully loaded, refusing traffic until a load completes without "
+                    + "failed batches", productFile);
+        }
+        if (watch) {
+            watchProductFile();
+        }
+    }
 
-        AtomicInteger totalProducts = new AtomicInteger(0);
-        AtomicInteger batchCount = new AtomicInteger(0);
-        AtomicInteger invalidLines = new AtomicInteger(0);
+    @PreDestroy
+    public void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+    }
 
-        ClassPathResource resource = new ClassPathResource(productFile);
+    /**
+     * Loads the product file, or joins the load in progress.
+     * <p>
+     * The file is parsed in parallel chunks. With {@code product.loader.snapshot} set, the products
+     * of the last completed load are kept in a snapshot, and a changed file only writes the products
+     * inserted, renamed or deleted since then, to the repository and to the local cache. Otherwise,
+     * and on the first load, every product is written with at most
+     * {@code product.loader.write-concurrency} batches in flight and the local cache is reloaded.
+     * A repository that was already built from the file is not written again.
+     */
+    public synchronized Mono<ProductLoadResult> load() {
+        if (running == null) {
+            // cleared before the result is delivered, so a caller reacting to it starts a new load
+            running = loadOnce()
+                    .doOnSuccess(result -> {
+                        if (result != null && result.failedBatches() == 0) {
+                            productsLoaded = true;
+                        }
+                        finished();
+                    })
+                    .doOnError(e -> finished())
+                    .cache();
+        }
+        return running;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream()))) {
-            reader.readLine();
+    private synchronized void finished() {
+        running = null;
+    }
 
-            List<String> batch = new ArrayList<>(BATCH_SIZE);
-            String line;
+    /**
+     * Whether a load has completed with every product in the repository, or found the repository
+     * up to date with the file. Stays {@code true} afterwards: a failed reload leaves the products
+     * of the last one in place.
+     */
+    public boolean productsLoaded() {
+        return productsLoaded;
+    }
 
-            while ((line = reader.readLine()) != null) {
-                batch.add(line);
-                if (batch.size() >= BATCH_SIZE) {
-                    int invalid = processProductLines(batch, batchCount.incrementAndGet());
-                    invalidLines.addAndGet(invalid);
-                    totalProducts.addAndGet(batch.size() - invalid);
-                    batch.clear();
-                }
+    /**
+     * Returns the progress of the running load, or the result of the last one.
+     */
+    public ProductLoadResult progress() {
+        LoadProgress current = progress;
+        return current == null ? null : current.snapshot();
+    }
+
+    private Mono<ProductLoadResult> loadOnce() {
+        return Mono.defer(() -> {
+            Resource resource = resolve(productFile);
+            if (!resource.exists()) {
+                logger.error("Failed to read product file: {}", productFile);
+                return refreshCache().then(Mono.empty());
             }
-            if (!batch.isEmpty()) {
-                int invalid = processProductLines(batch, batchCount.incrementAndGet());
-                invalidLines.addAndGet(invalid);
-                totalProducts.addAndGet(batch.size() - invalid);
+
+            if (productRepository.isCurrent(resource)) {
+                logger.info("Product index is up to date with {}, skipping the load", productFile);
+                return refreshCache().then(Mono.fromRunnable(() -> productsLoaded = true));
             }
+
+            ProductSnapshot snapshot = snapshot();
+            return (snapshot != null && snapshot.exists() ? matchesRepository(snapshot) : Mono.just(false))
+                    .flatMap(delta -> delta ? loadDelta(resource, snapshot) : loadFull(resource, snapshot));
+        });
+    }
+
+    private Mono<ProductLoadResult> loadFull(Resource resource, ProductSnapshot snapshot) {
+        LoadProgress current = start(false);
+        productRepository.beginLoad();
+        return track(current, parse(resource, current)
+                .doOnNext(batch -> {
+                    if (snapshot != null) {
+                        collect(snapshot, batch);
+                    }
+                })
+                .flatMap(batch -> writeBatch(batch, current), writeConcurrency)
+                .then(Mono.defer(productRepository::flush))
+                .then(Mono.defer(this::reloadCache))
+                .then(Mono.fromCallable(() -> {
+                    if (snapshot != null && current.failedBatches.sum() == 0) {
+                        snapshot.write();
+                    } else if (snapshot != null) {
+                        // the repository lacks some products, so the next load has to be a full one too
+                        snapshot.delete();
+                    }
+                    return current.complete();
+                }).subscribeOn(Schedulers.boundedElastic()))
+                .doFinally(signal -> {
+                    if (snapshot != null && signal != SignalType.ON_COMPLETE) {
+                        discard(snapshot);
+                    }
+                }));
+    }
+
+    private Mono<ProductLoadResult> loadDelta(Resource resource, ProductSnapshot snapshot) {
+        LoadProgress current = start(true);
+        return track(current, parse(resource, current)
+                .doOnNext(batch -> collect(snapshot, batch))
+                .then(Mono.fromCallable(snapshot::stage).subscribeOn(Schedulers.boundedElastic()))
+                .flatMap(delta -> {
+                    logger.info("Product file {} changed: {} inserted, {} renamed, {} deleted",
+                            current.file, delta.inserted(), delta.updated(), delta.deletes().size());
+                    return Flux.fromIterable(batches(delta.upserts()))
+                            .flatMap(batch -> writeBatch(batch, current), writeConcurrency)
+                            .thenMany(Flux.fromIterable(delta.deletes())
+                                    .buffer(batchSize)
+                                    .flatMap(ids -> deleteBatch(ids, current), writeConcurrency))
+                            .then(Mono.defer(productRepository::flush))
+                            .then(Mono.fromCallable(() -> commit(snapshot, current))
+                                    .subscribeOn(Schedulers.boundedElastic()))
+                            .flatMap(committed -> !committed ? Mono.empty()
+                                    : cacheLoaded ? Mono.fromRunnable(() -> applyToCache(delta)) : reloadCache())
+                            .then(Mono.fromSupplier(current::complete));
+                })
+                .doFinally(signal -> {
+                    if (signal != SignalType.ON_COMPLETE) {
+                        discard(snapshot);
+                    }
+                }));
+    }
+
+    /**
+     * Adds a parsed batch to the product set of the snapshot, which sorts it in runs on disk rather
+     * than keeping the whole file on the heap.
+     */
+    private static void collect(ProductSnapshot snapshot, Map<String, String> batch) {
+        try {
+            snapshot.add(batch);
         } catch (IOException e) {
-            logger.error("Failed to read product file: {}", productFile, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes the staged snapshot current once every change is in the repository; otherwise the next
+     * load computes the same changes again.
+     */
+    private boolean commit(ProductSnapshot snapshot, LoadProgress current) throws IOException {
+        if (current.failedBatches.sum() > 0) {
+            discard(snapshot);
+            logger.warn("Product changes were only partly written, they are retried by the next load");
+            return false;
+        }
+        snapshot.commit();
+        return true;
+    }
+
+    private void applyToCache(ProductDelta delta) {
+        delta.upserts().forEach(productMappingService::applyChange);
+        delta.deletes().forEach(productId -> productMappingService.applyChange(productId, null));
+        metrics.recordProductChanges("upsert", delta.upserts().size());
+        metrics.recordProductChanges("delete", delta.deletes().size());
+    }
+
+    private LoadProgress start(boolean delta) {
+        LoadProgress current = new LoadProgress(productFile, delta);
+        progress = current;
+        return current;
+    }
+
+    /**
+     * Reports progress while {@code load} runs and records its outcome.
+     */
+    private Mono<ProductLoadResult> track(LoadProgress current, Mono<ProductLoadResult> load) {
+        Disposable reporter = Flux.interval(progressInterval)
+                .subscribe(tick -> logger.info("Product load progress: {} products, {} batches, {} products/s",
+                        current.products.sum(), current.batches.sum(),
+                        Math.round(current.snapshot().productsPerSecond())));
+        return load.doFinally(signal -> {
+            reporter.dispose();
+            metrics.recordLoad(System.nanoTime() - current.startNanos, current.invalidLines.sum(),
+                    signal == SignalType.ON_COMPLETE ? "success" : "failure");
+        });
+    }
+
+    private Flux<Map<String, String>> parse(Resource resource, LoadProgress current) {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        logger.debug("Starting product load from file: {} with {} parser threads", productFile, workers);
+        return Mono.fromCallable(() -> ProductFileParser.split(resource, workers * 4))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(chunks -> Flux.range(0, chunks.size())
+                        .flatMap(i -> ProductFileParser.parse(chunks.get(i), i == 0, batchSize, current.invalidLines)
+                                .subscribeOn(Schedulers.parallel()), workers, 1));
+    }
+
+    /**
+     * A snapshot only pays off for a remote repository; a local one is rebuilt from the file anyway.
+     */
+    private ProductSnapshot snapshot() {
+        return snapshotFile.isBlank() || productRepository.isLocal() ? null : new ProductSnapshot(Path.of(snapshotFile));
+    }
+
+    /**
+     * Checks that the repository still holds the snapshot's products, as it may have been flushed or
+     * pointed elsewhere since the snapshot was taken.
+     */
+    private Mono<Boolean> matchesRepository(ProductSnapshot snapshot) {
+        return Mono.fromCallable(snapshot::sampleId)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(productId -> productRepository.findName(productId).hasElement())
+                .defaultIfEmpty(true)
+                .onErrorResume(e -> {
+                    logger.warn("Product snapshot {} is unreadable, loading in full: {}", snapshotFile, e.getMessage());
+                    return Mono.just(false);
+                })
+                .doOnNext(matches -> {
+                    if (!matches) {
+                        logger.info("Product repository does not hold the products of snapshot {}, loading in full",
+                                snapshotFile);
+                    }
+                });
+    }
+
+    private Mono<Void> reloadCache() {
+        return productMappingService.reloadCache().doOnSuccess(done -> cacheLoaded = true);
+    }
+
+    private Mono<Void> refreshCache() {
+        return cacheLoaded ? Mono.empty() : reloadCache();
+    }
+
+    private List<Map<String, String>> batches(Map<String, String> products) {
+        List<Map<String, String>> batches = new ArrayList<>();
+        Map<String, String> batch = new HashMap<>();
+        for (Map.Entry<String, String> product : products.entrySet()) {
+            batch.put(product.getKey(), product.getValue());
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new HashMap<>();
+            }
         }
-        logger.debug("Triggering product mapping cache reload");
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Mono<Void> writeBatch(Map<String, String> batch, LoadProgress current) {
+        long batchNumber = current.batches.sum() + current.failedBatches.sum() + 1;
+        long start = System.nanoTime();
+        return productRepository.saveAll(batch)
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(100)))
+                .doOnNext(saved -> {
+                    if (Boolean.TRUE.equals(saved)) {
+                        current.batches.increment();
+                        current.products.add(batch.size());
+                        metrics.recordLoaderBatch("success", batch.size(), System.nanoTime() - start);
+                    } else {
+                        current.failedBatches.increment();
+                        metrics.recordLoaderBatch("failure", batch.size(), System.nanoTime() - start);
+                    }
+                })
+                .onErrorResume(e -> {
+                    current.failedBatches.increment();
+                    metrics.recordLoaderBatch("failure", batch.size(), System.nanoTime() - start);
+                    logger.error("Failed to save product batch #{}", batchNumber, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> deleteBatch(List<String> productIds, LoadProgress current) {
+        return productRepository.deleteAll(productIds)
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(100)))
+                .doOnNext(deleted -> {
+                    if (Boolean.TRUE.equals(deleted)) {
+                        current.batches.increment();
+                        current.deleted.add(productIds.size());
+                    } else {
+                        current.failedBatches.increment();
+                    }
+                })
+                .onErrorResume(e -> {
+                    current.failedBatches.increment();
+                    logger.error("Failed to delete {} products", productIds.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
 
-        productMappingService.reloadCache();
+    private void discard(ProductSnapshot snapshot) {
+        try {
+            snapshot.discard();
+        } catch (IOException e) {
+            logger.warn("Failed to remove staged product snapshot: {}", e.getMessage());
+        }
     }
 
-    private int processProductLines(List<String> lines, int batchNumber) {
-        AtomicInteger invalidLines = new AtomicInteger(0);
-        Map<String, Product> products = lines.stream()
-                .map(line -> line.split(","))
-                .filter(tokens -> {
-                    if (!(tokens.length == 2)) {
-                        invalidLines.incrementAndGet();
+    /**
+     * Reloads once the product file has not changed for {@code product.loader.watch-delay}, so a
+     * file that is still being written is not loaded half-way.
+     */
+    private void watchProductFile() {
+        Resource resource = resolve(productFile);
+        if (!resource.isFile()) {
+            logger.warn("Product file {} is not on the filesystem and cannot be watched", productFile);
+            return;
+        }
+        Path file;
+        try {
+            file = resource.getFile().toPath().toAbsolutePath();
+        } catch (IOException e) {
+            logger.warn("Cannot watch product file {}: {}", productFile, e.getMessage());
+            return;
+        }
+        watcher = Flux.<Path>create(sink -> {
+                    WatchService watchService;
+                    try {
+                        watchService = file.getFileSystem().newWatchService();
+                        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+                    } catch (IOException e) {
+                        sink.error(e);
+                        return;
                     }
-                    return tokens.length == 2;
+                    Thread thread = new Thread(() -> {
+                        try {
+                            while (true) {
+                                WatchKey key = watchService.take();
+                                key.pollEvents().stream()
+                                        .filter(event -> file.getFileName().equals(event.context()))
+                                        .findAny()
+                                        .ifPresent(event -> sink.next(file));
+                                key.reset();
+                            }
+                        } catch (InterruptedException | ClosedWatchServiceException e) {
+                            sink.complete();
+                        }
+                    }, "product-file-watcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                    sink.onDispose(() -> {
+                        thread.interrupt();
+                        try {
+                            watchService.close();
+                        } catch (IOException e) {
+                            logger.debug("Failed to close product file watcher", e);
+                        }
+                    });
                 })
-                .collect(Collectors.toMap(
-                        tokens -> "product:" + tokens[0].trim(),
-                        tokens -> new Product(tokens[0].trim(), tokens[1].trim())
-                ));
-        reactiveRedisTemplate.opsForValue()
-                .multiSet(products)
-                .doOnError(e -> logger.error("Failed to save batch #{} to Redis", batchNumber, e))
-                .subscribe();
-        return invalidLines.get();
+                .sampleTimeout(changed -> Mono.delay(watchDelay))
+                .concatMap(changed -> {
+                    logger.info("Product file {} changed, reloading", file);
+                    return load().onErrorResume(e -> {
+                        logger.error("Product reload from {} failed", file, e);
+                        return Mono.empty();
+                    });
+                })
+                .subscribe(result -> logger.info("Reloaded product file {}: {} products written, {} deleted in {} ms",
+                        result.file(), result.products(), result.deleted(), result.elapsed().toMillis()));
+        logger.info("Watching product file {} for changes", file);
+    }
+
+    /**
+     * Resolves a resource location; a plain path to an existing file is read from the filesystem.
+     */
+    static Resource resolve(String location) {
+        if (!location.contains(":") && Files.isRegularFile(Path.of(location))) {
+            return new FileSystemResource(location);
+        }
+        return new DefaultResourceLoader().getResource(location);
+    }
+
+    private static final class LoadProgress {
+        private final String file;
+        private final boolean delta;
+        private final long startNanos = System.nanoTime();
+        private final LongAdder products = new LongAdder();
+        private final LongAdder deleted = new LongAdder();
+        private final LongAdder invalidLines = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder failedBatches = new LongAdder();
+        private volatile ProductLoadResult result;
+
+        private LoadProgress(String file, boolean delta) {
+            this.file = file;
+            this.delta = delta;
+        }
+
+        private ProductLoadResult snapshot() {
+            ProductLoadResult done = result;
+            return done != null ? done : snapshot(false);
+        }
+
+        private ProductLoadResult complete() {
+            result = snapshot(true);
+            return result;
+        }
+
+        private ProductLoadResult snapshot(boolean completed) {
+            return new ProductLoadResult(file, completed, delta, products.sum(), deleted.sum(), invalidLines.sum(),
+                    batches.sum(), failedBatches.sum(), Duration.ofNanos(System.nanoTime() - startNanos));
+        }
     }
 }
@@ -0,0 +1,84 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Collects product-cache misses into micro-batches with a {@link MicroBatcher} and resolves each
+ * batch with one Redis round trip per {@link ProductRepository#findNames} call. Concurrent lookups
+ * of the same id share one in-flight request.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductLookupBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ProductLookupBatcher.class);
+
+    private final ProductRepository productRepository;
+    private final EnrichmentMetrics metrics;
+    private MicroBatcher batcher;
+
+    @Value("${product.lookup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${product.lookup.batch-window:2ms}")
+    private Duration batchWindow;
+
+    @Value("${product.lookup.max-concurrent-batches:8}")
+    private int maxConcurrentBatches;
+
+    @Value("${product.lookup.timeout:5s}")
+    private Duration timeout = Duration.ofSeconds(5);
+
+    @PostConstruct
+    public void start() {
+        batcher = new MicroBatcher("Product lookup batcher", batchSize, batchWindow, maxConcurrentBatches, timeout,
+                this::resolveBatch);
+        batcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    /**
+     * Looks up a product name in Redis as part of the next batch. Completes empty when the id is
+     * unknown, and with an error when no batch answers within {@code product.lookup.timeout}.
+     */
+    public Mono<String> lookup(String productId) {
+        return batcher.lookup(productId);
+    }
+
+    private Mono<Void> resolveBatch(List<String> ids, MicroBatcher.Batch batch) {
+        logger.debug("Resolving a batch of {} product ids", ids.size());
+
+        long start = System.nanoTime();
+        return productRepository.findNames(ids)
+                .doOnNext(names -> {
+                    metrics.recordLookupBatch("success", ids.size(), System.nanoTime() - start);
+                    for (int i = 0; i < ids.size(); i++) {
+                        batch.complete(ids.get(i), i < names.size() ? names.get(i) : null);
+                    }
+                })
+                .doOnError(e -> {
+                    metrics.recordLookupBatch("failure", ids.size(), System.nanoTime() - start);
+                    logger.error("Failed to resolve batch of {} product ids", ids.size(), e);
+                    batch.failAll(e);
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+}
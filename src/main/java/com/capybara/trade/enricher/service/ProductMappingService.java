@@ -1,53 +1,304 @@
 package com.capybara.trade.enricher.service;
 
+import com.capybara.trade.enricher.cache.ProductCache;
+import com.capybara.trade.enricher.cache.ProductCacheStats;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.metrics.RequestTrace;
+import com.capybara.trade.enricher.metrics.RequestTracer;
 import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @RequiredArgsConstructor
 public class ProductMappingService {
     private static final Logger logger = LoggerFactory.getLogger(ProductMappingService.class);
-    private final ReactiveRedisTemplate<String, Product> reactiveRedisTemplate;
-    private final Map<String, String> productCache = new ConcurrentHashMap<>();
-
-    public void reloadCache() {
-        reactiveRedisTemplate.keys("product:*")
-                .buffer(1000)
-                .flatMap(keys -> reactiveRedisTemplate.opsForValue().multiGet(keys)
-                        .flatMapIterable(products -> products)
-                        .filter(Objects::nonNull))
-                .doOnNext(product -> {
-                    productCache.put(product.getProductId(), product.getProductName());
-                    logger.debug("Loaded product {} into cache", product.getProductId());
-                })
-                .doOnError(e -> logger.error("Error reloading products from Redis", e))
-                .subscribe();
+    static final String MISSING_PRODUCT_NAME = "Missing Product Name";
+    private static final int WARM_UP_BATCH = 500;
+
+    /**
+     * Reactor context key of a {@link LongAdder} that counts the lookups of one request that go to the product repository.
+     */
+    public static final String REMOTE_LOOKUPS = ProductMappingService.class.getName() + ".remoteLookups";
+
+    private final ProductRepository productRepository;
+    private final ProductLookupBatcher productLookupBatcher;
+    private final VersionedProductCache productCache;
+    private final EnrichmentMetrics metrics;
+    private final ProductShards productShards;
+    private final ProductAccessTracker accessTracker;
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    /**
+     * Builds a new generation of the local cache from the product repository, which reads Redis with
+     * {@code HSCAN} or {@code SCAN} so it is never blocked, and swaps it in once every product has
+     * been read. Readers keep using the previous generation until then. A local repository is not
+     * copied: the new generation starts empty and fills on demand. Failures are logged, keep the
+     * previous generation and do not fail the returned {@link Mono}. With sharding enabled only the
+     * products of this node's shard are read. Afterwards the products the {@link ProductAccessTracker}
+     * ranks hottest are {@link #warmUp warmed up}, so a reload at startup finishes with them cached.
+     */
+    public Mono<Void> reloadCache() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            productCache.beginReload();
+            Flux<Product> products = productRepository.isLocal() ? Flux.empty()
+                    : productShards.isEnabled()
+                    ? productRepository.findAll(productShards.partitions(), productShards::ownsPartition)
+                    : productRepository.findAll();
+            return products
+                    .doOnNext(product -> productCache.putReloaded(product.getProductId(), product.getProductName()))
+                    .then(Mono.fromRunnable(() -> {
+                        long version = productCache.commitReload();
+                        dataVersion.incrementAndGet();
+                        productCache.persist();
+                        logger.info("Reloaded {} products into cache version {} in {} ms", productCache.size(),
+                                version, Duration.ofNanos(System.nanoTime() - start).toMillis());
+                    }))
+                    .doOnError(e -> {
+                        productCache.abortReload();
+                        logger.error("Error reloading products from the product repository", e);
+                    })
+                    .onErrorResume(e -> Mono.empty())
+                    .then(warmUp());
+        });
     }
 
-    public Mono<String> getProductName(String productId) {
-        String productName = productCache.get(productId);
+    /**
+     * Loads the hottest tracked products into the cache, in batches of one repository call each.
+     * Products that are cached already cost nothing, so after a full reload only the evicted and
+     * the foreign ones are read. Failures are logged and end the warm-up.
+     */
+    public Mono<Void> warmUp() {
+        return Mono.defer(() -> {
+            List<String> hottest = accessTracker.hottest();
+            if (hottest.isEmpty()) {
+                return Mono.empty();
+            }
+            long start = System.nanoTime();
+            return Flux.fromIterable(hottest)
+                    .buffer(WARM_UP_BATCH)
+                    .concatMap(this::getProductNames)
+                    .then(Mono.fromRunnable(() -> logger.info("Warmed up {} hot products in {} ms", hottest.size(),
+                            Duration.ofNanos(System.nanoTime() - start).toMillis())))
+                    .doOnError(e -> logger.warn("Product cache warm-up failed: {}", e.toString()))
+                    .onErrorResume(e -> Mono.empty())
+                    .then();
+        });
+    }
+
+    /**
+     * Reads the hottest tracked products of this node's shard from the repository again and applies
+     * the names that changed, so hot entries are corrected even when a change notification was
+     * lost, and evicted ones are cached again. Returns the number of changed names.
+     */
+    public Mono<Long> refreshHot() {
+        return Flux.fromIterable(accessTracker.hottest())
+                .filter(productShards::owns)
+                .buffer(WARM_UP_BATCH)
+                .concatMap(ids -> productRepository.findNames(ids)
+                        .flatMapIterable(names -> {
+                            List<String> changed = new ArrayList<>();
+                            for (int i = 0; i < ids.size(); i++) {
+                                String productName = i < names.size() ? names.get(i) : null;
+                                String cached = productCache.get(ids.get(i));
+                                if (productName != null && !productName.equals(cached)
+                                        || productName == null && cached != null) {
+                                    applyChange(ids.get(i), productName);
+                                    changed.add(ids.get(i));
+                                } else if (productName == null) {
+                                    productCache.putMissing(ids.get(i));
+                                }
+                            }
+                            return changed;
+                        }))
+                .count();
+    }
+
+    /**
+     * Applies a product change to the local cache.
+     *
+     * @param productName the current name, or {@code null} when the product no longer exists
+     */
+    public void applyChange(String productId, String productName) {
+        if (productShards.owns(productId)) {
+            productCache.apply(productId, productName);
+        } else {
+            productShards.nearCache().invalidate(productId);
+        }
+        dataVersion.incrementAndGet();
+    }
 
+    /**
+     * Version of the product data this instance enriches with. It changes with every reload and
+     * every applied change, so results computed under one version are never valid under another.
+     */
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    public Mono<String> getProductName(String productId) {
+        String productName = cachedProductName(productId);
         if (productName != null) {
             return Mono.just(productName);
         }
+        if (!productShards.owns(productId)) {
+            // the owner has the whole shard cached, the repository is only asked when it cannot answer
+            return lookupProductName(productId, productShards.nearCache(),
+                    productShards.fetch(productId).onErrorResume(e -> findInRepository(productId)));
+        }
+        return lookupProductName(productId, productCache, findInRepository(productId));
+    }
 
-        return reactiveRedisTemplate.opsForValue().get("product:" + productId)
-                .map(product -> {
-                    if (product != null) {
-                        productCache.put(product.getProductId(), product.getProductName());
-                        return product.getProductName();
+    /**
+     * Resolves ids that missed the cache, in input order, with one repository call for all ids of
+     * this node's shard instead of one batcher request each. Unknown ids resolve to the
+     * missing-product name. For callers that already hold a batch of misses, such as the
+     * {@link BlockingEnrichmentEngine}.
+     */
+    public Mono<List<String>> getProductNames(List<String> productIds) {
+        return Mono.deferContextual(context -> {
+            RequestTrace trace = RequestTracer.current(context);
+            String[] names = new String[productIds.size()];
+            List<Integer> owned = new ArrayList<>();
+            List<Integer> foreign = new ArrayList<>();
+            for (int i = 0; i < names.length; i++) {
+                String productId = productIds.get(i);
+                names[i] = cachedProductName(productId);
+                if (names[i] == null) {
+                    (productShards.owns(productId) ? owned : foreign).add(i);
+                }
+            }
+            Mono<Void> ownedLookup = owned.isEmpty() ? Mono.empty() : Mono.defer(() -> {
+                context.<LongAdder>getOrEmpty(REMOTE_LOOKUPS).ifPresent(lookups -> lookups.add(owned.size()));
+                List<String> ids = owned.stream().map(productIds::get).toList();
+                long start = System.nanoTime();
+                return productRepository.findNames(ids)
+                        .doOnNext(found -> {
+                            metrics.recordLookupBatch("success", ids.size(), System.nanoTime() - start);
+                            for (int k = 0; k < ids.size(); k++) {
+                                String productName = k < found.size() ? found.get(k) : null;
+                                if (productName != null) {
+                                    productCache.put(ids.get(k), productName);
+                                    names[owned.get(k)] = productName;
+                                } else {
+                                    productCache.putMissing(ids.get(k));
+                                }
+                            }
+                            productCache.recordLoad(System.nanoTime() - start);
+                        })
+                        .doOnError(e -> metrics.recordLookupBatch("failure", ids.size(), System.nanoTime() - start))
+                        .doFinally(signal -> trace.accumulate("product_lookup_batch", System.nanoTime() - start))
+                        .then();
+            });
+            Mono<Void> foreignLookups = Flux.fromIterable(foreign)
+                    .flatMap(i -> getProductName(productIds.get(i)).doOnNext(productName -> names[i] = productName))
+                    .then();
+            return Mono.when(ownedLookup, foreignLookups).then(Mono.fromSupplier(() -> {
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i] == null) {
+                        names[i] = MISSING_PRODUCT_NAME;
                     }
-                    return "Missing Product Name";
+                }
+                return Arrays.asList(names);
+            }));
+        });
+    }
+
+    /**
+     * Resolves ids for another node of the cluster, from this node's cache and the product
+     * repository. Ids that are not known are left out of the returned map.
+     */
+    public Mono<Map<String, String>> lookupOwned(List<String> productIds) {
+        return Flux.fromIterable(new LinkedHashSet<>(productIds))
+                .flatMap(productId -> {
+                    String cached = cachedName(productCache, productId);
+                    Mono<String> name = cached != null ? Mono.just(cached)
+                            : lookupProductName(productId, productCache, findInRepository(productId));
+                    return name.filter(found -> !MISSING_PRODUCT_NAME.equals(found))
+                            .map(found -> Map.entry(productId, found));
                 })
-                .defaultIfEmpty("Missing Product Name");
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Answers from the local cache only: returns the product name, the missing-product name for ids
+     * known to be unknown, or {@code null} when the id has to be looked up in the product repository.
+     * Every trade passes through here once, so this is where lookups are sampled for the
+     * {@link ProductAccessTracker}.
+     */
+    public String findCachedProductName(String productId) {
+        accessTracker.record(productId);
+        return cachedProductName(productId);
+    }
+
+    private String cachedProductName(String productId) {
+        return cachedName(productShards.owns(productId) ? productCache : productShards.nearCache(), productId);
+    }
+
+    private static String cachedName(ProductCache cache, String productId) {
+        String productName = cache.get(productId);
+        if (productName != null) {
+            return productName;
+        }
+        return cache.isKnownMissing(productId) ? MISSING_PRODUCT_NAME : null;
+    }
+
+    private Mono<String> findInRepository(String productId) {
+        return productRepository.isLocal()
+                ? productRepository.findName(productId)
+                : productLookupBatcher.lookup(productId);
+    }
+
+    private Mono<String> lookupProductName(String productId, ProductCache cache, Mono<String> lookup) {
+        return Mono.deferContextual(context -> {
+            context.<LongAdder>getOrEmpty(REMOTE_LOOKUPS).ifPresent(LongAdder::increment);
+            RequestTrace trace = RequestTracer.current(context);
+            long start = System.nanoTime();
+            return lookup
+                    .doOnNext(productName -> {
+                        cache.put(productId, productName);
+                        metrics.recordLookup("found", System.nanoTime() - start);
+                    })
+                    .switchIfEmpty(Mono.fromSupplier(() -> {
+                        cache.putMissing(productId);
+                        metrics.recordLookup("missing", System.nanoTime() - start);
+                        return MISSING_PRODUCT_NAME;
+                    }))
+                    .doOnError(e -> metrics.recordLookup("error", System.nanoTime() - start))
+                    .doOnSuccess(name -> cache.recordLoad(System.nanoTime() - start))
+                    .doFinally(signal -> trace.accumulate("product_lookup", System.nanoTime() - start));
+        });
+    }
+
+    public ShardInfo shardInfo() {
+        return productShards.info();
+    }
+
+    /**
+     * Changes the members of the cluster and reloads the cache when this node's shard changed.
+     */
+    public Mono<ShardInfo> updateShardMembers(List<String> members) {
+        return Mono.defer(() -> productShards.updateMembers(members) ? reloadCache() : Mono.<Void>empty())
+                .then(Mono.fromSupplier(productShards::info));
+    }
+
+    public ProductCacheStats cacheStats() {
+        return productCache.stats();
     }
 }
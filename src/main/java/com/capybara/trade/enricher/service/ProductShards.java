@@ -0,0 +1,218 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.LruProductCache;
+import com.capybara.trade.enricher.cache.ProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Splits the product cache across the nodes of a cluster. Product ids fall into
+ * {@link ProductRepository#partition partitions}, and partitions are assigned to nodes with a
+ * {@link ConsistentHashRing}, so every node caches only its own shard in full. Ids of other shards
+ * are fetched from their owner in micro-batches, one request per owner and batch, and kept in a
+ * small LRU near-cache, so hot foreign ids stay local.
+ * <p>
+ * Disabled unless {@code product.shard.enabled} is set; every node then owns every partition.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductShards {
+    private static final Logger logger = LoggerFactory.getLogger(ProductShards.class);
+
+    private final PeerClient peerClient;
+    private final EnrichmentMetrics metrics;
+    private volatile String[] owners;
+    private volatile ProductCache nearCache;
+    private MicroBatcher batcher;
+
+    @Value("${product.shard.enabled:false}")
+    private boolean enabled;
+
+    @Value("${product.shard.self:}")
+    private String self;
+
+    @Value("${product.shard.nodes:}")
+    private List<String> nodes;
+
+    @Value("${product.shard.partitions:${product.redis.buckets:8192}}")
+    private int partitions;
+
+    @Value("${product.shard.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${product.shard.near-cache.max-size:10000}")
+    private long nearCacheMaxSize;
+
+    @Value("${product.shard.near-cache.missing-ttl:5m}")
+    private Duration nearCacheMissingTtl;
+
+    @Value("${product.shard.peer.batch-size:500}")
+    private int peerBatchSize;
+
+    @Value("${product.shard.peer.batch-window:2ms}")
+    private Duration peerBatchWindow;
+
+    @Value("${product.shard.peer.max-concurrent-batches:8}")
+    private int peerMaxConcurrentBatches = 8;
+
+    @Value("${product.shard.peer.timeout:500ms}")
+    private Duration peerTimeout;
+
+    /**
+     * Shards that are switched off, for callers that run without a Spring context.
+     */
+    public static ProductShards disabled() {
+        return new ProductShards(null, EnrichmentMetrics.standalone());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        nearCache = newNearCache();
+        owners = assign(nodes);
+        metrics.bindNearCache(() -> nearCache);
+        // a lookup may wait for a batch window and a peer request before it falls back to the repository
+        batcher = new MicroBatcher("Peer product batcher", peerBatchSize, peerBatchWindow, peerMaxConcurrentBatches,
+                peerTimeout.plus(peerBatchWindow), this::resolveBatch);
+        batcher.start();
+        logger.info("Node {} owns {} of {} product partitions across {} nodes", self, ownedPartitions(),
+                partitions, nodes.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int partitions() {
+        return partitions;
+    }
+
+    public boolean owns(String productId) {
+        return !enabled || ownsPartition(ProductRepository.partition(productId, partitions));
+    }
+
+    public boolean ownsPartition(int partition) {
+        return !enabled || self.equals(owners[partition]);
+    }
+
+    public String owner(String productId) {
+        return enabled ? owners[ProductRepository.partition(productId, partitions)] : self;
+    }
+
+    /**
+     * Cache of product names fetched from other shards.
+     */
+    public ProductCache nearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Changes the cluster members. Returns {@code true} when this node's shard changed, in which
+     * case the caller has to reload the product cache. The near-cache is cleared either way.
+     */
+    public synchronized boolean updateMembers(List<String> members) {
+        if (!enabled) {
+            throw new IllegalStateException("Product sharding is disabled");
+        }
+        String[] previous = owners;
+        String[] updated = assign(members);
+        boolean changed = false;
+        for (int partition = 0; partition < partitions && !changed; partition++) {
+            changed = self.equals(previous[partition]) != self.equals(updated[partition]);
+        }
+        nodes = List.copyOf(members);
+        owners = updated;
+        nearCache = newNearCache();
+        logger.info("Cluster members changed to {}, node {} owns {} partitions", members, self, ownedPartitions());
+        return changed;
+    }
+
+    /**
+     * Looks up a product name on the node owning its shard, as part of the next batch. Completes
+     * empty when the owner does not know the id, and with an error when the owner cannot be reached.
+     */
+    public Mono<String> fetch(String productId) {
+        return batcher.lookup(productId);
+    }
+
+    public ShardInfo info() {
+        if (!enabled) {
+            return new ShardInfo(false, self, List.of(), partitions, partitions, 0);
+        }
+        return new ShardInfo(true, self, nodes, partitions, ownedPartitions(), nearCache.size());
+    }
+
+    private Mono<Void> resolveBatch(List<String> productIds, MicroBatcher.Batch batch) {
+        Map<String, List<String>> byOwner = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            byOwner.computeIfAbsent(owner(productId), node -> new ArrayList<>()).add(productId);
+        }
+        return Flux.fromIterable(byOwner.entrySet())
+                .flatMap(entry -> resolve(entry.getKey(), entry.getValue(), batch))
+                .then();
+    }
+
+    private Mono<Void> resolve(String node, List<String> ids, MicroBatcher.Batch batch) {
+        long start = System.nanoTime();
+        return peerClient.lookup(node, ids)
+                .timeout(peerTimeout)
+                .doOnNext(names -> {
+                    metrics.recordPeerBatch(node, "success", ids.size(), System.nanoTime() - start);
+                    ids.forEach(id -> batch.complete(id, names.get(id)));
+                })
+                .doOnError(e -> {
+                    metrics.recordPeerBatch(node, "failure", ids.size(), System.nanoTime() - start);
+                    logger.warn("Failed to fetch {} product ids from {}: {}", ids.size(), node, e.toString());
+                    ids.forEach(id -> batch.fail(id, e));
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private String[] assign(List<String> members) {
+        if (!members.contains(self)) {
+            throw new IllegalArgumentException("Node " + self + " is not one of the cluster members " + members);
+        }
+        return new ConsistentHashRing(members, virtualNodes).assign(partitions);
+    }
+
+    private long ownedPartitions() {
+        String[] current = owners;
+        long owned = 0;
+        for (String owner : current) {
+            if (Objects.equals(self, owner)) {
+                owned++;
+            }
+        }
+        return owned;
+    }
+
+    private ProductCache newNearCache() {
+        return new LruProductCache(nearCacheMaxSize, nearCacheMaxSize, nearCacheMissingTtl);
+    }
+}
@@ -0,0 +1,10 @@
+package com.capybara.trade.enricher.service;
+
+import java.util.List;
+
+/**
+ * Shard of the product cache owned by this node.
+ */
+public record ShardInfo(boolean enabled, String self, List<String> nodes, int partitions, long ownedPartitions,
+                        long nearCacheSize) {
+}
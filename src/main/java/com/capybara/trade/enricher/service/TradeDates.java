@@ -0,0 +1,63 @@
+package com.capybara.trade.enricher.service;
+
+/**
+ * Arithmetic {@code yyyyMMdd} validation. Unlike {@code LocalDate.parse} it never throws, and it
+ * rejects impossible days such as {@code 20230230} instead of silently adjusting them.
+ */
+public final class TradeDates {
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private TradeDates() {
+    }
+
+    public static boolean isValid(String date) {
+        if (date == null || date.length() != 8) {
+            return false;
+        }
+        int value = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = date.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+        }
+        return isValid(value);
+    }
+
+    public static boolean isValid(byte[] bytes, int offset, int length) {
+        if (length != 8) {
+            return false;
+        }
+        int value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+        }
+        return isValid(value);
+    }
+
+    /**
+     * Validates a date encoded as the integer {@code yyyyMMdd}.
+     */
+    public static boolean isValid(int yyyyMMdd) {
+        int year = yyyyMMdd / 10000;
+        int month = yyyyMMdd / 100 % 100;
+        int day = yyyyMMdd % 100;
+        if (year < 1 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        int maxDay = DAYS_IN_MONTH[month - 1];
+        if (month == 2 && isLeapYear(year)) {
+            maxDay = 29;
+        }
+        return day <= maxDay;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
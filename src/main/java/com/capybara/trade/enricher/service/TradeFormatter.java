@@ -1,58 +1,112 @@
 package com.capybara.trade.enricher.service;
 
 import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.capybara.trade.enricher.io.DataBufferOutputStream;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
 import lombok.SneakyThrows;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.io.IOException;
 import java.util.List;
 
-@Slf4j
+/**
+ * Renders enriched trades through a {@link TradeWriter} directly into response buffers.
+ */
 public class TradeFormatter {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final XmlMapper xmlMapper = new XmlMapper();
-    private static final String CSV_HEADER = "date,productName,currency,price";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int ESTIMATED_TRADE_BYTES = 96;
+
+    private TradeFormatter() {
+    }
 
     @SneakyThrows
-    public static String formatTrades(List<EnrichedTradeDTO> trades, String contentType) {
-        if (trades == null || trades.isEmpty()) {
-            return switch (contentType.toLowerCase()) {
-                case "text/csv" -> CSV_HEADER;
-                case "application/json" -> "[]";
-                case "application/xml" -> "<trades></trades>";
-                default -> "";
-            };
+    public static DataBuffer formatTrades(List<EnrichedTradeDTO> trades, String contentType,
+                                          DataBufferFactory bufferFactory, EnrichmentMetrics metrics) {
+        long start = System.nanoTime();
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 64L + (long) trades.size() * ESTIMATED_TRADE_BYTES);
+        DataBufferOutputStream out = new DataBufferOutputStream(bufferFactory, capacity);
+        try (TradeWriter writer = TradeWriter.create(contentType, out)) {
+            writer.writeStart();
+            for (EnrichedTradeDTO trade : trades) {
+                writer.write(trade);
+            }
+            writer.writeEnd();
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            throw e;
         }
-
-        return switch (contentType.toLowerCase()) {
-            case "text/csv" -> formatCsv(trades);
-            case "application/json" -> objectMapper.writeValueAsString(trades);
-            case "application/xml" -> formatXml(trades);
-            default -> "";
-        };
+        DataBuffer buffer = out.take();
+        metrics.recordFormat(contentType, System.nanoTime() - start, buffer.readableByteCount());
+        return buffer;
     }
 
-    private static String formatCsv(List<EnrichedTradeDTO> trades) {
-        StringBuilder csv = new StringBuilder();
-        csv.append(CSV_HEADER).append('\n');
+    /**
+     * Formats trades as they arrive, emitting one buffer per {@code chunkSize} trades between
+     * the document prefix and suffix. Only the current chunk is held in memory. The recorded format
+     * time covers the writer calls only, not the time spent waiting for trades.
+     */
+    public static Flux<DataBuffer> formatTradeStream(Flux<EnrichedTradeDTO> trades, String contentType,
+                                                     DataBufferFactory bufferFactory, int chunkSize,
+                                                     EnrichmentMetrics metrics) {
+        return Flux.defer(() -> {
+            DataBufferOutputStream out = new DataBufferOutputStream(bufferFactory, BUFFER_SIZE);
+            TradeWriter writer = createWriter(contentType, out);
+            long[] written = {0};
+            long[] nanos = {0};
+            long[] bytes = {0};
 
-        for (EnrichedTradeDTO trade : trades) {
-            csv.append(String.format("%s,%s,%s,%.2f%n",
-                    trade.getDate(),
-                    trade.getProductName(),
-                    trade.getCurrency(),
-                    trade.getPrice()));
-        }
-        log.debug("Formatted CSV: {}", csv);
+            Flux<DataBuffer> body = trades.handle((trade, sink) -> {
+                long start = System.nanoTime();
+                try {
+                    writer.write(trade);
+                    if (++written[0] % chunkSize == 0) {
+                        writer.flush();
+                        DataBuffer chunk = out.take();
+                        bytes[0] += chunk.readableByteCount();
+                        nanos[0] += System.nanoTime() - start;
+                        sink.next(chunk);
+                        return;
+                    }
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+                nanos[0] += System.nanoTime() - start;
+            });
 
-        return csv.toString();
+            return Flux.concat(
+                            Mono.fromCallable(() -> {
+                                long start = System.nanoTime();
+                                writer.writeStart();
+                                writer.flush();
+                                DataBuffer prefix = out.take();
+                                bytes[0] += prefix.readableByteCount();
+                                nanos[0] += System.nanoTime() - start;
+                                return prefix;
+                            }),
+                            body,
+                            Mono.fromCallable(() -> {
+                                long start = System.nanoTime();
+                                writer.writeEnd();
+                                writer.close();
+                                DataBuffer suffix = out.take();
+                                bytes[0] += suffix.readableByteCount();
+                                metrics.recordFormat(contentType, nanos[0] + System.nanoTime() - start, bytes[0]);
+                                return suffix;
+                            }))
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            out.discard();
+                        }
+                    });
+        });
     }
 
     @SneakyThrows
-    private static String formatXml(List<EnrichedTradeDTO> trades) {
-        return xmlMapper.writeValueAsString(trades)
-                .replace("[", "<trades>")
-                .replace("]", "</trades>");
+    private static TradeWriter createWriter(String contentType, DataBufferOutputStream out) {
+        return TradeWriter.create(contentType, out);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.service.TradeJobStatus.State;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One bulk enrichment job and its directory: the uploaded {@code input}, one {@code part-N} document
+ * per enriched chunk and a {@code job.properties} checkpoint. The checkpoint is rewritten atomically
+ * after every chunk, so a restarted job skips the trades whose chunks are already on disk.
+ */
+final class TradeJob {
+    private static final String CHECKPOINT = "job.properties";
+
+    private final String id;
+    private final Path directory;
+    private final String contentType;
+    private final Instant submittedAt;
+    private final Sinks.Empty<Void> cancelled = Sinks.empty();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile boolean cancelRequested;
+    private volatile State state = State.QUEUED;
+    private volatile long inputBytes;
+    private volatile long chunks;
+    private volatile long trades;
+    private volatile long elapsedNanos;
+    private volatile long runStartNanos;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    TradeJob(String id, Path directory, String contentType, Instant submittedAt) {
+        this.id = id;
+        this.directory = directory;
+        this.contentType = contentType;
+        this.submittedAt = submittedAt;
+    }
+
+    /**
+     * Restores a job from its checkpoint, or returns {@code null} if the directory has none.
+     */
+    static TradeJob load(Path directory) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        }
+        TradeJob job = new TradeJob(directory.getFileName().toString(), directory,
+                properties.getProperty("contentType"), Instant.parse(properties.getProperty("submittedAt")));
+        job.state = State.valueOf(properties.getProperty("state"));
+        job.inputBytes = Long.parseLong(properties.getProperty("inputBytes"));
+        job.chunks = Long.parseLong(properties.getProperty("chunks"));
+        job.trades = Long.parseLong(properties.getProperty("trades"));
+        job.elapsedNanos = Duration.ofMillis(Long.parseLong(properties.getProperty("elapsedMillis"))).toNanos();
+        job.error = properties.getProperty("error");
+        String finishedAt = properties.getProperty("finishedAt");
+        if (finishedAt != null) {
+            job.finishedAt = Instant.parse(finishedAt);
+        } else if (job.state == State.COMPLETED || job.state == State.FAILED) {
+            // checkpoints written before finishedAt was recorded: the last write is when the job finished
+            job.finishedAt = Files.getLastModifiedTime(checkpoint).toInstant();
+        }
+        return job;
+    }
+
+    String id() {
+        return id;
+    }
+
+    String contentType() {
+        return contentType;
+    }
+
+    State state() {
+        return state;
+    }
+
+    /**
+     * When the job completed or failed, {@code null} while it has not.
+     */
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    long chunks() {
+        return chunks;
+    }
+
+    long trades() {
+        return trades;
+    }
+
+    Path input() {
+        return directory.resolve("input");
+    }
+
+    Path part(long chunk) {
+        return directory.resolve(String.format("part-%06d", chunk));
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    void uploaded(long bytes) throws IOException {
+        inputBytes = bytes;
+        checkpoint();
+    }
+
+    void queued() throws IOException {
+        state = State.QUEUED;
+        finishedAt = null;
+        checkpoint();
+    }
+
+    void started() {
+        state = State.RUNNING;
+        bytesRead.set(0);
+        runStartNanos = System.nanoTime();
+    }
+
+    void read(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    void chunkWritten(long chunkTrades) throws IOException {
+        chunks++;
+        trades += chunkTrades;
+        checkpoint();
+    }
+
+    /**
+     * Records the outcome of the run. The state is kept even when the checkpoint cannot be written,
+     * and calling it again only replaces the outcome.
+     */
+    void finished(State finalState, String failure) throws IOException {
+        if (runStartNanos > 0) {
+            elapsedNanos += System.nanoTime() - runStartNanos;
+            runStartNanos = 0;
+        }
+        state = finalState;
+        error = failure;
+        finishedAt = Instant.now();
+        checkpoint();
+    }
+
+    void cancel() {
+        cancelRequested = true;
+        cancelled.tryEmitEmpty();
+    }
+
+    boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    Mono<Void> cancellation() {
+        return cancelled.asMono();
+    }
+
+    TradeJobStatus status() {
+        long running = runStartNanos > 0 ? System.nanoTime() - runStartNanos : 0;
+        return new TradeJobStatus(id, contentType, state, submittedAt, finishedAt, inputBytes,
+                state == State.COMPLETED ? inputBytes : bytesRead.get(), chunks, trades,
+                Duration.ofNanos(elapsedNanos + running), error);
+    }
+
+    private synchronized void checkpoint() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("contentType", contentType);
+        properties.setProperty("submittedAt", submittedAt.toString());
+        properties.setProperty("state", state.name());
+        properties.setProperty("inputBytes", Long.toString(inputBytes));
+        properties.setProperty("chunks", Long.toString(chunks));
+        properties.setProperty("trades", Long.toString(trades));
+        long running = runStartNanos > 0 ? System.nanoTime() - runStartNanos : 0;
+        properties.setProperty("elapsedMillis", Long.toString(Duration.ofNanos(elapsedNanos + running).toMillis()));
+        if (error != null) {
+            properties.setProperty("error", error);
+        }
+        if (finishedAt != null) {
+            properties.setProperty("finishedAt", finishedAt.toString());
+        }
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "trade enrichment job " + id);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
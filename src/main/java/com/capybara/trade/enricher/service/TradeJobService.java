@@ -0,0 +1,348 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.service.TradeJobStatus.State;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs file-sized enrichments in the background instead of on a request.
+ * <p>
+ * An upload is spooled to its job directory and queued; at most {@code trade.jobs.max-concurrent}
+ * jobs run at once, each with at most {@code trade.jobs.parallelism} enrichment chunks in flight, so
+ * jobs leave most of the enrichment workers to regular requests. A job parses its input as a stream
+ * and enriches it in chunks of {@code trade.jobs.chunk-size} trades; every chunk is written as a
+ * complete document and checkpointed. Jobs interrupted by a restart are queued again and skip the
+ * chunks already written. The result is the chunk documents joined into one document.
+ */
+@Service
+@RequiredArgsConstructor
+public class TradeJobService {
+    private static final Logger logger = LoggerFactory.getLogger(TradeJobService.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final Duration EXPIRY_INTERVAL = Duration.ofMinutes(10);
+
+    private final TradeService tradeService;
+    private final EnrichmentEngine enrichmentEngine;
+    private final EnrichmentMetrics metrics;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final Map<String, TradeJob> jobs = new ConcurrentHashMap<>();
+    private final Sinks.Many<TradeJob> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private Disposable subscription;
+    private Disposable expiry;
+
+    @Value("${trade.jobs.directory:${java.io.tmpdir}/trade-enricher-jobs}")
+    private String directory;
+
+    @Value("${trade.jobs.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${trade.jobs.chunk-size:100000}")
+    private int chunkSize;
+
+    @Value("${trade.jobs.parallelism:2}")
+    private int parallelism;
+
+    @Value("${trade.jobs.retention:24h}")
+    private Duration retention;
+
+    @Value("${trade.jobs.max-upload-size:1GB}")
+    private DataSize maxUploadSize = DataSize.ofGigabytes(1);
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(Path.of(directory));
+        subscription = queue.asFlux()
+                .flatMap(this::run, maxConcurrent)
+                .subscribe(null, e -> logger.error("Trade job queue stopped, no further jobs will run", e));
+        recover();
+        metrics.bindTradeJobs(State.class, this::count);
+        expiry = Flux.interval(EXPIRY_INTERVAL, Schedulers.boundedElastic())
+                .subscribe(tick -> expire());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (expiry != null) {
+            expiry.dispose();
+        }
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Spools {@code body} to disk and queues it. Completes once the whole upload is stored, or fails
+     * with a {@code 413} {@link ResponseStatusException} once it exceeds {@code trade.jobs.max-upload-size}.
+     */
+    public Mono<TradeJobStatus> submit(Flux<DataBuffer> body, String contentType) {
+        return Mono.defer(() -> {
+            String id = UUID.randomUUID().toString();
+            Path jobDirectory = Path.of(directory, id);
+            TradeJob job = new TradeJob(id, jobDirectory, contentType.toLowerCase(), Instant.now());
+            return Mono.fromCallable(() -> Files.createDirectories(jobDirectory))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(DataBufferUtils.write(limit(body), job.input()))
+                    .then(Mono.fromCallable(() -> {
+                        job.uploaded(Files.size(job.input()));
+                        jobs.put(id, job);
+                        enqueue(job);
+                        logger.info("Queued trade job {} ({} bytes of {})", id, job.status().inputBytes(), contentType);
+                        return job.status();
+                    }).subscribeOn(Schedulers.boundedElastic()))
+                    .doOnError(e -> delete(job));
+        });
+    }
+
+    private Flux<DataBuffer> limit(Flux<DataBuffer> body) {
+        long max = maxUploadSize.toBytes();
+        return Flux.defer(() -> {
+            long[] received = {0};
+            return body.map(buffer -> {
+                received[0] += buffer.readableByteCount();
+                if (received[0] > max) {
+                    DataBufferUtils.release(buffer);
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            "Trade job uploads are limited to " + maxUploadSize);
+                }
+                return buffer;
+            });
+        });
+    }
+
+    public Optional<TradeJobStatus> status(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(TradeJob::status);
+    }
+
+    /**
+     * Streams the enriched document of a completed job from its chunk documents.
+     */
+    public Flux<DataBuffer> result(String id) {
+        TradeJob job = jobs.get(id);
+        if (job == null || job.state() != State.COMPLETED) {
+            return Flux.error(new IllegalStateException("Trade job " + id + " has no result"));
+        }
+        Framing framing = Framing.of(job.contentType());
+        long chunks = job.chunks();
+        return Flux.concat(
+                Mono.fromSupplier(() -> bufferFactory.wrap(framing.prefix())),
+                Flux.range(0, (int) chunks).concatMap(chunk -> {
+                    Flux<DataBuffer> body = readPart(job.part(chunk), framing);
+                    return chunk == 0 ? body
+                            : Flux.concat(Mono.fromSupplier(() -> bufferFactory.wrap(framing.separator())), body);
+                }),
+                Mono.fromSupplier(() -> bufferFactory.wrap(framing.suffix())));
+    }
+
+    /**
+     * Cancels a job if it is queued or running and deletes its files.
+     */
+    public boolean delete(String id) {
+        TradeJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        if (job.state() != State.RUNNING) {
+            delete(job);
+        }
+        return true;
+    }
+
+    private long count(State state) {
+        return jobs.values().stream().filter(job -> job.state() == state).count();
+    }
+
+    private void enqueue(TradeJob job) {
+        synchronized (queue) {
+            queue.emitNext(job, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
+    }
+
+    private Mono<Void> run(TradeJob job) {
+        return Mono.defer(() -> {
+            if (job.isCancelled()) {
+                return Mono.empty();
+            }
+            job.started();
+            long start = System.nanoTime();
+            logger.info("Starting trade job {} at chunk {}", job.id(), job.chunks());
+            Flux<DataBuffer> input = DataBufferUtils.read(job.input(), bufferFactory, READ_BUFFER_SIZE)
+                    .doOnNext(buffer -> job.read(buffer.readableByteCount()));
+            return tradeService.validateAndParseTradeStream(input, job.contentType())
+                    .skip(job.trades())
+                    .buffer(chunkSize)
+                    .concatMap(chunk -> enrichmentEngine.enrich(Flux.fromIterable(chunk), parallelism)
+                            .collectList()
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(enriched -> writeChunk(job, enriched)), 1)
+                    .takeUntilOther(job.cancellation())
+                    .then(Mono.fromCallable(() -> finish(job, State.COMPLETED, null, start)))
+                    .onErrorResume(e -> {
+                        logger.error("Trade job {} failed after {} chunks", job.id(), job.chunks(), e);
+                        return Mono.fromCallable(() -> finish(job, State.FAILED, e.toString(), start));
+                    })
+                    // a job must never fail the queue, which would stop every later job
+                    .onErrorResume(e -> {
+                        logger.error("Trade job {} could not be finished", job.id(), e);
+                        return Mono.empty();
+                    })
+                    .then();
+        });
+    }
+
+    private void writeChunk(TradeJob job, List<EnrichedTradeDTO> trades) {
+        Path part = job.part(job.chunks());
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), READ_BUFFER_SIZE);
+            try (TradeWriter writer = TradeWriter.create(job.contentType(), out)) {
+                writer.writeStart();
+                for (EnrichedTradeDTO trade : trades) {
+                    writer.write(trade);
+                }
+                writer.writeEnd();
+            }
+            out.flush();
+            channel.force(false);
+            job.chunkWritten(trades.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private State finish(TradeJob job, State state, String error, long start) {
+        if (job.isCancelled()) {
+            delete(job);
+            metrics.recordTradeJob(job.contentType(), "cancelled", System.nanoTime() - start);
+            logger.info("Cancelled trade job {}", job.id());
+            return State.FAILED;
+        }
+        try {
+            job.finished(state, error);
+        } catch (IOException e) {
+            // the outcome stands for this run; after a restart the job resumes from its last checkpoint
+            logger.error("Failed to checkpoint trade job {} as {}: {}", job.id(), state.name().toLowerCase(),
+                    e.getMessage());
+        }
+        metrics.recordTradeJob(job.contentType(), state.name().toLowerCase(), System.nanoTime() - start);
+        TradeJobStatus status = job.status();
+        logger.info("Trade job {} {}: {} trades in {} chunks, {} trades/s", job.id(), state.name().toLowerCase(),
+                status.trades(), status.chunks(), Math.round(status.tradesPerSecond()));
+        return state;
+    }
+
+    /**
+     * Streams the trades of one chunk document, without the framing around them.
+     */
+    private Flux<DataBuffer> readPart(Path part, Framing framing) {
+        return Mono.fromCallable(() -> Files.size(part))
+                .flatMapMany(size -> DataBufferUtils.takeUntilByteCount(
+                        DataBufferUtils.readAsynchronousFileChannel(
+                                () -> AsynchronousFileChannel.open(part, StandardOpenOption.READ),
+                                framing.prefix().length, bufferFactory, READ_BUFFER_SIZE),
+                        size - framing.prefix().length - framing.suffix().length));
+    }
+
+    /**
+     * Registers the jobs found on disk and queues the unfinished ones again.
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(Path.of(directory), Files::isDirectory)) {
+            for (Path jobDirectory : directories) {
+                TradeJob job = TradeJob.load(jobDirectory);
+                if (job == null) {
+                    // the upload never completed
+                    FileSystemUtils.deleteRecursively(jobDirectory);
+                    continue;
+                }
+                jobs.put(job.id(), job);
+                if (job.state() == State.QUEUED || job.state() == State.RUNNING) {
+                    job.queued();
+                    enqueue(job);
+                    logger.info("Resuming trade job {} at chunk {}", job.id(), job.chunks());
+                }
+            }
+        }
+    }
+
+    private void expire() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().stream()
+                .filter(job -> job.state() == State.COMPLETED || job.state() == State.FAILED)
+                .filter(job -> job.finishedAt() != null && job.finishedAt().isBefore(cutoff))
+                .map(TradeJob::id)
+                .toList()
+                .forEach(this::delete);
+    }
+
+    private void delete(TradeJob job) {
+        try {
+            FileSystemUtils.deleteRecursively(job.directory());
+        } catch (IOException e) {
+            logger.warn("Failed to delete trade job directory {}: {}", job.directory(), e.getMessage());
+        }
+    }
+
+    /**
+     * The bytes around and between the trades of a document, so complete chunk documents can be joined.
+     */
+    private record Framing(byte[] prefix, byte[] separator, byte[] suffix) {
+
+        static Framing of(String contentType) {
+            return switch (contentType) {
+                case "text/csv" -> new Framing(bytes(CsvTradeWriter.HEADER + '\n'), new byte[0], new byte[0]);
+                case "application/json" -> new Framing(bytes("["), bytes(","), bytes("]"));
+                case "application/xml" -> new Framing(bytes("<trades>"), new byte[0], bytes("</trades>"));
+                case BinaryTradeFormat.CONTENT_TYPE -> new Framing(ByteBuffer.allocate(BinaryTradeFormat.HEADER_BYTES)
+                        .putInt(BinaryTradeFormat.MAGIC).put((byte) BinaryTradeFormat.VERSION)
+                        .put((byte) BinaryTradeFormat.ENRICHED).putShort((short) 0).array(), new byte[0], new byte[4]);
+                default -> throw new IllegalArgumentException("Unsupported content type: " + contentType);
+            };
+        }
+
+        private static byte[] bytes(String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.capybara.trade.enricher.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public record TradeJobStatus(
+        String id,
+        String contentType,
+        State state,
+        Instant submittedAt,
+        Instant finishedAt,
+        long inputBytes,
+        long bytesRead,
+        long chunks,
+        long trades,
+        Duration elapsed,
+        String error) {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    @JsonProperty
+    public double tradesPerSecond() {
+        long millis = elapsed.toMillis();
+        return millis == 0 ? trades : trades * 1000.0 / millis;
+    }
+
+    /**
+     * Share of the input read by the current run, between 0 and 1.
+     */
+    @JsonProperty
+    public double progress() {
+        if (state == State.COMPLETED) {
+            return 1;
+        }
+        return inputBytes == 0 ? 0 : Math.min(1, (double) bytesRead / inputBytes);
+    }
+}
@@ -0,0 +1,117 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.TradeResultStore;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.metrics.RequestTracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Answers repeated submissions of the same trade file from stored responses. Results are keyed by
+ * the SHA-256 of the request body, the request and response types and the product-data version
+ * ({@link ProductMappingService#dataVersion()}), so any product change makes earlier results
+ * unreachable. A result is only stored if the version did not change while it was computed.
+ * <p>
+ * Enabled with {@code trade.result-cache.store=local}; results larger than
+ * {@code trade.result-cache.max-entry-size} are not stored. Results are kept per instance only:
+ * the product-data version is local, as instances apply product changes at their own pace.
+ */
+@Service
+public class TradeResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(TradeResultCache.class);
+
+    private final TradeResultStore store;
+    private final ProductMappingService productMappingService;
+    private final EnrichmentMetrics metrics;
+
+    @Value("${trade.result-cache.max-entry-size:16MB}")
+    private DataSize maxEntrySize = DataSize.ofMegabytes(16);
+
+    @Autowired
+    public TradeResultCache(ObjectProvider<TradeResultStore> store, ProductMappingService productMappingService,
+                            EnrichmentMetrics metrics) {
+        this(store.getIfAvailable(), productMappingService, metrics);
+    }
+
+    TradeResultCache(TradeResultStore store, ProductMappingService productMappingService, EnrichmentMetrics metrics) {
+        this.store = store;
+        this.productMappingService = productMappingService;
+        this.metrics = metrics;
+    }
+
+    /**
+     * A cache that never stores anything, for code that runs outside the application.
+     */
+    public static TradeResultCache disabled() {
+        return new TradeResultCache((TradeResultStore) null, null, null);
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * Returns the stored response for this request, or enriches it with {@code enrich} and stores
+     * the response. Store failures are logged and fall back to enriching.
+     */
+    public Mono<DataBuffer> getOrEnrich(byte[] tradeData, String contentType, String responseType,
+                                        DataBufferFactory bufferFactory, Supplier<Mono<DataBuffer>> enrich) {
+        if (store == null) {
+            return enrich.get();
+        }
+        // hashing a large body takes milliseconds, so it stays off the event loop
+        return RequestTracer.span("result_cache.hash", Mono.fromCallable(() -> sha256(tradeData))
+                        .subscribeOn(Schedulers.parallel()))
+                .flatMap(hash -> {
+                    long version = productMappingService.dataVersion();
+                    String key = version + ":" + contentType.toLowerCase() + ":" + responseType.toLowerCase() + ":" + hash;
+                    return RequestTracer.span("result_cache.get", store.get(key))
+                            .onErrorResume(e -> {
+                                logger.warn("Failed to read a stored trade result: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            .map(result -> {
+                                metrics.recordResultCache(store.type(), "hit");
+                                return bufferFactory.wrap(result);
+                            })
+                            .switchIfEmpty(Mono.defer(() -> {
+                                metrics.recordResultCache(store.type(), "miss");
+                                return enrich.get().doOnNext(buffer -> store(key, version, buffer));
+                            }));
+                });
+    }
+
+    private void store(String key, long version, DataBuffer buffer) {
+        int size = buffer.readableByteCount();
+        if (size > maxEntrySize.toBytes() || productMappingService.dataVersion() != version) {
+            metrics.recordResultCache(store.type(), "skipped");
+            return;
+        }
+        byte[] result = new byte[size];
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(result), 0, size);
+        store.put(key, result).subscribe(
+                done -> {
+                },
+                e -> logger.warn("Failed to store a trade result: {}", e.getMessage()),
+                () -> metrics.recordResultCache(store.type(), "stored"));
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -3,86 +3,217 @@ package com.capybara.trade.enricher.service;
 import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
 import com.capybara.trade.enricher.dto.TradeDTO;
 import com.capybara.trade.enricher.exception.TradeValidationException;
+import com.capybara.trade.enricher.io.DataBufferSubscriberInputStream;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.metrics.RequestTrace;
+import com.capybara.trade.enricher.metrics.RequestTracer;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
 
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @RequiredArgsConstructor
 public class TradeService {
     private static final Logger logger = LoggerFactory.getLogger(TradeService.class);
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
-    private static final Pattern CSV_PATTERN = Pattern.compile(",");
+    private static final int STREAM_PREFETCH = 4;
 
-    private final ProductMappingService productMappingService;
+    private final EnrichmentEngine enrichmentEngine;
+    private final EnrichmentMetrics metrics;
+    private final TradeResultCache resultCache;
+    private final BlockingEnrichmentEngine blockingEngine;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final XmlMapper xmlMapper = new XmlMapper();
 
-    public Mono<String> enrichTrades(String tradeData, String contentType) {
-        return validateAndParseTrades(tradeData, contentType)
-                .flatMap(this::enrichTrade)
-                .collectList()
-                .doOnSuccess(trades -> {
-                    logger.debug("Finished enriching trades. Total enriched trades: {}", trades.size());
-                    trades.forEach(trade -> logger.debug("Enriched Trade: {}", trade));
-                })
-                .map(trades -> TradeFormatter.formatTrades(trades, contentType));
+    @Value("${trade.stream.chunk-size:1000}")
+    private int streamChunkSize;
+
+    public Mono<DataBuffer> enrichTrades(String tradeData, String contentType, DataBufferFactory bufferFactory) {
+        return enrichTrades(tradeData.getBytes(StandardCharsets.UTF_8), contentType, bufferFactory);
     }
 
-    private boolean isValidDate(String date) {
+    public Mono<DataBuffer> enrichTrades(byte[] tradeData, String contentType, DataBufferFactory bufferFactory) {
+        return enrichTrades(tradeData, contentType, contentType, bufferFactory);
+    }
+
+    /**
+     * Enriches trades of {@code contentType} and writes them as {@code responseType}, which is the
+     * request type or {@link TradeWriter#DICTIONARY_JSON}. Repeated submissions may be answered
+     * from the {@link TradeResultCache}.
+     */
+    public Mono<DataBuffer> enrichTrades(byte[] tradeData, String contentType, String responseType,
+                                         DataBufferFactory bufferFactory) {
+        return resultCache.getOrEnrich(tradeData, contentType, responseType, bufferFactory,
+                () -> enrichUncached(tradeData, contentType, responseType, bufferFactory));
+    }
+
+    private Mono<DataBuffer> enrichUncached(byte[] tradeData, String contentType, String responseType,
+                                            DataBufferFactory bufferFactory) {
+        if (blockingEngine.isEnabled()) {
+            return Mono.deferContextual(context -> Mono.fromCallable(
+                            () -> enrichBlocking(tradeData, contentType, responseType, bufferFactory, context))
+                    .subscribeOn(blockingEngine.requestScheduler()));
+        }
+        return Mono.deferContextual(context -> {
+            RequestTrace trace = RequestTracer.current(context);
+            LongAdder remoteLookups = new LongAdder();
+            // the enrich span includes parsing, which is lazy for JSON and XML; the parse aggregate has its share
+            Flux<EnrichedTradeDTO> trades = enrichmentEngine.enrich(validateAndParseTrades(tradeData, contentType));
+            return RequestTracer.span("enrich", trades.collectList())
+                    .doOnSuccess(enriched -> {
+                        logger.debug("Finished enriching trades. Total enriched trades: {}", enriched.size());
+                        enriched.forEach(trade -> logger.debug("Enriched Trade: {}", trade));
+                    })
+                    .flatMap(enriched -> RequestTracer.span("format", Mono.fromSupplier(
+                            () -> TradeFormatter.formatTrades(enriched, responseType, bufferFactory, metrics))))
+                    .doOnNext(buffer -> {
+                        trace.count("response_bytes", buffer.readableByteCount());
+                        trace.count("remote_lookups", remoteLookups.sum());
+                    })
+                    .doFinally(signal -> metrics.recordRemoteLookups(contentType, remoteLookups.sum()))
+                    .contextWrite(Context.of(ProductMappingService.REMOTE_LOOKUPS, remoteLookups));
+        });
+    }
+
+    /**
+     * Parses, enriches and formats a request on the calling thread with the {@link BlockingEnrichmentEngine}.
+     */
+    private DataBuffer enrichBlocking(byte[] tradeData, String contentType, String responseType,
+                                      DataBufferFactory bufferFactory, ContextView context) {
+        RequestTrace trace = RequestTracer.current(context);
+        LongAdder remoteLookups = new LongAdder();
         try {
-            LocalDate.parse(date, DATE_FORMATTER);
+            long start = System.nanoTime();
+            List<TradeDTO> trades = validateAndParseTrades(tradeData, contentType).collectList()
+                    .contextWrite(context)
+                    .block();
+            trace.span("parse", start);
+            start = System.nanoTime();
+            List<EnrichedTradeDTO> enriched = blockingEngine.enrich(trades,
+                    Context.of(context).put(ProductMappingService.REMOTE_LOOKUPS, remoteLookups));
+            trace.span("enrich", start);
+            logger.debug("Finished enriching trades. Total enriched trades: {}", enriched.size());
+            start = System.nanoTime();
+            DataBuffer buffer = TradeFormatter.formatTrades(enriched, responseType, bufferFactory, metrics);
+            trace.span("format", start);
+            trace.count("response_bytes", buffer.readableByteCount());
+            return buffer;
+        } finally {
+            metrics.recordRemoteLookups(contentType, remoteLookups.sum());
+            trace.count("remote_lookups", remoteLookups.sum());
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #enrichTrades}: records are parsed as the body arrives,
+     * enriched in input order by the {@link EnrichmentEngine} and written back in chunks of
+     * {@code trade.stream.chunk-size} trades, so memory does not grow with the body size.
+     */
+    public Flux<DataBuffer> enrichTradeStream(Flux<DataBuffer> tradeData, String contentType,
+                                              DataBufferFactory bufferFactory) {
+        return enrichTradeStream(tradeData, contentType, contentType, bufferFactory);
+    }
+
+    public Flux<DataBuffer> enrichTradeStream(Flux<DataBuffer> tradeData, String contentType, String responseType,
+                                              DataBufferFactory bufferFactory) {
+        return Flux.deferContextual(context -> {
+            RequestTrace trace = RequestTracer.current(context);
+            LongAdder remoteLookups = new LongAdder();
+            Flux<EnrichedTradeDTO> trades = enrichmentEngine.enrich(validateAndParseTradeStream(tradeData, contentType));
+            return TradeFormatter.formatTradeStream(trades, responseType, bufferFactory, streamChunkSize, metrics)
+                    .doOnNext(buffer -> trace.count("response_bytes", buffer.readableByteCount()))
+                    .doOnComplete(() -> trace.count("remote_lookups", remoteLookups.sum()))
+                    .doFinally(signal -> metrics.recordRemoteLookups(contentType, remoteLookups.sum()))
+                    .contextWrite(Context.of(ProductMappingService.REMOTE_LOOKUPS, remoteLookups));
+        });
+    }
+
+    private boolean isValidDate(String date) {
+        if (TradeDates.isValid(date)) {
             return true;
-        } catch (DateTimeParseException e) {
-            logger.warn("Invalid date format: {}", date);
-            return false;
         }
+        logger.warn("Invalid date format: {}", date);
+        return false;
     }
 
-    private Mono<TradeDTO> createTradeDTO(String[] columns) {
-        if (!isValidDate(columns[0].trim())) {
-            return Mono.empty();
+    private void recordParse(RequestTrace trace, String contentType, long nanos, long acceptedRows, long skippedRows) {
+        metrics.recordParse(contentType, nanos, acceptedRows);
+        trace.accumulate("parse", nanos);
+        trace.count("rows", acceptedRows);
+        trace.count("skipped_rows", skippedRows);
+    }
+
+    private void recordCsvParse(CsvTradeParser parser, long nanos, RequestTrace trace) {
+        String type = "text/csv";
+        recordParse(trace, type, nanos, parser.rows() - parser.skippedRows(), parser.skippedRows());
+        metrics.recordSkippedRows(type, EnrichmentMetrics.INVALID_DATE, parser.invalidDates());
+        metrics.recordSkippedRows(type, EnrichmentMetrics.INVALID_PRICE, parser.invalidPrices());
+        metrics.recordSkippedRows(type, EnrichmentMetrics.WRONG_COLUMNS, parser.wrongColumnCounts());
+        if (parser.skippedRows() > 0) {
+            logger.warn("Skipped {} of {} CSV rows: {} invalid dates, {} invalid prices, {} wrong column counts",
+                    parser.skippedRows(), parser.rows(), parser.invalidDates(), parser.invalidPrices(),
+                    parser.wrongColumnCounts());
         }
+    }
 
-        return Mono.just(new TradeDTO(
-                columns[0].trim(),
-                columns[1].trim(),
-                columns[2].trim(),
-                Double.parseDouble(columns[3].trim())
-        ));
+    private void recordBinaryParse(BinaryTradeParser parser, long nanos, RequestTrace trace) {
+        String type = BinaryTradeFormat.CONTENT_TYPE;
+        recordParse(trace, type, nanos, parser.rows() - parser.invalidDates(),
+                parser.invalidDates() + parser.malformedBatches());
+        metrics.recordSkippedRows(type, EnrichmentMetrics.INVALID_DATE, parser.invalidDates());
+        metrics.recordSkippedRows(type, EnrichmentMetrics.MALFORMED, parser.malformedBatches());
+        if (parser.error() != null) {
+            logger.error("Error parsing trade batches after {} trades: {}", parser.rows(), parser.error());
+        }
+        if (parser.invalidDates() > 0) {
+            logger.warn("Skipped {} of {} binary trades with invalid dates", parser.invalidDates(), parser.rows());
+        }
+    }
+
+    Flux<TradeDTO> validateAndParseTrades(String tradeData, String contentType) {
+        return validateAndParseTrades(tradeData.getBytes(StandardCharsets.UTF_8), contentType);
     }
 
-    private Flux<TradeDTO> validateAndParseTrades(String tradeData, String contentType) {
-        return Flux.defer(() -> {
+    Flux<TradeDTO> validateAndParseTrades(byte[] tradeData, String contentType) {
+        return Flux.deferContextual(context -> {
             try {
                 if ("text/csv".equalsIgnoreCase(contentType)) {
-                    String[] lines = tradeData.split("\\r?\\n");
-                    if (lines.length <= 1) {
-                        return Flux.empty();
-                    }
-                    return Flux.fromStream(Arrays.stream(lines).skip(1))
-                            .map(CSV_PATTERN::split)
-                            .filter(columns -> columns.length == 4)
-                            .flatMap(this::createTradeDTO);
+                    long start = System.nanoTime();
+                    CsvTradeParser parser = new CsvTradeParser();
+                    List<TradeDTO> trades = new ArrayList<>();
+                    parser.parseAll(tradeData, trades);
+                    recordCsvParse(parser, System.nanoTime() - start, RequestTracer.current(context));
+                    return Flux.fromIterable(trades);
                 } else if ("application/json".equalsIgnoreCase(contentType)) {
-                    TradeDTO[] trades = objectMapper.readValue(tradeData, TradeDTO[].class);
-                    return Flux.fromArray(trades)
-                            .filter(trade -> isValidDate(trade.getDate()));
+                    return readTokens(() -> objectMapper.createParser(tradeData), contentType, false);
                 } else if ("application/xml".equalsIgnoreCase(contentType)) {
-                    TradeDTO[] trades = xmlMapper.readValue(tradeData, TradeDTO[].class);
-                    return Flux.fromArray(trades)
-                            .filter(trade -> isValidDate(trade.getDate()));
+                    return readTokens(() -> xmlMapper.createParser(tradeData), contentType, true);
+                } else if (BinaryTradeFormat.CONTENT_TYPE.equalsIgnoreCase(contentType)) {
+                    long start = System.nanoTime();
+                    BinaryTradeParser parser = new BinaryTradeParser();
+                    List<TradeDTO> trades = new ArrayList<>();
+                    parser.parseAll(tradeData, trades);
+                    recordBinaryParse(parser, System.nanoTime() - start, RequestTracer.current(context));
+                    return parser.error() != null ? Flux.error(malformed(parser)) : Flux.fromIterable(trades);
                 }
                 return Flux.error(new TradeValidationException("Unsupported content type"));
             } catch (Exception e) {
@@ -92,15 +223,214 @@ public class TradeService {
         });
     }
 
-    private Mono<EnrichedTradeDTO> enrichTrade(TradeDTO trade) {
-        return productMappingService.getProductName(trade.getProductId())
-                .defaultIfEmpty("Missing Product Name")
-                .map(productName -> new EnrichedTradeDTO(
-                        trade.getDate(),
-                        trade.getProductId(),
-                        trade.getCurrency(),
-                        trade.getPrice(),
-                        productName
-                ));
+    Flux<TradeDTO> validateAndParseTradeStream(Flux<DataBuffer> tradeData, String contentType) {
+        Flux<TradeDTO> trades;
+        if ("text/csv".equalsIgnoreCase(contentType)) {
+            trades = readCsvTradeStream(tradeData);
+        } else if ("application/json".equalsIgnoreCase(contentType)) {
+            trades = readJsonTradeStream(tradeData, contentType);
+        } else if ("application/xml".equalsIgnoreCase(contentType)) {
+            trades = readXmlTradeStream(tradeData, contentType);
+        } else if (BinaryTradeFormat.CONTENT_TYPE.equalsIgnoreCase(contentType)) {
+            trades = readBinaryTradeStream(tradeData);
+        } else {
+            return Flux.error(new TradeValidationException("Unsupported content type"));
+        }
+        return trades.doOnError(e -> logger.error("Error parsing trade stream: {}", e.getMessage()));
+    }
+
+    private Flux<TradeDTO> readCsvTradeStream(Flux<DataBuffer> tradeData) {
+        return Flux.deferContextual(context -> {
+            CsvTradeParser parser = new CsvTradeParser();
+            long[] nanos = {0};
+            return tradeData
+                    .concatMapIterable(buffer -> {
+                        long start = System.nanoTime();
+                        List<TradeDTO> trades = new ArrayList<>();
+                        try {
+                            parser.feed(buffer, trades);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                        nanos[0] += System.nanoTime() - start;
+                        return trades;
+                    }, STREAM_PREFETCH)
+                    .concatWith(Flux.defer(() -> {
+                        long start = System.nanoTime();
+                        List<TradeDTO> trades = new ArrayList<>();
+                        parser.finish(trades);
+                        recordCsvParse(parser, nanos[0] + System.nanoTime() - start,
+                                RequestTracer.current(context));
+                        return Flux.fromIterable(trades);
+                    }));
+        });
+    }
+
+    private Flux<TradeDTO> readBinaryTradeStream(Flux<DataBuffer> tradeData) {
+        return Flux.deferContextual(context -> {
+            BinaryTradeParser parser = new BinaryTradeParser();
+            long[] nanos = {0};
+            return tradeData
+                    .concatMapIterable(buffer -> {
+                        long start = System.nanoTime();
+                        List<TradeDTO> trades = new ArrayList<>();
+                        try {
+                            parser.feed(buffer, trades);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                        nanos[0] += System.nanoTime() - start;
+                        if (parser.error() != null) {
+                            // the rest of the body cannot be decoded, so the request fails without reading it
+                            recordBinaryParse(parser, nanos[0], RequestTracer.current(context));
+                            throw malformed(parser);
+                        }
+                        return trades;
+                    }, STREAM_PREFETCH)
+                    .concatWith(Flux.defer(() -> {
+                        long start = System.nanoTime();
+                        parser.finish(new ArrayList<>());
+                        recordBinaryParse(parser, nanos[0] + System.nanoTime() - start,
+                                RequestTracer.current(context));
+                        return parser.error() != null ? Flux.error(malformed(parser)) : Flux.empty();
+                    }));
+        });
+    }
+
+    /**
+     * Reads JSON trades from the request body as it arrives with the non-blocking
+     * {@link JsonTradeStreamParser}, on the thread that delivers each buffer.
+     */
+    private Flux<TradeDTO> readJsonTradeStream(Flux<DataBuffer> tradeData, String contentType) {
+        return Flux.deferContextual(context -> Flux.using(
+                () -> new TokenParse(new JsonTradeStreamParser(objectMapper), contentType,
+                        RequestTracer.current(context)),
+                parse -> tradeData
+                        .concatMapIterable(buffer -> {
+                            long start = System.nanoTime();
+                            List<TradeDTO> trades = new ArrayList<>();
+                            try {
+                                parse.stream.feed(buffer, trades);
+                            } catch (IOException e) {
+                                throw malformed(parse, e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                            return accept(parse, trades, start);
+                        }, STREAM_PREFETCH)
+                        .concatWith(Flux.defer(() -> {
+                            long start = System.nanoTime();
+                            List<TradeDTO> trades = new ArrayList<>();
+                            try {
+                                parse.stream.finish(trades);
+                            } catch (IOException e) {
+                                return Flux.error(malformed(parse, e));
+                            }
+                            return Flux.fromIterable(accept(parse, trades, start));
+                        })),
+                this::closeTokenParse));
+    }
+
+    private List<TradeDTO> accept(TokenParse parse, List<TradeDTO> trades, long start) {
+        int read = trades.size();
+        trades.removeIf(trade -> !isValidDate(trade.getDate()));
+        parse.invalidDates += read - trades.size();
+        parse.accepted += trades.size();
+        parse.nanos += System.nanoTime() - start;
+        return trades;
+    }
+
+    /**
+     * Reads XML trades from the request body as it arrives. The parser blocks on the body, so it
+     * runs on the bounded elastic scheduler.
+     */
+    private Flux<TradeDTO> readXmlTradeStream(Flux<DataBuffer> tradeData, String contentType) {
+        return readTokens(() -> xmlMapper.createParser(
+                        DataBufferSubscriberInputStream.subscribe(tradeData, STREAM_PREFETCH)), contentType, true)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Emits trades one element at a time as the token stream is read, so enrichment starts before
+     * the whole document is parsed. Malformed elements and invalid dates are skipped; a syntax error
+     * fails the stream with a {@link TradeValidationException} after the trades read so far, so the
+     * request is not answered as if the document had ended there.
+     */
+    private Flux<TradeDTO> readTokens(Callable<JsonParser> parserFactory, String contentType, boolean xml) {
+        return Flux.deferContextual(context -> Flux.using(
+                () -> new TokenParse(new TradeTokenReader(parserFactory.call(), xml), contentType,
+                        RequestTracer.current(context)),
+                parse -> Flux.<TradeDTO>generate(sink -> {
+                    long start = System.nanoTime();
+                    try {
+                        TradeDTO trade = parse.reader.next();
+                        while (trade != null && !isValidDate(trade.getDate())) {
+                            parse.invalidDates++;
+                            trade = parse.reader.next();
+                        }
+                        if (trade != null) {
+                            parse.accepted++;
+                            sink.next(trade);
+                        } else {
+                            sink.complete();
+                        }
+                    } catch (IOException e) {
+                        sink.error(malformed(parse, e));
+                    }
+                    parse.nanos += System.nanoTime() - start;
+                }),
+                this::closeTokenParse));
+    }
+
+    private static TradeValidationException malformed(BinaryTradeParser parser) {
+        return new TradeValidationException("Malformed trade batch after " + parser.rows() + " trades: "
+                + parser.error());
+    }
+
+    private static TradeValidationException malformed(TokenParse parse, IOException e) {
+        return new TradeValidationException("Malformed trade document after " + parse.reader.elements()
+                + " elements: " + e.getMessage());
+    }
+
+    private void closeTokenParse(TokenParse parse) {
+        TradeTokenReader reader = parse.reader;
+        recordParse(parse.trace, parse.contentType, parse.nanos, parse.accepted,
+                parse.invalidDates + reader.invalidElements());
+        metrics.recordSkippedRows(parse.contentType, EnrichmentMetrics.INVALID_DATE, parse.invalidDates);
+        metrics.recordSkippedRows(parse.contentType, EnrichmentMetrics.MALFORMED, reader.invalidElements());
+        if (reader.invalidElements() > 0) {
+            logger.warn("Skipped {} of {} malformed trade elements", reader.invalidElements(), reader.elements());
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close trade parser: {}", e.getMessage());
+        }
+    }
+
+    private static final class TokenParse {
+        private final TradeTokenReader reader;
+        private final JsonTradeStreamParser stream;
+        private final String contentType;
+        private final RequestTrace trace;
+        private long nanos;
+        private long accepted;
+        private long invalidDates;
+
+        private TokenParse(TradeTokenReader reader, String contentType, RequestTrace trace) {
+            this(reader, null, contentType, trace);
+        }
+
+        private TokenParse(JsonTradeStreamParser stream, String contentType, RequestTrace trace) {
+            this(stream.reader(), stream, contentType, trace);
+        }
+
+        private TokenParse(TradeTokenReader reader, JsonTradeStreamParser stream, String contentType,
+                           RequestTrace trace) {
+            this.reader = reader;
+            this.stream = stream;
+            this.contentType = contentType;
+            this.trace = trace;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads trades one element at a time from a Jackson token stream, either a JSON array of objects
+ * or an XML document whose root contains one element per trade.
+ * <p>
+ * Fields are bound straight from the tokens, so an element with a wrong value type or an unknown
+ * field is reported and skipped without affecting its neighbours. Syntax errors cannot be recovered
+ * from and are thrown from {@link #next()}; trades read before them have already been returned.
+ */
+public final class TradeTokenReader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TradeTokenReader.class);
+
+    private final JsonParser parser;
+    private final boolean xml;
+    private boolean started;
+    private long elements;
+    private long invalidElements;
+
+    public TradeTokenReader(JsonParser parser, boolean xml) {
+        this.parser = parser;
+        this.xml = xml;
+    }
+
+    /**
+     * Returns the next well-formed trade, or {@code null} when the input is exhausted.
+     */
+    public TradeDTO next() throws IOException {
+        while (advanceToElement()) {
+            elements++;
+            TradeDTO trade = readElement(parser);
+            if (trade != null) {
+                return trade;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads one JSON array element from {@code element}, a parser over the tokens of just that
+     * element, for callers that split the document themselves. Returns {@code null} when the
+     * element is not a well-formed trade.
+     */
+    public TradeDTO read(JsonParser element) throws IOException {
+        elements++;
+        JsonToken token = element.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+            return readElement(element);
+        }
+        skip(token == JsonToken.START_ARRAY ? "nested array instead of a trade"
+                : "scalar " + token + " instead of a trade");
+        return null;
+    }
+
+    public long elements() {
+        return elements;
+    }
+
+    public long invalidElements() {
+        return invalidElements;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private boolean advanceToElement() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT -> {
+                    if (!started && xml) {
+                        // the XML root element wraps the trades
+                        started = true;
+                        continue;
+                    }
+                    started = true;
+                    return true;
+                }
+                case START_ARRAY -> {
+                    if (!started) {
+                        started = true;
+                        continue;
+                    }
+                    parser.skipChildren();
+                    elements++;
+                    skip("nested array instead of a trade");
+                }
+                case FIELD_NAME -> {
+                    // XML element name of the next trade
+                }
+                case END_ARRAY, END_OBJECT -> {
+                    return false;
+                }
+                default -> {
+                    elements++;
+                    skip("scalar " + token + " instead of a trade");
+                }
+            }
+        }
+        return false;
+    }
+
+    private TradeDTO readElement(JsonParser parser) throws IOException {
+        String date = null;
+        String productId = null;
+        String currency = null;
+        Double price = null;
+        String error = null;
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+            if (token == null) {
+                throw new IOException("Unexpected end of input inside trade #" + elements);
+            }
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                error = "field '" + field + "' is not a scalar";
+                continue;
+            }
+            switch (field) {
+                case "date" -> date = text(parser, value);
+                case "productId" -> productId = text(parser, value);
+                case "currency" -> currency = text(parser, value);
+                case "price" -> {
+                    price = number(parser, value);
+                    if (price == null && value != JsonToken.VALUE_NULL) {
+                        error = "price '" + parser.getText() + "' is not a number";
+                    }
+                }
+                default -> error = "unknown field '" + field + "'";
+            }
+        }
+
+        if (error == null && productId == null) {
+            // a trade cannot be enriched without its product
+            error = "productId is missing";
+        }
+        if (error != null) {
+            skip(error);
+            return null;
+        }
+        return new TradeDTO(date, productId, currency, price);
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getText() : null;
+    }
+
+    private static Double number(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Double.parseDouble(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void skip(String reason) {
+        invalidElements++;
+        logger.warn("Skipping malformed trade #{}: {}", elements, reason);
+    }
+}
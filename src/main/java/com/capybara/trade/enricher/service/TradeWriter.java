@@ -0,0 +1,40 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes enriched trades to an {@link OutputStream} one at a time in the response format, without
+ * building the document in memory. Call {@link #writeStart()}, {@link #write} per trade, then
+ * {@link #writeEnd()}; {@link #flush()} pushes buffered output to the stream between chunks.
+ * Instances are not thread-safe; use one per response.
+ */
+public interface TradeWriter extends Flushable, Closeable {
+
+    /**
+     * Response type of the JSON output with a product name dictionary, for clients that ask for it
+     * in their {@code Accept} header.
+     */
+    String DICTIONARY_JSON = "application/x-trade-dictionary+json";
+
+    void writeStart() throws IOException;
+
+    void write(EnrichedTradeDTO trade) throws IOException;
+
+    void writeEnd() throws IOException;
+
+    static TradeWriter create(String contentType, OutputStream out) throws IOException {
+        return switch (contentType.toLowerCase()) {
+            case "text/csv" -> new CsvTradeWriter(out);
+            case "application/json" -> new JsonTradeWriter(out);
+            case "application/xml" -> new XmlTradeWriter(out);
+            case BinaryTradeFormat.CONTENT_TYPE -> new BinaryTradeWriter(out);
+            case DICTIONARY_JSON -> new DictionaryJsonTradeWriter(out);
+            default -> throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.capybara.trade.enricher.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-request interner for repeated trade values such as product names and currencies, so equal
+ * values share one {@code String} and writers can recognise them by identity. Safe for the
+ * concurrent enrichment chunks of one request; once {@code maxEntries} distinct values were seen,
+ * new values are returned as they are.
+ */
+final class ValueDictionary {
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    ValueDictionary(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = values.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (values.size() >= maxEntries) {
+            return value;
+        }
+        existing = values.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,77 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+
+import org.codehaus.stax2.XMLOutputFactory2;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes trades as {@code <trades><item>...</item></trades>} through a streaming
+ * {@link ToXmlGenerator}, so the document has the correct root without post-processing.
+ */
+final class XmlTradeWriter implements TradeWriter {
+    private static final XmlFactory xmlFactory = createXmlFactory();
+    private static final QName ROOT = new QName("trades");
+
+    private final ToXmlGenerator generator;
+
+    XmlTradeWriter(OutputStream out) throws IOException {
+        this.generator = xmlFactory.createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Keeps {@code <trades></trades>} for an empty result instead of collapsing it to {@code <trades/>}.
+     */
+    private static XmlFactory createXmlFactory() {
+        XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+        outputFactory.setProperty(XMLOutputFactory2.P_AUTOMATIC_EMPTY_ELEMENTS, false);
+        return XmlFactory.builder().xmlOutputFactory(outputFactory).build();
+    }
+
+    @Override
+    public void writeStart() throws IOException {
+        generator.setNextName(ROOT);
+        generator.writeStartObject();
+    }
+
+    @Override
+    public void write(EnrichedTradeDTO trade) throws IOException {
+        generator.writeFieldName("item");
+        generator.writeStartObject();
+        generator.writeStringField("date", trade.getDate());
+        generator.writeStringField("productId", trade.getProductId());
+        generator.writeStringField("currency", trade.getCurrency());
+        generator.writeFieldName("price");
+        if (trade.getPrice() != null) {
+            generator.writeNumber(trade.getPrice());
+        } else {
+            generator.writeNull();
+        }
+        generator.writeStringField("productName", trade.getProductName());
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.capybara.trade.enricher.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapProductDictionaryTest {
+
+    @Test
+    void sizesTablesForHugeExpectedSizesWithoutOverflowing() {
+        assertEquals(Integer.MAX_VALUE - 8, OffHeapProductDictionary.initialArenaBytes(100_000_000));
+        assertEquals(Integer.MAX_VALUE - 8, OffHeapProductDictionary.initialArenaBytes(Integer.MAX_VALUE));
+        assertEquals(32_000_000, OffHeapProductDictionary.initialArenaBytes(1_000_000));
+        assertEquals(4096, OffHeapProductDictionary.initialArenaBytes(0));
+        assertEquals(1 << 27, OffHeapProductDictionary.initialCapacity(100_000_000));
+        assertEquals(1 << 27, OffHeapProductDictionary.initialCapacity(Integer.MAX_VALUE));
+        assertEquals(1 << 21, OffHeapProductDictionary.initialCapacity(1_000_000));
+    }
+
+    @Test
+    void putGetUpdateAndRemove() {
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(4);
+        dictionary.put("1", "Treasury Bills Domestic");
+        dictionary.put("2", "Corporate Bonds Domestic");
+        dictionary.put("1", "Treasury Bills Foreign");
+
+        assertEquals("Treasury Bills Foreign", dictionary.get("1"));
+        assertEquals("Corporate Bonds Domestic", dictionary.get("2"));
+        assertNull(dictionary.get("3"));
+        assertEquals(2, dictionary.size());
+
+        assertTrue(dictionary.remove("1"));
+        assertFalse(dictionary.remove("1"));
+        assertNull(dictionary.get("1"));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    void growsIndexAndArena() {
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(16);
+        for (int i = 0; i < 50_000; i++) {
+            dictionary.put(Integer.toString(i), "Product " + i);
+        }
+        for (int i = 0; i < 50_000; i += 7) {
+            dictionary.remove(Integer.toString(i));
+        }
+
+        assertEquals("Product 49999", dictionary.get("49999"));
+        assertNull(dictionary.get("49994"));
+        assertEquals(50_000 - 7143, dictionary.size());
+    }
+
+    @Test
+    void handlesNonAsciiIdsAndNames() {
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(16);
+        dictionary.put("Ä-42", "Zürich Anleihe €");
+
+        assertEquals("Zürich Anleihe €", dictionary.get("Ä-42"));
+        assertNull(dictionary.get("A-42"));
+    }
+
+    @Test
+    void snapshotRoundTrip(@TempDir Path dir) throws IOException {
+        Path snapshot = dir.resolve("products.dict");
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(16);
+        for (int i = 0; i < 1_000; i++) {
+            dictionary.put(Integer.toString(i), "Product " + i);
+        }
+        dictionary.remove("500");
+        dictionary.writeSnapshot(snapshot);
+
+        OffHeapProductDictionary reopened = OffHeapProductDictionary.open(snapshot);
+        assertEquals(999, reopened.size());
+        assertEquals("Product 999", reopened.get("999"));
+        assertNull(reopened.get("500"));
+
+        reopened.put("1000", "Product 1000");
+        assertEquals("Product 1000", reopened.get("1000"));
+        assertEquals("Product 0", reopened.get("0"));
+    }
+
+    @Test
+    void returnsTheSameNameInstanceForRepeatedLookups() {
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(16);
+        dictionary.put("1", "Treasury Bills Domestic");
+
+        assertSame(dictionary.get("1"), dictionary.get("1"));
+
+        dictionary.put("1", "Treasury Bills Foreign");
+        assertEquals("Treasury Bills Foreign", dictionary.get("1"));
+    }
+
+    @Test
+    void readersSeeConsistentEntriesWhileTheArenaGrows() throws InterruptedException {
+        OffHeapProductDictionary dictionary = OffHeapProductDictionary.create(16);
+        for (int i = 0; i < 1_000; i++) {
+            dictionary.put(Integer.toString(i), "Product " + i);
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        int id = ThreadLocalRandom.current().nextInt(1_000);
+                        String name = dictionary.get(Integer.toString(id));
+                        if (name == null || !name.startsWith("Product " + id)) {
+                            throw new AssertionError(id + " resolved to " + name);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // renames append new entries for the same ids, so the arena keeps growing under the readers
+        for (int round = 0; round < 200 && failure.get() == null; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                dictionary.put(Integer.toString(i), "Product " + i + " v" + round);
+            }
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+    }
+}
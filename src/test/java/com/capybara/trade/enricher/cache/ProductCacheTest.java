@@ -0,0 +1,103 @@
+package com.capybara.trade.enricher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductCacheTest {
+
+    @Test
+    void lruEvictsLeastRecentlyUsedEntry() {
+        LruProductCache cache = new LruProductCache(2, 10, Duration.ofMinutes(1));
+        cache.put("1", "One");
+        cache.put("2", "Two");
+        cache.get("1");
+        cache.put("3", "Three");
+
+        assertEquals("One", cache.get("1"));
+        assertNull(cache.get("2"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void missingEntriesExpireAfterTtl() throws InterruptedException {
+        LruProductCache cache = new LruProductCache(10, 10, Duration.ofMillis(20));
+        cache.putMissing("404");
+        assertTrue(cache.isKnownMissing("404"));
+
+        Thread.sleep(40);
+
+        assertFalse(cache.isKnownMissing("404"));
+    }
+
+    @Test
+    void putClearsMissingEntry() {
+        CaffeineProductCache cache = new CaffeineProductCache(10, 0, 10, Duration.ofMinutes(1));
+        cache.putMissing("7");
+        cache.put("7", "Seven");
+
+        assertFalse(cache.isKnownMissing("7"));
+        assertEquals("Seven", cache.get("7"));
+    }
+
+    @Test
+    void statsCountHitsMissesAndLoads() {
+        CaffeineProductCache cache = new CaffeineProductCache(10, 0, 10, Duration.ofMinutes(1));
+        cache.put("1", "One");
+        cache.get("1");
+        cache.get("2");
+        cache.putMissing("2");
+        cache.isKnownMissing("2");
+        cache.recordLoad(2_000_000);
+
+        ProductCacheStats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.negativeHits());
+        assertEquals(1, stats.loads());
+        assertEquals(0.5, stats.hitRatio());
+        assertEquals(2.0, stats.averageLoadTimeMillis());
+    }
+
+    @Test
+    void versionedCacheSwapsReloadedGenerationAtomically() {
+        VersionedProductCache cache = new VersionedProductCache(
+                restore -> new CaffeineProductCache(10, 0, 10, Duration.ofMinutes(1)));
+        cache.put("1", "Old One");
+        cache.put("2", "Deleted");
+        cache.get("1");
+
+        cache.beginReload();
+        cache.putReloaded("1", "New One");
+        assertEquals("Old One", cache.get("1"));
+
+        // a change seen during the reload wins over the value the reload read earlier
+        cache.apply("3", "Three v2");
+        cache.putReloaded("3", "Three v1");
+        assertEquals(1, cache.commitReload());
+
+        assertEquals("New One", cache.get("1"));
+        assertNull(cache.get("2"));
+        assertEquals("Three v2", cache.get("3"));
+        assertEquals(1, cache.stats().version());
+        assertEquals(4, cache.stats().hits());
+    }
+
+    @Test
+    void versionedCacheAppliesDeletes() {
+        VersionedProductCache cache = new VersionedProductCache(
+                restore -> new LruProductCache(10, 10, Duration.ofMinutes(1)));
+        cache.put("1", "One");
+
+        cache.apply("1", null);
+
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.stats().version());
+    }
+}
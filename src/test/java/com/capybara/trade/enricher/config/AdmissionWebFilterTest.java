@@ -0,0 +1,70 @@
+package com.capybara.trade.enricher.config;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.service.AdmissionControl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+class AdmissionWebFilterTest {
+    private AdmissionControl admission;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        admission = new AdmissionControl(EnrichmentMetrics.standalone());
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(admission, "maxQueued", 0);
+        ReflectionTestUtils.setField(admission, "queueTimeout", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(admission, "maxInFlightBytes", DataSize.ofBytes(100));
+        ReflectionTestUtils.setField(admission, "retryAfter", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(admission, "rateLimitKey", "client");
+        ReflectionTestUtils.setField(admission, "requestsPerSecond", 0.5);
+        ReflectionTestUtils.setField(admission, "burst", 1);
+        admission.start();
+        AdmissionWebFilter filter = new AdmissionWebFilter(admission);
+        ReflectionTestUtils.setField(filter, "clientHeader", "X-Client-Id");
+        client = WebTestClient.bindToRouterFunction(RouterFunctions
+                        .route(POST("/api/v1/trade"), request -> request.bodyToMono(String.class)
+                                .flatMap(body -> ServerResponse.ok().bodyValue(body))))
+                .webFilter(filter)
+                .build();
+    }
+
+    @Test
+    void answersWithRetryAfterOnceAClientExceedsItsRate() {
+        post("a", "20240101,1,EUR,10").expectStatus().isOk();
+
+        post("a", "20240101,1,EUR,10")
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals("Retry-After", "2");
+        post("b", "20240101,1,EUR,10").expectStatus().isOk();
+        assertEquals(0, admission.active());
+    }
+
+    @Test
+    void rejectsBodiesLargerThanTheInFlightLimitBeforeReadingThem() {
+        post("a", "x".repeat(101)).expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        assertEquals(0, admission.inFlightBytes());
+    }
+
+    private WebTestClient.ResponseSpec post(String clientId, String body) {
+        return client.post().uri("/api/v1/trade")
+                .header("X-Client-Id", clientId)
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue(body)
+                .exchange();
+    }
+}
@@ -0,0 +1,126 @@
+package com.capybara.trade.enricher.config;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+class CompressionWebFilterTest {
+    private static final String ROW = "20240101,Treasury Bills Domestic,EUR,10.00\n";
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        CompressionWebFilter filter = new CompressionWebFilter();
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "minResponseSize", DataSize.ofBytes(1024));
+        ReflectionTestUtils.setField(filter, "gzipLevel", 6);
+        ReflectionTestUtils.setField(filter, "zstdLevel", 3);
+        ReflectionTestUtils.setField(filter, "bufferSize", DataSize.ofKilobytes(8));
+        client = WebTestClient.bindToRouterFunction(RouterFunctions
+                        .route(POST("/api/v1/trade"), request -> request.bodyToMono(String.class)
+                                .flatMap(body -> ServerResponse.ok().bodyValue(body)))
+                        .andRoute(POST("/api/v1/trade/stream"), request -> ServerResponse.ok()
+                                .body(request.bodyToFlux(DataBuffer.class)
+                                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                                        .reduce("", String::concat)
+                                        .flatMapMany(body -> Flux.range(0, 10).map(i -> DefaultDataBufferFactory
+                                                .sharedInstance.wrap(body.getBytes(StandardCharsets.UTF_8)))),
+                                        DataBuffer.class)))
+                .webFilter(filter)
+                .build();
+    }
+
+    @Test
+    void decodesGzipBodiesAndCompressesLargeResponsesWithThePreferredCoding() throws IOException {
+        String body = ROW.repeat(1000);
+
+        byte[] response = client.post().uri("/api/v1/trade")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0.8, zstd")
+                .bodyValue(gzip(body))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "zstd")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertEquals(body, read(new ZstdInputStream(new ByteArrayInputStream(response))));
+        assertTrue(response.length < body.length() / 10, "compressed to " + response.length);
+    }
+
+    @Test
+    void sendsSmallResponsesUncompressed() {
+        client.post().uri("/api/v1/trade")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .bodyValue(ROW)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+                .expectBody(String.class).isEqualTo(ROW);
+    }
+
+    @Test
+    void compressesStreamedResponsesChunkByChunk() throws IOException {
+        byte[] response = client.post().uri("/api/v1/trade/stream")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                .bodyValue(ROW)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_LENGTH)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertEquals(ROW.repeat(10), read(new GZIPInputStream(new ByteArrayInputStream(response))));
+    }
+
+    @Test
+    void rejectsUnsupportedRequestEncodings() {
+        client.post().uri("/api/v1/trade")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.CONTENT_ENCODING, "br")
+                .bodyValue(ROW)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
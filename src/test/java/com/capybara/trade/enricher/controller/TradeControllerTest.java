@@ -182,4 +182,58 @@ public class TradeControllerTest {
         }
 
     }
+
+    @Test
+    public void testCsvTradeStreamEnrichment() {
+        String csvInput =
+                """
+                        date,productId,currency,price
+                        20230106,2,USD,700.60
+                        invalid,2,USD,700.60
+                        20230106,3,EUR,800.70""";
+
+        String response = webTestClient.post()
+                .uri("/api/v1/trade/stream")
+                .header("Content-Type", "text/csv")
+                .bodyValue(csvInput)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("text/csv")
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        if (response != null) {
+            String[] lines = response.trim().split("\\R");
+            assertEquals(3, lines.length, "Expected 3 lines including header");
+            assertEquals("date,productName,currency,price", lines[0]);
+        }
+    }
+
+    @Test
+    public void testXmlTradeStreamEnrichment() {
+        String xmlInput = """
+                <trades>
+                    <trade><date>20230105</date><productId>10</productId><currency>USD</currency><price>550.40</price></trade>
+                    <trade><date>20230105</date><productId>11</productId><currency>EUR</currency><price>600.50</price></trade>
+                </trades>""";
+
+        String response = webTestClient.post()
+                .uri("/api/v1/trade/stream")
+                .header("Content-Type", "application/xml")
+                .bodyValue(xmlInput)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("application/xml")
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        if (response != null) {
+            assertTrue(response.startsWith("<trades>"));
+            assertTrue(response.endsWith("</trades>"));
+            assertEquals(2, response.split("<item>").length - 1);
+            assertTrue(response.contains("<productName>"));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.capybara.trade.enricher.controller;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.metrics.RequestTracer;
+import com.capybara.trade.enricher.service.BinaryTradeFormat;
+import com.capybara.trade.enricher.service.BlockingEnrichmentEngine;
+import com.capybara.trade.enricher.service.EnrichmentEngine;
+import com.capybara.trade.enricher.service.ProductMappingService;
+import com.capybara.trade.enricher.service.TradeResultCache;
+import com.capybara.trade.enricher.service.TradeService;
+import com.capybara.trade.enricher.service.TradeWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Requests whose body cannot be decoded, against a {@link TradeService} without Redis.
+ */
+class TradeControllerValidationTest {
+    private EnrichmentEngine engine;
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        ProductMappingService productMappingService = mock(ProductMappingService.class);
+        when(productMappingService.findCachedProductName(anyString()))
+                .thenAnswer(invocation -> "Product " + invocation.getArgument(0));
+        engine = new EnrichmentEngine(productMappingService);
+        ReflectionTestUtils.setField(engine, "chunkSize", 2);
+        ReflectionTestUtils.setField(engine, "parallelism", 2);
+        ReflectionTestUtils.setField(engine, "maxOutstandingLookups", 8);
+        engine.start();
+        TradeService tradeService = new TradeService(engine, EnrichmentMetrics.standalone(),
+                TradeResultCache.disabled(), BlockingEnrichmentEngine.disabled());
+        ReflectionTestUtils.setField(tradeService, "streamChunkSize", 2);
+        webTestClient = WebTestClient.bindToController(new TradeController(tradeService, new RequestTracer(List.of())))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    void rejectsATruncatedBinaryDocument() throws IOException {
+        byte[] document = binary();
+        byte[] truncated = Arrays.copyOf(document, document.length - 6);
+
+        String response = webTestClient.post()
+                .uri("/api/v1/trade")
+                .header("Content-Type", BinaryTradeFormat.CONTENT_TYPE)
+                .bodyValue(truncated)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertTrue(response.contains("Truncated document"), response);
+    }
+
+    @Test
+    void abortsAStreamedTruncatedBinaryDocument() throws IOException {
+        byte[] document = binary();
+        byte[] truncated = Arrays.copyOf(document, document.length - 6);
+
+        // the response has started with the document header, so the failure can only abort it
+        Flux<byte[]> body = webTestClient.post()
+                .uri("/api/v1/trade/stream")
+                .header("Content-Type", BinaryTradeFormat.CONTENT_TYPE)
+                .bodyValue(truncated)
+                .exchange()
+                .returnResult(byte[].class)
+                .getResponseBody();
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> body.blockLast(Duration.ofSeconds(5)));
+        assertTrue(NestedExceptionUtils.getMostSpecificCause(e).getMessage().contains("Truncated document"),
+                e.toString());
+    }
+
+    private static byte[] binary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TradeWriter writer = TradeWriter.create(BinaryTradeFormat.CONTENT_TYPE, out)) {
+            writer.writeStart();
+            writer.write(new EnrichedTradeDTO("20230228", "1", "EUR", 1.0, null));
+            writer.flush();
+            writer.write(new EnrichedTradeDTO("20230228", "2", "EUR", 2.0, null));
+            writer.writeEnd();
+        }
+        return out.toByteArray();
+    }
+}
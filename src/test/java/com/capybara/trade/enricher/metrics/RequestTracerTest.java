@@ -0,0 +1,74 @@
+package com.capybara.trade.enricher.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestTracerTest {
+
+    @Test
+    void recordsNothingWhenSamplingIsOff() {
+        InMemoryTraceExporter exporter = new InMemoryTraceExporter(10, 5);
+        RequestTracer tracer = new RequestTracer(List.of(exporter));
+
+        RequestTrace trace = tracer.start("POST /api/v1/trade", "text/csv");
+        tracer.trace(trace, RequestTracer.span("enrich", Mono.just("ok"))).block();
+
+        assertSame(RequestTrace.NONE, trace);
+        assertTrue(exporter.recent().isEmpty());
+    }
+
+    @Test
+    void exportsStagesAndCountersOfASampledRequest() {
+        InMemoryTraceExporter exporter = new InMemoryTraceExporter(10, 5);
+        RequestTracer tracer = new RequestTracer(List.of(exporter));
+        ReflectionTestUtils.setField(tracer, "sampleRate", 1.0);
+
+        RequestTrace trace = tracer.start("POST /api/v1/trade", "text/csv");
+        Mono<String> request = RequestTracer.span("enrich", Mono.delay(Duration.ofMillis(20)).thenReturn("ok"))
+                .flatMap(result -> Mono.deferContextual(context -> {
+                    RequestTrace current = RequestTracer.current(context);
+                    current.accumulate("product_lookup", 1_000_000);
+                    current.accumulate("product_lookup", 3_000_000);
+                    current.count("rows", 42);
+                    return Mono.just(result);
+                }));
+        tracer.trace(trace, request).block();
+
+        TraceView view = exporter.recent().get(0);
+        assertEquals("completed", view.outcome());
+        assertEquals("enrich", view.spans().get(0).stage());
+        assertTrue(view.spans().get(0).durationMillis() >= 20);
+        assertTrue(view.durationMillis() >= view.spans().get(0).durationMillis());
+        assertEquals(new TraceView.Aggregate(2, 4.0, 3.0), view.aggregates().get("product_lookup"));
+        assertEquals(42L, view.counters().get("rows"));
+    }
+
+    @Test
+    void keepsTheSlowestAndTheLatestTraces() {
+        InMemoryTraceExporter exporter = new InMemoryTraceExporter(3, 2);
+
+        for (double duration : new double[] {5, 40, 1, 30, 2}) {
+            exporter.export(trace(duration));
+        }
+
+        assertEquals(List.of(40.0, 30.0), exporter.slowest().stream().map(TraceView::durationMillis).toList());
+        assertEquals(List.of(2.0, 30.0, 1.0), exporter.recent().stream().map(TraceView::durationMillis).toList());
+        exporter.clearSlowest();
+        assertTrue(exporter.slowest().isEmpty());
+    }
+
+    private static TraceView trace(double durationMillis) {
+        return new TraceView(Double.toString(durationMillis), "POST /api/v1/trade", "text/csv", Instant.now(),
+                durationMillis, "completed", List.of(), Map.of(), Map.of());
+    }
+}
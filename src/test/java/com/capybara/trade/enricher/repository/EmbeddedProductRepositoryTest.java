@@ -0,0 +1,78 @@
+package com.capybara.trade.enricher.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedProductRepositoryTest {
+
+    @Test
+    void savedProductsBecomeVisibleOnFlushAndSurviveARestart(@TempDir Path dir) {
+        Path index = dir.resolve("products.sst");
+        EmbeddedProductRepository repository = new EmbeddedProductRepository(index);
+
+        repository.saveAll(Map.of("1", "Bond", "2", "Swap")).block();
+        assertNull(repository.findName("1").block());
+
+        repository.flush().block();
+        assertEquals(Arrays.asList("Swap", null, "Bond"), repository.findNames(List.of("2", "3", "1")).block());
+
+        EmbeddedProductRepository reopened = new EmbeddedProductRepository(index);
+        assertEquals("Bond", reopened.findName("1").block());
+        assertEquals(2, reopened.findAll().count().block());
+    }
+
+    @Test
+    void aNewLoadDiscardsTheProductsOfALoadThatNeverFlushed(@TempDir Path dir) {
+        EmbeddedProductRepository repository = new EmbeddedProductRepository(dir.resolve("products.sst"));
+        repository.beginLoad();
+        repository.saveAll(Map.of("1", "Bond", "2", "Swap")).block();
+
+        // the first load failed before its flush, the product file no longer has product 2
+        repository.beginLoad();
+        repository.saveAll(Map.of("1", "Bond", "3", "Future")).then(repository.flush()).block();
+
+        assertEquals(Arrays.asList("Bond", null, "Future"), repository.findNames(List.of("1", "2", "3")).block());
+        assertEquals(2, repository.findAll().count().block());
+    }
+
+    @Test
+    void deletesProductsSavedSinceTheLastFlush(@TempDir Path dir) {
+        EmbeddedProductRepository repository = new EmbeddedProductRepository(dir.resolve("products.sst"));
+        repository.saveAll(Map.of("1", "Bond", "2", "Swap")).block();
+
+        assertTrue(repository.deleteAll(List.of("2", "3")).block());
+        repository.flush().block();
+
+        assertEquals(Arrays.asList("Bond", null), repository.findNames(List.of("1", "2")).block());
+    }
+
+    @Test
+    void indexIsCurrentUntilTheProductFileChanges(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("products.csv");
+        Files.writeString(csv, "productId,productName\n1,Bond\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        EmbeddedProductRepository repository = new EmbeddedProductRepository(dir.resolve("products.sst"));
+        FileSystemResource source = new FileSystemResource(csv);
+
+        assertFalse(repository.isCurrent(source));
+        repository.saveAll(Map.of("1", "Bond")).then(repository.flush()).block();
+        assertTrue(repository.isCurrent(source));
+
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertFalse(repository.isCurrent(source));
+    }
+}
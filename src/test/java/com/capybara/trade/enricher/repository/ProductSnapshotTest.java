@@ -0,0 +1,61 @@
+package com.capybara.trade.enricher.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSnapshotTest {
+
+    @Test
+    void stagesTheDifferenceToTheLastSnapshot(@TempDir Path dir) throws IOException {
+        ProductSnapshot snapshot = new ProductSnapshot(dir.resolve("products.snapshot"));
+        snapshot.add(Map.of("1", "Bond", "2", "Swap", "3", "Future", "é", "Option"));
+        snapshot.write();
+
+        snapshot.add(Map.of("1", "Bond", "2", "Interest Rate Swap"));
+        snapshot.add(Map.of("4", "Repo", "é", "Option"));
+        ProductDelta delta = snapshot.stage();
+
+        assertEquals(Map.of("2", "Interest Rate Swap", "4", "Repo"), delta.upserts());
+        assertEquals(List.of("3"), delta.deletes());
+        assertEquals(1, delta.inserted());
+        assertEquals(1, delta.updated());
+    }
+
+    @Test
+    void discardingALoadDropsTheProductsCollectedSoFar(@TempDir Path dir) throws IOException {
+        ProductSnapshot snapshot = new ProductSnapshot(dir.resolve("products.snapshot"));
+        snapshot.add(Map.of("1", "Bond"));
+        snapshot.write();
+
+        snapshot.add(Map.of("2", "Swap"));
+        snapshot.discard();
+        snapshot.add(Map.of("1", "Bond"));
+
+        assertTrue(snapshot.stage().isEmpty());
+    }
+
+    @Test
+    void keepsTheLastSnapshotUntilTheStagedOneIsCommitted(@TempDir Path dir) throws IOException {
+        ProductSnapshot snapshot = new ProductSnapshot(dir.resolve("products.snapshot"));
+        snapshot.add(Map.of("1", "Bond"));
+        snapshot.write();
+
+        snapshot.add(Map.of("1", "Bond", "2", "Swap"));
+        snapshot.stage();
+        snapshot.discard();
+        snapshot.add(Map.of("1", "Bond", "2", "Swap"));
+        assertEquals(1, snapshot.stage().inserted());
+
+        snapshot.commit();
+        snapshot.add(Map.of("1", "Bond", "2", "Swap"));
+        assertTrue(snapshot.stage().isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductTableTest {
+
+    @Test
+    void findsEveryProductAcrossBlocks(@TempDir Path dir) throws IOException {
+        Map<String, String> products = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            products.put(Integer.toString(i), "Product " + i);
+        }
+        products.put("é-1", "Café Bond");
+        products.put("", "Empty id");
+        Path file = dir.resolve("products.sst");
+
+        ProductTable.write(file, products);
+        ProductTable table = ProductTable.open(file);
+
+        assertEquals(products.size(), table.size());
+        products.forEach((id, name) -> assertEquals(name, table.find(id), id));
+        assertNull(table.find("10000"));
+        assertNull(table.find("-1"));
+        assertNull(table.find("ÿ"));
+        assertTrue(Files.notExists(dir.resolve("products.sst.tmp")));
+    }
+
+    @Test
+    void iteratesProductsInIdOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("products.sst");
+        ProductTable.write(file, Map.of("b", "Swap", "a", "Bond", "c", "Future"));
+
+        List<Product> products = new ArrayList<>();
+        ProductTable.open(file).forEach(products::add);
+
+        assertEquals(List.of(new Product("a", "Bond"), new Product("b", "Swap"), new Product("c", "Future")), products);
+    }
+
+    @Test
+    void mergesRunsSpilledToDiskWithTheLatestEntryOfEachId(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("products.sst");
+        Map<String, String> expected = new HashMap<>();
+        try (ProductTable.Writer writer = new ProductTable.Writer(file, 100)) {
+            for (int batch = 0; batch < 10; batch++) {
+                Map<String, String> products = new HashMap<>();
+                for (int i = batch * 70; i < batch * 70 + 150; i++) {
+                    products.put(Integer.toString(i), "Product " + i + " v" + batch);
+                }
+                writer.putAll(products);
+                expected.putAll(products);
+            }
+            writer.removeAll(List.of("5", "700", "missing"));
+            expected.remove("5");
+            expected.remove("700");
+            writer.putAll(Map.of("700", "Renamed"));
+            expected.put("700", "Renamed");
+            assertTrue(listRuns(dir).size() > 1);
+
+            assertEquals(expected.size(), writer.finish(file));
+        }
+        ProductTable table = ProductTable.open(file);
+
+        assertEquals(expected.size(), table.size());
+        expected.forEach((id, name) -> assertEquals(name, table.find(id), id));
+        assertNull(table.find("5"));
+        List<String> ids = new ArrayList<>();
+        table.forEach(product -> ids.add(product.getProductId()));
+        assertEquals(expected.keySet().stream().sorted().toList(), ids);
+        assertEquals(List.of(), listRuns(dir));
+    }
+
+    @Test
+    void closingAWriterDeletesItsRuns(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("products.sst");
+        ProductTable.Writer writer = new ProductTable.Writer(file, 2);
+        writer.putAll(Map.of("1", "Bond", "2", "Swap", "3", "Future"));
+        assertEquals(1, listRuns(dir).size());
+
+        writer.close();
+
+        assertEquals(List.of(), listRuns(dir));
+        assertTrue(Files.notExists(file));
+        assertThrows(IOException.class, () -> writer.putAll(Map.of("4", "Repo")));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotTables(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("products.csv");
+        Files.writeString(file, "productId,productName\n1,Bond\n");
+
+        assertThrows(IOException.class, () -> ProductTable.open(file));
+    }
+
+    private static List<Path> listRuns(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".run")).toList();
+        }
+    }
+}
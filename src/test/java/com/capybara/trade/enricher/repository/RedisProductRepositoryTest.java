@@ -0,0 +1,94 @@
+package com.capybara.trade.enricher.repository;
+
+import com.capybara.trade.enricher.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisProductRepositoryTest {
+
+    private final Map<String, Map<String, String>> hashes = new HashMap<>();
+    private ReactiveHashOperations<String, String, String> hashOperations;
+    private RedisProductRepository repository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveStringRedisTemplate stringTemplate = mock(ReactiveStringRedisTemplate.class);
+        hashOperations = mock(ReactiveHashOperations.class);
+        when(stringTemplate.<String, String>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.putAll(anyString(), anyMap())).thenAnswer(invocation -> {
+            Map<String, String> fields = invocation.getArgument(1);
+            hashes.computeIfAbsent(invocation.getArgument(0), key -> new HashMap<>()).putAll(fields);
+            return Mono.just(true);
+        });
+        when(hashOperations.multiGet(anyString(), any())).thenAnswer(invocation -> {
+            Map<String, String> hash = hashes.getOrDefault(invocation.getArgument(0), Map.of());
+            List<String> values = new ArrayList<>();
+            for (Object field : (List<?>) invocation.getArgument(1)) {
+                values.add(hash.get(field));
+            }
+            return Mono.just(values);
+        });
+        when(hashOperations.scan(anyString(), any(ScanOptions.class))).thenAnswer(invocation ->
+                Flux.fromIterable(hashes.getOrDefault(invocation.getArgument(0), Map.of()).entrySet())
+                        .map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue())));
+
+        repository = new RedisProductRepository(mock(ReactiveRedisTemplate.class), stringTemplate,
+                RedisProductRepository.Layout.HASH, 4);
+    }
+
+    @Test
+    void bucketIsCrc32OfTheProductIdSoOtherWritersCanComputeIt() {
+        RedisProductRepository wide = new RedisProductRepository(mock(ReactiveRedisTemplate.class),
+                mock(ReactiveStringRedisTemplate.class), RedisProductRepository.Layout.HASH, 8192);
+
+        assertEquals(4023, wide.bucketOf("1"));
+        assertEquals("products:{4023}", RedisProductRepository.bucketKey(4023));
+    }
+
+    @Test
+    void storesProductsInBucketHashesAndReadsThemBackInRequestOrder() {
+        assertTrue(repository.saveAll(Map.of("1", "Bond", "2", "Swap", "3", "Future", "4", "Option")).block());
+
+        List<String> names = repository.findNames(List.of("4", "1", "404", "3", "2")).block();
+
+        assertEquals(Arrays.asList("Option", "Bond", null, "Future", "Swap"), names);
+        // 1 and 3 share a bucket, as do 4 and 404: one HMGET per bucket
+        verify(hashOperations, times(3)).multiGet(anyString(), any());
+        assertEquals(Map.of("1", "Bond", "3", "Future"), hashes.get("products:{3}"));
+    }
+
+    @Test
+    void listsEveryProductBucketByBucket() {
+        repository.saveAll(Map.of("1", "Bond", "2", "Swap", "5", "Repo")).block();
+
+        List<Product> products = repository.findAll().collectList().block();
+
+        assertEquals(3, products.size());
+        assertTrue(products.contains(new Product("5", "Repo")));
+        verify(hashOperations, times(4)).scan(anyString(), any(ScanOptions.class));
+    }
+}
@@ -0,0 +1,115 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.exception.AdmissionRejectedException;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+    private final EnrichmentMetrics metrics = EnrichmentMetrics.standalone();
+    private AdmissionControl admission;
+
+    @BeforeEach
+    void setUp() {
+        admission = new AdmissionControl(metrics);
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(admission, "maxQueued", 1);
+        ReflectionTestUtils.setField(admission, "queueTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(admission, "maxInFlightBytes", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(admission, "retryAfter", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(admission, "rateLimitKey", "client");
+        admission.start();
+    }
+
+    @Test
+    void queuesWhenAllSlotsAreTakenAndShedsBeyondTheQueue() {
+        AdmissionControl.Permit first = admit("a", 10);
+        admit("b", 10);
+
+        Mono<AdmissionControl.Permit> queued = admission.admit("c", "text/csv", 10).cache();
+        queued.subscribe();
+        assertEquals(1, admission.queued());
+
+        AdmissionRejectedException rejected = rejection(admission.admit("d", "text/csv", 10));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals(AdmissionControl.OVERLOADED, rejected.getReason());
+        assertEquals(Duration.ofSeconds(2), rejected.getRetryAfter());
+
+        first.release();
+        first.release();
+
+        assertNotNull(queued.block(Duration.ofSeconds(1)));
+        assertEquals(0, admission.queued());
+        assertEquals(2, admission.active());
+        assertEquals(1, metrics.registry().get("trade.admission.rejections").tag("reason", "overloaded").counter().count());
+    }
+
+    @Test
+    void rejectsQueuedRequestsThatWaitTooLong() {
+        ReflectionTestUtils.setField(admission, "queueTimeout", Duration.ofMillis(50));
+        admit("a", 10);
+        admit("b", 10);
+
+        StepVerifier.create(admission.admit("c", "text/csv", 10))
+                .expectErrorSatisfies(e -> assertEquals(AdmissionControl.QUEUE_TIMEOUT,
+                        ((AdmissionRejectedException) e).getReason()))
+                .verify(Duration.ofSeconds(1));
+        assertEquals(0, admission.queued());
+        assertEquals(2, admission.active());
+    }
+
+    @Test
+    void limitsBodyBytesInFlight() {
+        AdmissionRejectedException tooLarge = rejection(admission.admit("a", "text/csv", 2048));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+
+        AdmissionControl.Permit large = admit("a", 1000);
+        AdmissionControl.Permit chunked = admit("b", 0);
+        chunked.reserve(20);
+        AdmissionRejectedException full = assertThrows(AdmissionRejectedException.class, () -> chunked.reserve(10));
+        assertEquals(AdmissionControl.IN_FLIGHT_BYTES, full.getReason());
+        assertEquals(1020, admission.inFlightBytes());
+
+        large.release();
+        chunked.release();
+        assertEquals(0, admission.inFlightBytes());
+        assertEquals(0, admission.active());
+    }
+
+    @Test
+    void rateLimitsEachClientSeparately() {
+        ReflectionTestUtils.setField(admission, "requestsPerSecond", 1.0);
+        ReflectionTestUtils.setField(admission, "burst", 1);
+
+        admit("a", 0).release();
+        AdmissionRejectedException limited = rejection(admission.admit("a", "text/csv", 0));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getStatus());
+        assertTrue(limited.getRetryAfter().compareTo(Duration.ZERO) > 0);
+        assertTrue(limited.getRetryAfter().compareTo(Duration.ofSeconds(1)) <= 0);
+
+        assertNotNull(admit("b", 0));
+    }
+
+    private AdmissionControl.Permit admit(String client, long bytes) {
+        return admission.admit(client, "text/csv", bytes).block(Duration.ofSeconds(1));
+    }
+
+    private static AdmissionRejectedException rejection(Mono<AdmissionControl.Permit> admit) {
+        Throwable error = assertThrows(Throwable.class, () -> admit.block(Duration.ofSeconds(1)));
+        return assertInstanceOf(AdmissionRejectedException.class, error);
+    }
+}
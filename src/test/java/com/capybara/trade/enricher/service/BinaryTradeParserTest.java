@@ -0,0 +1,99 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryTradeParserTest {
+
+    @Test
+    void readsBackWhatTheWriterWroteFedInSmallPieces() throws IOException {
+        List<EnrichedTradeDTO> trades = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // more than 256 distinct ids within a batch, so ids use two-byte indexes
+            trades.add(new EnrichedTradeDTO(i % 2 == 0 ? "20240229" : "20231231", Integer.toString(i % 700),
+                    i % 3 == 0 ? "EUR" : "USD", i % 11 == 0 ? null : i / 100.0, "Product " + i % 700));
+        }
+        byte[] document = write(trades, 3000);
+
+        BinaryTradeParser parser = new BinaryTradeParser();
+        List<TradeDTO> parsed = new ArrayList<>();
+        for (int offset = 0; offset < document.length; offset += 7) {
+            parser.feed(document, offset, Math.min(7, document.length - offset), parsed);
+        }
+        parser.finish(parsed);
+
+        assertNull(parser.error());
+        assertEquals(10_000, parser.rows());
+        assertEquals(10_000, parsed.size());
+        for (int i = 0; i < trades.size(); i++) {
+            EnrichedTradeDTO expected = trades.get(i);
+            assertEquals(new TradeDTO(expected.getDate(), expected.getProductId(), expected.getCurrency(),
+                    expected.getPrice()), parsed.get(i));
+        }
+        assertSame(parsed.get(0).getDate(), parsed.get(9998).getDate());
+        assertSame(parsed.get(0).getCurrency(), parsed.get(2997).getCurrency());
+    }
+
+    @Test
+    void skipsInvalidDatesAndStopsAtATruncatedBatch() throws IOException {
+        byte[] document = write(List.of(
+                new EnrichedTradeDTO("20230230", "1", "EUR", 1.0, "Bond"),
+                new EnrichedTradeDTO("20230228", "2", "EUR", 2.0, "Swap")), 1);
+        byte[] truncated = Arrays.copyOf(document, document.length - 6);
+
+        BinaryTradeParser parser = new BinaryTradeParser();
+        List<TradeDTO> parsed = new ArrayList<>();
+        parser.parseAll(truncated, parsed);
+
+        assertEquals(1, parser.invalidDates());
+        assertEquals(1, parser.malformedBatches());
+        assertEquals("Truncated document", parser.error());
+        assertTrue(parsed.isEmpty());
+
+        parser = new BinaryTradeParser();
+        parser.parseAll(document, parsed);
+        assertEquals(List.of(new TradeDTO("20230228", "2", "EUR", 2.0)), parsed);
+    }
+
+    @Test
+    void rejectsDocumentsWithoutTheHeader() {
+        BinaryTradeParser parser = new BinaryTradeParser();
+        List<TradeDTO> parsed = new ArrayList<>();
+
+        parser.parseAll(ByteBuffer.allocate(12).putInt(1).array(), parsed);
+
+        assertTrue(parser.error().startsWith("Not a version 1"));
+        assertTrue(parsed.isEmpty());
+    }
+
+    /**
+     * Writes a document, flushing after every {@code batchSize} trades to force batch boundaries.
+     */
+    private static byte[] write(List<EnrichedTradeDTO> trades, int batchSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TradeWriter writer = TradeWriter.create(BinaryTradeFormat.CONTENT_TYPE, out)) {
+            writer.writeStart();
+            for (int i = 0; i < trades.size(); i++) {
+                writer.write(trades.get(i));
+                if ((i + 1) % batchSize == 0) {
+                    writer.flush();
+                }
+            }
+            writer.writeEnd();
+        }
+        return out.toByteArray();
+    }
+}
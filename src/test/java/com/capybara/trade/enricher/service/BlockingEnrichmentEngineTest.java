@@ -0,0 +1,87 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlockingEnrichmentEngineTest {
+    private static final int TRADES = 2_000;
+
+    private final ProductMappingService productMappingService = mock(ProductMappingService.class);
+    private final AtomicInteger batches = new AtomicInteger();
+    private ThreadPoolTaskExecutor taskExecutor;
+    private BlockingEnrichmentEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(4);
+        taskExecutor.initialize();
+        engine = new BlockingEnrichmentEngine(productMappingService, taskExecutor);
+        ReflectionTestUtils.setField(engine, "mode", "blocking");
+        ReflectionTestUtils.setField(engine, "chunkSize", 64);
+        ReflectionTestUtils.setField(engine, "lookupTimeout", Duration.ofSeconds(5));
+
+        // even ids are cached, the odd ids of a chunk are resolved in one batch
+        when(productMappingService.findCachedProductName(anyString())).thenAnswer(invocation -> {
+            int id = Integer.parseInt(invocation.getArgument(0));
+            return id % 2 == 0 ? "Cached " + id : null;
+        });
+        when(productMappingService.getProductNames(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            batches.incrementAndGet();
+            return Mono.just(ids.stream().map(id -> "Remote " + id).toList())
+                    .delayElement(Duration.ofMillis(ids.size() % 7));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskExecutor.shutdown();
+    }
+
+    @Test
+    void keepsInputOrderAndResolvesMissesOncePerChunk() {
+        List<EnrichedTradeDTO> enriched = engine.enrich(trades(TRADES), Context.empty());
+
+        assertEquals(TRADES, enriched.size());
+        for (int i = 0; i < TRADES; i++) {
+            EnrichedTradeDTO trade = enriched.get(i);
+            assertEquals(Integer.toString(i), trade.getProductId());
+            assertEquals((i % 2 == 0 ? "Cached " : "Remote ") + i, trade.getProductName());
+        }
+        assertEquals((TRADES + 63) / 64, batches.get());
+    }
+
+    @Test
+    void propagatesLookupFailures() {
+        when(productMappingService.getProductNames(anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("redis down")));
+
+        assertThrows(IllegalStateException.class, () -> engine.enrich(trades(TRADES), Context.empty()));
+    }
+
+    private static List<TradeDTO> trades(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new TradeDTO("20230106", Integer.toString(i), "USD", (double) i))
+                .toList();
+    }
+}
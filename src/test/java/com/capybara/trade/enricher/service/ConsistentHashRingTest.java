@@ -0,0 +1,42 @@
+package com.capybara.trade.enricher.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+    private static final int PARTITIONS = 8192;
+
+    @Test
+    void spreadsPartitionsEvenly() {
+        String[] owners = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128).assign(PARTITIONS);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : owners) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(Math.abs(count - PARTITIONS / 4) < PARTITIONS / 4 * 0.25,
+                "unbalanced partition counts " + counts));
+    }
+
+    @Test
+    void addingNodeOnlyMovesPartitionsToIt() {
+        String[] before = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128).assign(PARTITIONS);
+        String[] after = new ConsistentHashRing(List.of("a", "b", "c", "d", "e"), 128).assign(PARTITIONS);
+
+        int moved = 0;
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (!before[partition].equals(after[partition])) {
+                assertEquals("e", after[partition]);
+                moved++;
+            }
+        }
+        assertTrue(moved > PARTITIONS / 5 * 0.75 && moved < PARTITIONS / 5 * 1.25, "moved " + moved);
+    }
+}
@@ -0,0 +1,81 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTradeParserTest {
+
+    private static final String CSV = "date,productId,currency,price\r\n"
+            + "20230106,2,USD,700.60\r\n"
+            + " 20230106 , 3 , EUR , 800.70 \n"
+            + "20230230,4,USD,1.00\n"
+            + "20230107,\"5, \"\"quoted\"\"\",GBP,-12.5\n"
+            + "20230107,6,USD\n"
+            + "20230107,7,USD,abc\n"
+            + "\n"
+            + "20240229,8,JPY,1e3";
+
+    @Test
+    void parsesValidRowsAndCountsSkippedOnes() {
+        CsvTradeParser parser = new CsvTradeParser();
+        List<TradeDTO> trades = new ArrayList<>();
+        parser.parseAll(CSV.getBytes(StandardCharsets.UTF_8), trades);
+
+        assertEquals(List.of(
+                new TradeDTO("20230106", "2", "USD", 700.60),
+                new TradeDTO("20230106", "3", "EUR", 800.70),
+                new TradeDTO("20230107", "5, \"quoted\"", "GBP", -12.5),
+                new TradeDTO("20240229", "8", "JPY", 1000.0)), trades);
+        assertEquals(7, parser.rows());
+        assertEquals(1, parser.invalidDates());
+        assertEquals(1, parser.invalidPrices());
+        assertEquals(1, parser.wrongColumnCounts());
+    }
+
+    @Test
+    void handlesRecordsSplitAcrossChunks() {
+        byte[] bytes = CSV.getBytes(StandardCharsets.UTF_8);
+        CsvTradeParser parser = new CsvTradeParser();
+        List<TradeDTO> trades = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i++) {
+            parser.feed(bytes, i, 1, trades);
+        }
+        parser.finish(trades);
+
+        assertEquals(4, trades.size());
+        assertEquals("5, \"quoted\"", trades.get(2).getProductId());
+        assertEquals(3, parser.skippedRows());
+    }
+
+    @Test
+    void reusesRepeatedFieldValues() {
+        CsvTradeParser parser = new CsvTradeParser();
+        List<TradeDTO> trades = new ArrayList<>();
+        parser.parseAll("date,productId,currency,price\n20230106,2,USD,1\n20230106,2,USD,2\n"
+                .getBytes(StandardCharsets.UTF_8), trades);
+
+        assertSame(trades.get(0).getCurrency(), trades.get(1).getCurrency());
+        assertSame(trades.get(0).getProductId(), trades.get(1).getProductId());
+    }
+
+    @Test
+    void validatesDatesArithmetically() {
+        assertTrue(TradeDates.isValid("20240229"));
+        assertFalse(TradeDates.isValid("20230229"));
+        assertFalse(TradeDates.isValid("21000229"));
+        assertTrue(TradeDates.isValid("20000229"));
+        assertFalse(TradeDates.isValid("20231301"));
+        assertFalse(TradeDates.isValid("2023010"));
+        assertFalse(TradeDates.isValid("2023-1-1"));
+        assertFalse(TradeDates.isValid(null));
+    }
+}
@@ -0,0 +1,93 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.dto.TradeDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EnrichmentEngineTest {
+    private static final int TRADES = 2_000;
+    private static final int MAX_OUTSTANDING = 8;
+
+    private final ProductMappingService productMappingService = mock(ProductMappingService.class);
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger maxObserved = new AtomicInteger();
+    private EnrichmentEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new EnrichmentEngine(productMappingService);
+        ReflectionTestUtils.setField(engine, "chunkSize", 64);
+        ReflectionTestUtils.setField(engine, "parallelism", 4);
+        ReflectionTestUtils.setField(engine, "maxOutstandingLookups", MAX_OUTSTANDING);
+        engine.start();
+
+        // even ids are cached, odd ids go to "Redis" and complete out of order
+        when(productMappingService.findCachedProductName(anyString())).thenAnswer(invocation -> {
+            int id = Integer.parseInt(invocation.getArgument(0));
+            return id % 2 == 0 ? "Cached " + id : null;
+        });
+        when(productMappingService.getProductName(anyString())).thenAnswer(invocation -> {
+            int id = Integer.parseInt(invocation.getArgument(0));
+            return Mono.defer(() -> {
+                        maxObserved.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+                        return Mono.just("Remote " + id).delayElement(Duration.ofMillis(id % 7));
+                    })
+                    .doOnTerminate(outstanding::decrementAndGet);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    void keepsInputOrderAndBoundsOutstandingLookups() {
+        List<EnrichedTradeDTO> enriched = engine.enrich(Flux.range(0, TRADES)
+                        .map(i -> new TradeDTO("20230106", Integer.toString(i), "USD", (double) i)))
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertEquals(TRADES, enriched.size());
+        for (int i = 0; i < TRADES; i++) {
+            EnrichedTradeDTO trade = enriched.get(i);
+            assertEquals(Integer.toString(i), trade.getProductId());
+            assertEquals((i % 2 == 0 ? "Cached " : "Remote ") + i, trade.getProductName());
+        }
+        assertTrue(maxObserved.get() <= MAX_OUTSTANDING, "outstanding lookups: " + maxObserved.get());
+    }
+
+    @Test
+    void internsRepeatedNamesAndCurrenciesPerRequest() {
+        ReflectionTestUtils.setField(engine, "intern", true);
+        ReflectionTestUtils.setField(engine, "internMaxEntries", 16);
+
+        List<EnrichedTradeDTO> enriched = engine.enrich(Flux.range(0, TRADES)
+                        .map(i -> new TradeDTO("20230106", Integer.toString(i % 2 == 0 ? 0 : 1),
+                                new String("USD"), (double) i)))
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertEquals(TRADES, enriched.size());
+        for (EnrichedTradeDTO trade : enriched) {
+            assertSame(enriched.get(trade.getProductId().equals("0") ? 0 : 1).getProductName(), trade.getProductName());
+            assertSame(enriched.get(0).getCurrency(), trade.getCurrency());
+        }
+    }
+}
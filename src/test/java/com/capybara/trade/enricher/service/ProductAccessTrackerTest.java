@@ -0,0 +1,90 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.LruProductCache;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.EmbeddedProductRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ProductAccessTrackerTest {
+
+    @Test
+    void ranksTheMostAccessedProductsFirst() {
+        ProductAccessTracker tracker = tracker("", 5);
+
+        accessSkewed(tracker);
+
+        assertEquals(List.of("0", "1", "2", "3", "4"), tracker.hottest());
+    }
+
+    @Test
+    void restoresTheRankingAfterARestart(@TempDir Path dir) {
+        String file = dir.resolve("access.bin").toString();
+        ProductAccessTracker tracker = tracker(file, 5);
+        accessSkewed(tracker);
+        tracker.stop();
+
+        ProductAccessTracker restarted = tracker(file, 5);
+
+        assertEquals(tracker.hottest(), restarted.hottest());
+        assertEquals(tracker.estimate("0"), restarted.estimate("0"));
+    }
+
+    @Test
+    void reloadWarmsUpTheHottestProducts(@TempDir Path dir) {
+        EmbeddedProductRepository repository = new EmbeddedProductRepository(dir.resolve("products.sst"));
+        Map<String, String> names = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            names.put(Integer.toString(i), "Product " + i);
+        }
+        repository.saveAll(names).then(repository.flush()).block();
+        ProductAccessTracker tracker = tracker("", 5);
+        accessSkewed(tracker);
+        ProductMappingService service = new ProductMappingService(repository, mock(ProductLookupBatcher.class),
+                new VersionedProductCache(restore -> new LruProductCache(1000, 1000, Duration.ofMinutes(5))),
+                EnrichmentMetrics.standalone(), ProductShards.disabled(), tracker);
+
+        service.reloadCache().block(Duration.ofSeconds(5));
+
+        assertEquals(5, service.cacheStats().size());
+        for (String productId : tracker.hottest()) {
+            assertEquals("Product " + productId, service.findCachedProductName(productId));
+        }
+        assertTrue(service.cacheStats().hits() >= 5);
+    }
+
+    /**
+     * Product {@code i} of 0..99 is accessed {@code 100 - i} times.
+     */
+    private static void accessSkewed(ProductAccessTracker tracker) {
+        for (int i = 0; i < 100; i++) {
+            for (int n = i; n < 100; n++) {
+                tracker.record(Integer.toString(i));
+            }
+        }
+    }
+
+    private static ProductAccessTracker tracker(String file, int topN) {
+        ProductAccessTracker tracker = new ProductAccessTracker();
+        ReflectionTestUtils.setField(tracker, "enabled", true);
+        ReflectionTestUtils.setField(tracker, "sampleRate", 1);
+        ReflectionTestUtils.setField(tracker, "sketchWidth", 4096);
+        ReflectionTestUtils.setField(tracker, "topN", topN);
+        ReflectionTestUtils.setField(tracker, "file", file);
+        ReflectionTestUtils.setField(tracker, "saveInterval", Duration.ofMinutes(5));
+        tracker.start();
+        return tracker;
+    }
+}
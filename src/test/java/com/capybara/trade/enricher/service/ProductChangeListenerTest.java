@@ -0,0 +1,190 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.LruProductCache;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class ProductChangeListenerTest {
+    private static final String CHANNEL = "products:changes";
+
+    private final FakeRepository repository = new FakeRepository();
+    private final EnrichmentMetrics metrics = EnrichmentMetrics.standalone();
+    private final AtomicReference<Sinks.Many<ReactiveSubscription.Message<String, String>>> messages =
+            new AtomicReference<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private ProductMappingService productMappingService;
+    private ProductChangeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        repository.products.put("1", "Bond");
+        repository.products.put("2", "Swap");
+        repository.products.put("3", "Future");
+        productMappingService = new ProductMappingService(repository, mock(ProductLookupBatcher.class),
+                new VersionedProductCache(restore -> new LruProductCache(100, 100, Duration.ofMinutes(5))),
+                metrics, ProductShards.disabled(), ProductAccessTracker.disabled());
+        productMappingService.reloadCache().block(Duration.ofSeconds(5));
+        repository.scans.set(0);
+
+        listener = new ProductChangeListener(null, repository, productMappingService, metrics) {
+            @Override
+            Flux<ReactiveSubscription.Message<String, String>> receive(Runnable onSubscribed) {
+                // a new subscription each time, as a reconnect to Redis would make
+                return Flux.defer(() -> {
+                    Sinks.Many<ReactiveSubscription.Message<String, String>> sink =
+                            Sinks.many().unicast().onBackpressureBuffer();
+                    messages.set(sink);
+                    subscriptions.incrementAndGet();
+                    onSubscribed.run();
+                    return sink.asFlux();
+                });
+            }
+        };
+        ReflectionTestUtils.setField(listener, "enabled", true);
+        ReflectionTestUtils.setField(listener, "channel", CHANNEL);
+        ReflectionTestUtils.setField(listener, "batchSize", 100);
+        ReflectionTestUtils.setField(listener, "batchWindow", Duration.ofMillis(10));
+        listener.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    void appliesABatchOfUpsertsAndDeletesInPlace() {
+        repository.products.put("1", "Renamed Bond");
+        repository.products.remove("2");
+        repository.products.put("4", "Option");
+
+        publish("1", "2", "4", "1");
+        await(() -> "Option".equals(productMappingService.findCachedProductName("4")));
+
+        assertEquals("Renamed Bond", productMappingService.findCachedProductName("1"));
+        assertNull(productMappingService.findCachedProductName("2"));
+        assertEquals("Future", productMappingService.findCachedProductName("3"));
+        assertEquals(List.of(List.of("1", "2", "4")), repository.lookups);
+        assertEquals(2, changes("upsert"));
+        assertEquals(1, changes("delete"));
+        assertEquals(0, repository.scans.get());
+    }
+
+    @Test
+    void aChangeDuringAReloadWinsOverTheScannedValue() {
+        Sinks.Empty<Void> scanned = Sinks.empty();
+        repository.scanGate = scanned.asMono();
+        Mono<Void> reload = productMappingService.reloadCache().cache();
+        reload.subscribe();
+        await(() -> repository.scans.get() == 1);
+
+        // the scan read "Bond" before the rename, its value arrives after the change was applied
+        repository.products.put("1", "Renamed Bond");
+        publish("1");
+        await(() -> "Renamed Bond".equals(productMappingService.findCachedProductName("1")));
+        scanned.tryEmitEmpty();
+        reload.block(Duration.ofSeconds(5));
+
+        assertEquals("Renamed Bond", productMappingService.findCachedProductName("1"));
+        assertEquals("Swap", productMappingService.findCachedProductName("2"));
+    }
+
+    @Test
+    void aResubscribeTriggersExactlyOneReload() throws InterruptedException {
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, repository.scans.get());
+
+        // the connection drops, changes published until the retry are lost
+        messages.get().tryEmitError(new IllegalStateException("connection lost"));
+        repository.products.put("3", "Renamed Future");
+        await(() -> subscriptions.get() == 2 && repository.scans.get() > 0);
+        Thread.sleep(200);
+
+        assertEquals(1, repository.scans.get());
+        assertEquals("Renamed Future", productMappingService.findCachedProductName("3"));
+
+        repository.products.put("2", "Renamed Swap");
+        publish("2");
+        await(() -> "Renamed Swap".equals(productMappingService.findCachedProductName("2")));
+        assertEquals(1, repository.scans.get());
+    }
+
+    private void publish(String... productIds) {
+        for (String productId : productIds) {
+            messages.get().tryEmitNext(new ReactiveSubscription.ChannelMessage<>(CHANNEL, productId));
+        }
+    }
+
+    private double changes(String kind) {
+        return metrics.registry().get("product.sync.changes").tag("kind", kind).counter().count();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 5 seconds");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Products in a map, with the scans of {@link #findAll()} held back until {@code scanGate} completes.
+     */
+    private static final class FakeRepository extends RedisProductRepository {
+        private final Map<String, String> products = new ConcurrentHashMap<>();
+        private final List<List<String>> lookups = new ArrayList<>();
+        private final AtomicInteger scans = new AtomicInteger();
+        private volatile Mono<Void> scanGate = Mono.empty();
+
+        private FakeRepository() {
+            super(null, mock(ReactiveStringRedisTemplate.class), Layout.HASH, 16);
+        }
+
+        @Override
+        public Mono<List<String>> findNames(List<String> productIds) {
+            return Mono.fromSupplier(() -> {
+                synchronized (lookups) {
+                    lookups.add(List.copyOf(productIds));
+                }
+                return productIds.stream().map(products::get).toList();
+            });
+        }
+
+        @Override
+        public Flux<Product> findAll() {
+            return Flux.defer(() -> {
+                List<Product> snapshot = products.entrySet().stream()
+                        .map(entry -> new Product(entry.getKey(), entry.getValue()))
+                        .toList();
+                scans.incrementAndGet();
+                return scanGate.thenMany(Flux.fromIterable(snapshot));
+            });
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.capybara.trade.enricher.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductFileParserTest {
+
+    @Test
+    void parsesChunksOfAFileIndependently(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("productId,productName\n");
+        for (int i = 1; i <= 10_000; i++) {
+            csv.append(i).append(",Product ").append(i).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        Path file = dir.resolve("products.csv");
+        Files.writeString(file, csv);
+
+        Map<String, String> products = parseAll(new FileSystemResource(file), 7, new LongAdder());
+
+        assertEquals(10_000, products.size());
+        assertEquals("Product 10000", products.get("10000"));
+        assertEquals("Product 2", products.get("2"));
+    }
+
+    @Test
+    void skipsInvalidLinesAndTrimsValues() throws IOException {
+        String csv = """
+                productId,productName
+                 1 , Treasury Bills Domestic\s
+                2
+                3,Corporate,Bonds
+                4,
+                5,Commercial Paper""";
+        LongAdder invalidLines = new LongAdder();
+
+        Map<String, String> products = parseAll(new ByteArrayResource(csv.getBytes(StandardCharsets.UTF_8)), 3, invalidLines);
+
+        assertEquals(2, products.size());
+        assertEquals("Treasury Bills Domestic", products.get("1"));
+        assertTrue(products.containsKey("5"));
+        assertEquals(3, invalidLines.sum());
+    }
+
+    private Map<String, String> parseAll(Resource resource, int chunks, LongAdder invalidLines) throws IOException {
+        List<ByteBuffer> split = ProductFileParser.split(resource, chunks);
+        Map<String, String> products = new HashMap<>();
+        Flux.range(0, split.size())
+                .concatMap(i -> ProductFileParser.parse(split.get(i), i == 0, 100, invalidLines))
+                .doOnNext(products::putAll)
+                .blockLast();
+        return products;
+    }
+}
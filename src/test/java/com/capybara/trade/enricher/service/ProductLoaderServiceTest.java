@@ -0,0 +1,163 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductLoaderServiceTest {
+    @TempDir
+    Path dir;
+
+    private final InMemoryProductRepository repository = new InMemoryProductRepository();
+    private final ProductMappingService productMappingService = mock(ProductMappingService.class);
+    private ProductLoaderService loader;
+    private Path productFile;
+
+    @BeforeEach
+    void setUp() {
+        when(productMappingService.reloadCache()).thenReturn(Mono.empty());
+        productFile = dir.resolve("products.csv");
+        loader = new ProductLoaderService(repository, productMappingService, EnrichmentMetrics.standalone());
+        ReflectionTestUtils.setField(loader, "productFile", productFile.toString());
+        ReflectionTestUtils.setField(loader, "batchSize", 100);
+        ReflectionTestUtils.setField(loader, "parallelism", 2);
+        ReflectionTestUtils.setField(loader, "writeConcurrency", 4);
+        ReflectionTestUtils.setField(loader, "progressInterval", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(loader, "snapshotFile", dir.resolve("products.snapshot").toString());
+    }
+
+    @Test
+    void writesOnlyTheChangedProductsOnceASnapshotExists() throws IOException {
+        writeProducts(1, 1000, "Product ");
+        ProductLoadResult full = loader.load().block(Duration.ofSeconds(10));
+        assertFalse(full.delta());
+        assertEquals(1000, full.products());
+        assertEquals(1000, repository.products.size());
+        verify(productMappingService, times(1)).reloadCache();
+
+        // product 7 renamed, 1000 removed and 1001 added
+        List<String> lines = new ArrayList<>(Files.readAllLines(productFile));
+        lines.set(7, "7,Renamed");
+        lines.set(1000, "1001,Product 1001");
+        Files.write(productFile, lines);
+        repository.saved.clear();
+
+        ProductLoadResult delta = loader.load().block(Duration.ofSeconds(10));
+
+        assertTrue(delta.delta());
+        assertEquals(2, delta.products());
+        assertEquals(1, delta.deleted());
+        assertEquals(List.of("1001", "7"), repository.saved.stream().sorted().toList());
+        assertEquals("Renamed", repository.products.get("7"));
+        assertFalse(repository.products.containsKey("1000"));
+        verify(productMappingService).applyChange("7", "Renamed");
+        verify(productMappingService).applyChange("1001", "Product 1001");
+        verify(productMappingService).applyChange("1000", null);
+        verify(productMappingService, times(1)).reloadCache();
+    }
+
+    @Test
+    void loadsInFullWhenTheRepositoryNoLongerMatchesTheSnapshot() throws IOException {
+        writeProducts(1, 10, "Product ");
+        loader.load().block(Duration.ofSeconds(10));
+        repository.products.clear();
+
+        ProductLoadResult result = loader.load().block(Duration.ofSeconds(10));
+
+        assertFalse(result.delta());
+        assertEquals(10, repository.products.size());
+        verify(productMappingService, never()).applyChange("1", "Product 1");
+    }
+
+    @Test
+    void staysNotLoadedUntilALoadWritesEveryBatch() throws IOException {
+        writeProducts(1, 1000, "Product ");
+        repository.failing = true;
+
+        ProductLoadResult failed = loader.load().block(Duration.ofSeconds(10));
+
+        assertTrue(failed.failedBatches() > 0);
+        assertFalse(loader.productsLoaded());
+        assertEquals(Status.OUT_OF_SERVICE, new ProductLoadHealthIndicator(loader).health().getStatus());
+
+        repository.failing = false;
+        ProductLoadResult retried = loader.load().block(Duration.ofSeconds(10));
+
+        assertFalse(retried.delta(), "the failed load left no snapshot to compute changes from");
+        assertEquals(1000, repository.products.size());
+        assertTrue(loader.productsLoaded());
+        assertEquals(Status.UP, new ProductLoadHealthIndicator(loader).health().getStatus());
+    }
+
+    private void writeProducts(int from, int to, String prefix) throws IOException {
+        StringBuilder csv = new StringBuilder("productId,productName\n");
+        for (int i = from; i <= to; i++) {
+            csv.append(i).append(',').append(prefix).append(i).append('\n');
+        }
+        Files.writeString(productFile, csv);
+    }
+
+    private static final class InMemoryProductRepository implements ProductRepository {
+        final Map<String, String> products = new ConcurrentHashMap<>();
+        final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean failing;
+
+        @Override
+        public Mono<List<String>> findNames(List<String> productIds) {
+            return Mono.just(productIds.stream().map(products::get).toList());
+        }
+
+        @Override
+        public Mono<String> findName(String productId) {
+            return Mono.justOrEmpty(products.get(productId));
+        }
+
+        @Override
+        public Mono<Boolean> saveAll(Map<String, String> namesById) {
+            if (failing) {
+                return Mono.just(false);
+            }
+            products.putAll(namesById);
+            saved.addAll(namesById.keySet());
+            return Mono.just(true);
+        }
+
+        @Override
+        public Mono<Boolean> deleteAll(Collection<String> productIds) {
+            productIds.forEach(products::remove);
+            return Mono.just(true);
+        }
+
+        @Override
+        public Flux<Product> findAll() {
+            return Flux.fromIterable(products.entrySet()).map(entry -> new Product(entry.getKey(), entry.getValue()));
+        }
+    }
+}
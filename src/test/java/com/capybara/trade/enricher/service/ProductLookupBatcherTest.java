@@ -0,0 +1,110 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.repository.RedisProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductLookupBatcherTest {
+
+    private RedisProductRepository repository;
+    private ProductLookupBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(RedisProductRepository.class);
+
+        batcher = new ProductLookupBatcher(repository, EnrichmentMetrics.standalone());
+        ReflectionTestUtils.setField(batcher, "batchSize", 100);
+        ReflectionTestUtils.setField(batcher, "batchWindow", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 1);
+        batcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    void coalescesDuplicateIdsIntoOneLookup() {
+        when(repository.findNames(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            assertEquals(List.of("1", "2"), ids);
+            return Mono.just(Arrays.asList("Bond", null));
+        });
+
+        var results = Mono.zip(
+                        batcher.lookup("1").defaultIfEmpty("none"),
+                        batcher.lookup("2").defaultIfEmpty("none"),
+                        batcher.lookup("1").defaultIfEmpty("none"))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals("Bond", results.getT1());
+        assertEquals("none", results.getT2());
+        assertEquals("Bond", results.getT3());
+        verify(repository, times(1)).findNames(anyList());
+    }
+
+    @Test
+    void completesEmptyForUnknownProduct() {
+        when(repository.findNames(anyList())).thenReturn(Mono.just(Arrays.asList((String) null)));
+
+        assertNull(batcher.lookup("404").block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void queuesMissesWhileAllBatchesAreInFlight() {
+        batcher.stop();
+        ReflectionTestUtils.setField(batcher, "batchSize", 2);
+        batcher.start();
+        // each batch outlasts several windows, so windows end while the only batch slot is taken
+        when(repository.findNames(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            return Mono.delay(Duration.ofMillis(100)).thenReturn(ids.stream().map(id -> "Product " + id).toList());
+        });
+
+        List<String> names = Flux.range(0, 7)
+                .flatMap(i -> Mono.delay(Duration.ofMillis(i * 30L))
+                        .then(batcher.lookup(Integer.toString(i))))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(7, names.size());
+        assertTrue(names.contains("Product 6"));
+        assertEquals("Product 7", batcher.lookup("7").block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void retriesAnIdAfterItsLookupTimedOut() {
+        batcher.stop();
+        ReflectionTestUtils.setField(batcher, "timeout", Duration.ofMillis(100));
+        batcher.start();
+        when(repository.findNames(anyList()))
+                .thenReturn(Mono.never())
+                .thenReturn(Mono.just(List.of("Bond")));
+
+        assertThrows(RuntimeException.class, () -> batcher.lookup("1").block(Duration.ofSeconds(5)));
+
+        assertEquals("Bond", batcher.lookup("1").block(Duration.ofSeconds(5)));
+        verify(repository, times(2)).findNames(anyList());
+    }
+}
@@ -0,0 +1,209 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.LruProductCache;
+import com.capybara.trade.enricher.cache.VersionedProductCache;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.model.Product;
+import com.capybara.trade.enricher.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a cluster of three in-process nodes that fetch from each other through their services
+ * instead of HTTP.
+ */
+class ProductShardsTest {
+    private static final List<String> NODES = List.of("node-a", "node-b", "node-c");
+    private static final int PRODUCTS = 3000;
+
+    private final Repository repository = new Repository();
+    private final Map<String, ProductMappingService> services = new HashMap<>();
+    private final Map<String, ProductShards> shards = new HashMap<>();
+    private final List<ProductLookupBatcher> batchers = new ArrayList<>();
+    private final AtomicInteger peerRequests = new AtomicInteger();
+    private volatile boolean peersDown;
+    private volatile boolean peersHang;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < PRODUCTS; i++) {
+            repository.names.put(Integer.toString(i), "Product " + i);
+        }
+        PeerClient peerClient = (node, ids) -> {
+            peerRequests.incrementAndGet();
+            if (peersHang) {
+                return Mono.never();
+            }
+            return peersDown ? Mono.error(new IOException(node + " is down")) : services.get(node).lookupOwned(ids);
+        };
+        for (String node : NODES) {
+            ProductLookupBatcher batcher = new ProductLookupBatcher(repository, EnrichmentMetrics.standalone());
+            ReflectionTestUtils.setField(batcher, "batchSize", 100);
+            ReflectionTestUtils.setField(batcher, "batchWindow", Duration.ofMillis(2));
+            ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 4);
+            batcher.start();
+            batchers.add(batcher);
+
+            ProductShards shard = new ProductShards(peerClient, EnrichmentMetrics.standalone());
+            ReflectionTestUtils.setField(shard, "enabled", true);
+            ReflectionTestUtils.setField(shard, "self", node);
+            ReflectionTestUtils.setField(shard, "nodes", NODES);
+            ReflectionTestUtils.setField(shard, "partitions", 1024);
+            ReflectionTestUtils.setField(shard, "virtualNodes", 128);
+            ReflectionTestUtils.setField(shard, "nearCacheMaxSize", 100L);
+            ReflectionTestUtils.setField(shard, "nearCacheMissingTtl", Duration.ofMinutes(5));
+            ReflectionTestUtils.setField(shard, "peerBatchSize", 100);
+            ReflectionTestUtils.setField(shard, "peerBatchWindow", Duration.ofMillis(50));
+            ReflectionTestUtils.setField(shard, "peerTimeout", Duration.ofSeconds(2));
+            shard.start();
+            shards.put(node, shard);
+
+            VersionedProductCache cache = new VersionedProductCache(
+                    restore -> new LruProductCache(PRODUCTS, PRODUCTS, Duration.ofMinutes(5)));
+            ProductMappingService service = new ProductMappingService(repository, batcher, cache,
+                    EnrichmentMetrics.standalone(), shard, ProductAccessTracker.disabled());
+            service.reloadCache().block(Duration.ofSeconds(5));
+            services.put(node, service);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchers.forEach(ProductLookupBatcher::stop);
+        shards.values().forEach(ProductShards::stop);
+    }
+
+    @Test
+    void eachNodeCachesOnlyItsShard() {
+        long total = 0;
+        for (String node : NODES) {
+            long size = services.get(node).cacheStats().size();
+            assertTrue(size > 0 && size < PRODUCTS, node + " cached " + size);
+            total += size;
+        }
+        assertEquals(PRODUCTS, total);
+        for (int i = 0; i < PRODUCTS; i++) {
+            String id = Integer.toString(i);
+            String owner = shards.get("node-a").owner(id);
+            assertEquals("Product " + i, services.get(owner).findCachedProductName(id));
+        }
+    }
+
+    @Test
+    void fetchesForeignIdsFromTheirOwnerAndKeepsThemNear() {
+        ProductMappingService service = services.get("node-a");
+        List<String> foreign = foreignIds("node-a", 20);
+        int repositoryReads = repository.reads.get();
+
+        List<String> names = Flux.fromIterable(foreign).flatMap(service::getProductName).collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(foreign.size(), names.size());
+        foreign.forEach(id -> assertEquals("Product " + id, service.findCachedProductName(id)));
+        assertEquals(repositoryReads, repository.reads.get(), "owners answered from their caches");
+        assertTrue(peerRequests.get() <= 2, "one request per owner and batch, was " + peerRequests.get());
+        assertEquals("Missing Product Name", service.getProductName(foreignUnknownId("node-a"))
+                .block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void fallsBackToRepositoryWhenOwnerIsDown() {
+        peersDown = true;
+        ProductMappingService service = services.get("node-a");
+        String id = foreignIds("node-a", 1).get(0);
+
+        assertNull(service.findCachedProductName(id));
+        assertEquals("Product " + id, service.getProductName(id).block(Duration.ofSeconds(5)));
+        assertNotNull(service.findCachedProductName(id));
+        assertTrue(repository.reads.get() > 0);
+    }
+
+    @Test
+    void keepsFetchingAfterPeersHungWithAllBatchesInFlight() {
+        ProductShards shard = shards.get("node-a");
+        shard.stop();
+        ReflectionTestUtils.setField(shard, "peerMaxConcurrentBatches", 1);
+        ReflectionTestUtils.setField(shard, "peerTimeout", Duration.ofMillis(200));
+        shard.start();
+        ProductMappingService service = services.get("node-a");
+        List<String> foreign = foreignIds("node-a", 30);
+        peersHang = true;
+
+        List<String> names = Flux.range(0, 10)
+                .flatMap(i -> Mono.delay(Duration.ofMillis(i * 60L))
+                        .then(service.getProductName(foreign.get(i))))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(10, names.size(), "hung peers fell back to the repository");
+        peersHang = false;
+        String id = foreign.get(20);
+        assertEquals("Product " + id, shard.fetch(id).block(Duration.ofSeconds(5)));
+    }
+
+    private List<String> foreignIds(String node, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; ids.size() < count; i++) {
+            if (!shards.get(node).owns(Integer.toString(i))) {
+                ids.add(Integer.toString(i));
+            }
+        }
+        return ids;
+    }
+
+    private String foreignUnknownId(String node) {
+        for (int i = PRODUCTS; ; i++) {
+            if (!shards.get(node).owns(Integer.toString(i))) {
+                return Integer.toString(i);
+            }
+        }
+    }
+
+    private static class Repository implements ProductRepository {
+        final Map<String, String> names = new HashMap<>();
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public Mono<List<String>> findNames(List<String> productIds) {
+            return Mono.fromSupplier(() -> {
+                reads.incrementAndGet();
+                return productIds.stream().map(names::get).toList();
+            });
+        }
+
+        @Override
+        public Mono<Boolean> saveAll(Map<String, String> namesById) {
+            names.putAll(namesById);
+            return Mono.just(true);
+        }
+
+        @Override
+        public Mono<Boolean> deleteAll(Collection<String> productIds) {
+            names.keySet().removeAll(productIds);
+            return Mono.just(true);
+        }
+
+        @Override
+        public Flux<Product> findAll() {
+            return Flux.fromIterable(names.entrySet()).map(entry -> new Product(entry.getKey(), entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.EnrichedTradeDTO;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TradeFormatterTest {
+    private static final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private final List<EnrichedTradeDTO> trades = List.of(
+            new EnrichedTradeDTO("20230106", "2", "USD", 700.6, "Treasury Bills, Domestic"),
+            new EnrichedTradeDTO("20230106", "3", "EUR", -0.125, "Corporate \"A\" Bonds"),
+            new EnrichedTradeDTO("20230107", "4", "JPY", 123456789.999, "Émission"));
+
+    @Test
+    void formatsCsvWithTwoDecimalsAndQuoting() {
+        assertEquals("""
+                date,productName,currency,price
+                20230106,"Treasury Bills, Domestic",USD,700.60
+                20230106,"Corporate ""A"" Bonds",EUR,-0.13
+                20230107,Émission,JPY,123456790.00
+                """, format(trades, "text/csv"));
+    }
+
+    @Test
+    void roundsCsvPricesHalfUpFromTheirShortestDecimalForm() {
+        List<EnrichedTradeDTO> halfCents = List.of(
+                new EnrichedTradeDTO("20230106", "2", "USD", 1.005, "Bond"),
+                new EnrichedTradeDTO("20230106", "3", "USD", 0.285, "Bond"),
+                new EnrichedTradeDTO("20230106", "4", "USD", -2.675, "Bond"),
+                new EnrichedTradeDTO("20230106", "5", "USD", 1.0049999, "Bond"));
+
+        assertEquals("""
+                date,productName,currency,price
+                20230106,Bond,USD,1.01
+                20230106,Bond,USD,0.29
+                20230106,Bond,USD,-2.68
+                20230106,Bond,USD,1.00
+                """, format(halfCents, "text/csv"));
+        for (EnrichedTradeDTO trade : halfCents) {
+            assertEquals(String.format(Locale.ROOT, "%.2f", trade.getPrice()),
+                    format(List.of(trade), "text/csv").lines().skip(1).findFirst().orElseThrow().split(",")[3]);
+        }
+    }
+
+    @Test
+    void formatsJsonLikeDataBinding() throws Exception {
+        assertEquals(new ObjectMapper().writeValueAsString(trades), format(trades, "application/json"));
+        assertEquals("[]", format(List.of(), "application/json"));
+    }
+
+    @Test
+    void formatsXmlWithTradesRoot() {
+        assertEquals("<trades><item><date>20230106</date><productId>2</productId><currency>USD</currency>"
+                        + "<price>700.6</price><productName>Treasury Bills, Domestic</productName></item></trades>",
+                format(trades.subList(0, 1), "application/xml"));
+        assertEquals("<trades></trades>", format(List.of(), "application/xml"));
+    }
+
+    @Test
+    void streamsTheSameDocumentInChunks() {
+        for (String type : List.of("text/csv", "application/json", "application/xml")) {
+            List<String> chunks = TradeFormatter.formatTradeStream(Flux.fromIterable(trades), type, bufferFactory, 2,
+                            EnrichmentMetrics.standalone())
+                    .map(TradeFormatterTest::toString)
+                    .collectList()
+                    .block();
+
+            assertEquals(3, chunks.size(), type);
+            assertEquals(format(trades, type), String.join("", chunks), type);
+        }
+    }
+
+    @Test
+    void writesEachProductNameOnceInTheDictionaryVariant() {
+        List<EnrichedTradeDTO> repeated = List.of(trades.get(0), trades.get(1), trades.get(0), trades.get(2));
+        String block = "{\"date\":\"%s\",\"productId\":\"%s\",\"currency\":\"%s\",\"price\":%s,\"productNameIndex\":%d}";
+
+        List<String> chunks = TradeFormatter.formatTradeStream(Flux.fromIterable(repeated), TradeWriter.DICTIONARY_JSON,
+                        bufferFactory, 2, EnrichmentMetrics.standalone())
+                .map(TradeFormatterTest::toString)
+                .collectList()
+                .block();
+
+        assertEquals("[{\"productNames\":[\"Treasury Bills, Domestic\",\"Corporate \\\"A\\\" Bonds\"],\"trades\":["
+                + block.formatted("20230106", "2", "USD", "700.6", 0) + ","
+                + block.formatted("20230106", "3", "EUR", "-0.125", 1) + "]},"
+                + "{\"productNames\":[\"Émission\"],\"trades\":["
+                + block.formatted("20230106", "2", "USD", "700.6", 0) + ","
+                + block.formatted("20230107", "4", "JPY", "1.23456789999E8", 2) + "]}]", String.join("", chunks));
+        assertEquals("[]", format(List.of(), TradeWriter.DICTIONARY_JSON));
+    }
+
+    private static String format(List<EnrichedTradeDTO> trades, String contentType) {
+        return toString(TradeFormatter.formatTrades(trades, contentType, bufferFactory,
+                EnrichmentMetrics.standalone()));
+    }
+
+    private static String toString(DataBuffer buffer) {
+        String text = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return text;
+    }
+}
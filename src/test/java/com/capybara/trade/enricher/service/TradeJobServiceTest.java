@@ -0,0 +1,255 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TradeJobServiceTest {
+    private static final String CSV = """
+            date,productId,currency,price
+            20230101,1,EUR,10.5
+            20230102,2,USD,20
+            20230103,3,GBP,30.25
+            20230104,4,EUR,40
+            20230105,5,USD,50
+            20230106,6,GBP,60
+            20230107,7,EUR,70
+            """;
+
+    @TempDir
+    Path directory;
+
+    private final EnrichmentMetrics metrics = EnrichmentMetrics.standalone();
+    private EnrichmentEngine engine;
+    private TradeService tradeService;
+    private TradeJobService jobs;
+    private volatile CountDownLatch lookups = new CountDownLatch(0);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ProductMappingService productMappingService = mock(ProductMappingService.class);
+        when(productMappingService.findCachedProductName(anyString()))
+                .thenAnswer(invocation -> {
+                    lookups.await();
+                    return "Product " + invocation.getArgument(0);
+                });
+        engine = new EnrichmentEngine(productMappingService);
+        ReflectionTestUtils.setField(engine, "chunkSize", 2);
+        ReflectionTestUtils.setField(engine, "parallelism", 2);
+        ReflectionTestUtils.setField(engine, "maxOutstandingLookups", 8);
+        engine.start();
+        tradeService = new TradeService(engine, metrics, TradeResultCache.disabled(),
+                BlockingEnrichmentEngine.disabled());
+        jobs = startJobs();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobs.stop();
+        engine.stop();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"text/csv", "application/json", "application/xml"})
+    void joinsChunkDocumentsIntoTheSameDocumentAsTheSynchronousEndpoint(String contentType) throws Exception {
+        String input = contentType.equals("text/csv") ? CSV : toDocument(contentType);
+
+        TradeJobStatus submitted = jobs.submit(body(input), contentType).block(Duration.ofSeconds(5));
+        TradeJobStatus completed = awaitCompletion(submitted.id());
+
+        assertEquals(7, completed.trades());
+        assertEquals(3, completed.chunks());
+        assertEquals(1.0, completed.progress());
+        assertEquals(synchronous(input, contentType), download(submitted.id()));
+    }
+
+    @Test
+    void resumesAnInterruptedJobAfterItsLastCheckpoint() throws Exception {
+        String id = jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)).id();
+        awaitCompletion(id);
+        jobs.stop();
+
+        // pretend the service stopped after the first chunk, whose output must not be rewritten
+        Path job = directory.resolve(id);
+        Path checkpoint = job.resolve("job.properties");
+        Files.writeString(checkpoint, Files.readString(checkpoint)
+                .replaceAll("state=.*", "state=RUNNING")
+                .replaceAll("chunks=.*", "chunks=1")
+                .replaceAll("trades=.*", "trades=3"));
+        Files.delete(job.resolve("part-000001"));
+        Files.delete(job.resolve("part-000002"));
+        Files.writeString(job.resolve("part-000000"), Files.readString(job.resolve("part-000000")).replace("Product 1", "Kept"));
+
+        jobs = startJobs();
+        TradeJobStatus resumed = awaitCompletion(id);
+
+        assertEquals(7, resumed.trades());
+        String result = download(id);
+        assertTrue(result.contains("20230101,Kept,EUR,10.50"), result);
+        assertTrue(result.endsWith("20230107,Product 7,EUR,70.00\n"), result);
+    }
+
+    @Test
+    void deletingAJobRemovesItsFiles() {
+        String id = jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)).id();
+        awaitCompletion(id);
+
+        assertTrue(jobs.delete(id));
+
+        assertFalse(Files.exists(directory.resolve(id)));
+        assertTrue(jobs.status(id).isEmpty());
+        assertFalse(jobs.delete(id));
+    }
+
+    @Test
+    void expiresJobsByWhenTheyFinishedRatherThanWhenTheyWereSubmitted() throws Exception {
+        String id = jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)).id();
+        assertNotNull(awaitCompletion(id).finishedAt());
+        jobs.stop();
+
+        // a job that queued for longer than the retention has only just finished
+        Path checkpoint = directory.resolve(id).resolve("job.properties");
+        Instant longAgo = Instant.now().minus(Duration.ofHours(2));
+        Files.writeString(checkpoint, Files.readString(checkpoint)
+                .replaceAll("submittedAt=.*", "submittedAt=" + longAgo));
+        jobs = startJobs();
+        ReflectionTestUtils.invokeMethod(jobs, "expire");
+        assertTrue(jobs.status(id).isPresent());
+
+        jobs.stop();
+        Files.writeString(checkpoint, Files.readString(checkpoint)
+                .replaceAll("finishedAt=.*", "finishedAt=" + longAgo));
+        jobs = startJobs();
+        ReflectionTestUtils.invokeMethod(jobs, "expire");
+        assertTrue(jobs.status(id).isEmpty());
+        assertFalse(Files.exists(directory.resolve(id)));
+    }
+
+    @Test
+    void rejectsUploadsOverTheMaximumSize() {
+        ReflectionTestUtils.setField(jobs, "maxUploadSize", DataSize.ofBytes(CSV.length() - 1));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatusCode());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        } catch (IOException io) {
+            throw new UncheckedIOException(io);
+        }
+    }
+
+    @Test
+    void keepsRunningJobsAfterAJobCouldNotBeCheckpointed() throws Exception {
+        lookups = new CountDownLatch(1);
+        String id = jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)).id();
+
+        // every checkpoint of the running job fails, including the one recording its failure
+        Path temporary = Files.createDirectory(directory.resolve(id).resolve("job.properties.tmp"));
+        lookups.countDown();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (jobs.status(id).orElseThrow().state() != TradeJobStatus.State.FAILED && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        TradeJobStatus failed = jobs.status(id).orElseThrow();
+        assertEquals(TradeJobStatus.State.FAILED, failed.state());
+        assertTrue(failed.elapsed().compareTo(Duration.ofSeconds(10)) < 0, failed.elapsed().toString());
+        Files.delete(temporary);
+
+        String next = jobs.submit(body(CSV), "text/csv").block(Duration.ofSeconds(5)).id();
+        assertEquals(7, awaitCompletion(next).trades());
+    }
+
+    private TradeJobService startJobs() throws IOException {
+        TradeJobService service = new TradeJobService(tradeService, engine, metrics);
+        ReflectionTestUtils.setField(service, "directory", directory.toString());
+        ReflectionTestUtils.setField(service, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(service, "chunkSize", 3);
+        ReflectionTestUtils.setField(service, "parallelism", 1);
+        ReflectionTestUtils.setField(service, "retention", Duration.ofHours(1));
+        service.start();
+        return service;
+    }
+
+    private TradeJobStatus awaitCompletion(String id) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            TradeJobStatus status = jobs.status(id).orElseThrow();
+            if (status.state() == TradeJobStatus.State.COMPLETED || status.state() == TradeJobStatus.State.FAILED) {
+                assertEquals(TradeJobStatus.State.COMPLETED, status.state(), status.error());
+                return status;
+            }
+            Thread.onSpinWait();
+        }
+        throw new AssertionError("Trade job " + id + " did not complete");
+    }
+
+    private String download(String id) {
+        return join(jobs.result(id));
+    }
+
+    private String synchronous(String input, String contentType) {
+        return join(tradeService.enrichTrades(input, contentType, DefaultDataBufferFactory.sharedInstance).flux());
+    }
+
+    private String toDocument(String contentType) {
+        StringBuilder document = new StringBuilder(contentType.equals("application/json") ? "[" : "<trades>");
+        String[] lines = CSV.split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(",");
+            if (contentType.equals("application/json")) {
+                document.append(i > 1 ? "," : "").append(String.format(
+                        "{\"date\":\"%s\",\"productId\":\"%s\",\"currency\":\"%s\",\"price\":%s}",
+                        fields[0], fields[1], fields[2], fields[3]));
+            } else {
+                document.append(String.format(
+                        "<item><date>%s</date><productId>%s</productId><currency>%s</currency><price>%s</price></item>",
+                        fields[0], fields[1], fields[2], fields[3]));
+            }
+        }
+        return document.append(contentType.equals("application/json") ? "]" : "</trades>").toString();
+    }
+
+    private static Flux<DataBuffer> body(String text) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String join(Flux<DataBuffer> buffers) {
+        DataBuffer joined = DataBufferUtils.join(buffers).block(Duration.ofSeconds(5));
+        String text = joined.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(joined);
+        return text;
+    }
+}
@@ -0,0 +1,78 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.cache.LocalTradeResultStore;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TradeResultCacheTest {
+    private static final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private static final byte[] BODY = "date,productId,currency,price\n20240101,1,EUR,10\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ProductMappingService productMappingService = mock(ProductMappingService.class);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger enrichments = new AtomicInteger();
+    private TradeResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(productMappingService.dataVersion()).thenAnswer(invocation -> version.get());
+        cache = new TradeResultCache(new LocalTradeResultStore(1024 * 1024, Duration.ofMinutes(1)),
+                productMappingService, EnrichmentMetrics.standalone());
+    }
+
+    @Test
+    void answersRepeatedSubmissionsUntilTheProductDataChanges() {
+        assertEquals("result 1", submit(BODY, "text/csv"));
+        assertEquals("result 1", submit(BODY, "text/csv"));
+        assertEquals(1, enrichments.get());
+
+        assertEquals("result 2", submit(BODY, "application/json"));
+        assertEquals("result 3", submit("other".getBytes(StandardCharsets.UTF_8), "text/csv"));
+
+        version.incrementAndGet();
+        assertEquals("result 4", submit(BODY, "text/csv"));
+        assertEquals("result 4", submit(BODY, "text/csv"));
+        assertEquals(4, enrichments.get());
+    }
+
+    @Test
+    void doesNotStoreResultsComputedWhileTheDataChangedOrAboveTheEntryLimit() {
+        assertEquals("result 1", submit(BODY, "text/csv", version::incrementAndGet));
+        assertEquals("result 2", submit(BODY, "text/csv"));
+        assertEquals("result 2", submit(BODY, "text/csv"));
+
+        ReflectionTestUtils.setField(cache, "maxEntrySize", DataSize.ofBytes(4));
+        version.incrementAndGet();
+        assertEquals("result 3", submit(BODY, "text/csv"));
+        assertEquals("result 4", submit(BODY, "text/csv"));
+    }
+
+    private String submit(byte[] body, String contentType) {
+        return submit(body, contentType, () -> {
+        });
+    }
+
+    private String submit(byte[] body, String contentType, Runnable duringEnrichment) {
+        DataBuffer buffer = cache.getOrEnrich(body, contentType, contentType, bufferFactory, () -> Mono.fromSupplier(() -> {
+                    duringEnrichment.run();
+                    return bufferFactory.wrap(("result " + enrichments.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+                }))
+                .block(Duration.ofSeconds(5));
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
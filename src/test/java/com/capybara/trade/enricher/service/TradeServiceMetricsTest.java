@@ -0,0 +1,129 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.exception.TradeValidationException;
+import com.capybara.trade.enricher.metrics.EnrichmentMetrics;
+import com.capybara.trade.enricher.metrics.InMemoryTraceExporter;
+import com.capybara.trade.enricher.metrics.RequestTracer;
+import com.capybara.trade.enricher.metrics.TraceView;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TradeServiceMetricsTest {
+    private final EnrichmentMetrics metrics = EnrichmentMetrics.standalone();
+    private final TradeService tradeService = new TradeService(null, metrics, TradeResultCache.disabled(),
+            BlockingEnrichmentEngine.disabled());
+
+    @Test
+    void countsAcceptedAndSkippedCsvRows() {
+        String csv = """
+                date,productId,currency,price
+                20230106,2,USD,700.60
+                invalid,2,USD,700.60
+                20230106,3,EUR,abc
+                20230106,3,EUR
+                20230106,3,EUR,800.70
+                """;
+
+        assertEquals(2, tradeService.validateAndParseTrades(csv, "text/csv").count().block());
+
+        assertEquals(2, rows("csv", "accepted"));
+        assertEquals(1, rows("csv", EnrichmentMetrics.INVALID_DATE));
+        assertEquals(1, rows("csv", EnrichmentMetrics.INVALID_PRICE));
+        assertEquals(1, rows("csv", EnrichmentMetrics.WRONG_COLUMNS));
+        assertEquals(1, metrics.registry().get("trade.parse").tag("format", "csv").timer().count());
+    }
+
+    @Test
+    void countsMalformedAndInvalidDateJsonElements() {
+        String json = """
+                [
+                    {"date":"20230104","productId":"8","currency":"EUR","price":450.20},
+                    {"date":"20231304","productId":"9","currency":"GBP","price":500.30},
+                    {"date":"20230104","productId":"9","currency":"GBP","price":"abc"}
+                ]""";
+
+        assertEquals(1, tradeService.validateAndParseTrades(json, "application/json").count().block());
+
+        assertEquals(1, rows("json", "accepted"));
+        assertEquals(1, rows("json", EnrichmentMetrics.INVALID_DATE));
+        assertEquals(1, rows("json", EnrichmentMetrics.MALFORMED));
+    }
+
+    @Test
+    void countsJsonElementsStreamedAcrossBufferBoundaries() {
+        String json = """
+                [
+                    {"date":"20230104","productId":"8","currency":"EUR","price":450.20},
+                    {"date":"20231304","productId":"9","currency":"GBP","price":500.30},
+                    {"date":"20230104","productId":"9","currency":"GBP","price":"abc"}
+                ]""";
+
+        assertEquals(1, tradeService.validateAndParseTradeStream(chunks(json, 7), "application/json")
+                .count().block());
+
+        assertEquals(1, rows("json", "accepted"));
+        assertEquals(1, rows("json", EnrichmentMetrics.INVALID_DATE));
+        assertEquals(1, rows("json", EnrichmentMetrics.MALFORMED));
+    }
+
+    @Test
+    void failsAJsonRequestOnASyntaxError() {
+        String json = """
+                [{"date":"20230104","productId":"8","currency":"EUR","price":1},
+                 {"date":"20230104","productId":"9"}}
+                 {"date":"20230104","productId":"10","currency":"EUR","price":1}]""";
+
+        assertThrows(TradeValidationException.class,
+                () -> tradeService.validateAndParseTrades(json, "application/json").collectList().block());
+        assertThrows(TradeValidationException.class,
+                () -> tradeService.validateAndParseTradeStream(chunks(json, 16), "application/json")
+                        .collectList().block());
+    }
+
+    @Test
+    void recordsParsedRowsInTheRequestTrace() {
+        InMemoryTraceExporter exporter = new InMemoryTraceExporter(10, 5);
+        RequestTracer tracer = new RequestTracer(List.of(exporter));
+        ReflectionTestUtils.setField(tracer, "sampleRate", 1.0);
+        String csv = """
+                date,productId,currency,price
+                20230106,2,USD,700.60
+                20230106,3,EUR,abc
+                """;
+
+        tracer.trace(tracer.start("POST /api/v1/trade", "text/csv"),
+                tradeService.validateAndParseTrades(csv, "text/csv")).blockLast();
+
+        TraceView trace = exporter.recent().get(0);
+        assertEquals(1L, trace.counters().get("rows"));
+        assertEquals(1L, trace.counters().get("skipped_rows"));
+        assertEquals(1, trace.aggregates().get("parse").count());
+    }
+
+    private static Flux<DataBuffer> chunks(String body, int size) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += size) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(bytes, offset, Math.min(offset + size, bytes.length))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    private double rows(String format, String outcome) {
+        MeterRegistry registry = metrics.registry();
+        return registry.get("trade.rows").tags("format", format, "outcome", outcome).counter().count();
+    }
+}
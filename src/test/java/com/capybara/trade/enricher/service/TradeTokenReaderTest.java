@@ -0,0 +1,132 @@
+package com.capybara.trade.enricher.service;
+
+import com.capybara.trade.enricher.dto.TradeDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TradeTokenReaderTest {
+
+    @Test
+    void skipsMalformedJsonElements() throws IOException {
+        String json = """
+                [
+                    {"date":"20230104","productId":"8","currency":"EUR","price":450.20},
+                    {"date":"20230104","productId":"9","currency":"GBP","price":"abc"},
+                    {"date":"20230104","productId":"10","currency":"USD","price":1,"extra":{"a":[1,2]}},
+                    42,
+                    {"date":20230105,"productId":"11","currency":"USD","price":"12.5"}
+                ]""";
+        TradeTokenReader reader = new TradeTokenReader(new ObjectMapper().createParser(json), false);
+
+        List<TradeDTO> trades = readAll(reader);
+
+        assertEquals(List.of(
+                new TradeDTO("20230104", "8", "EUR", 450.20),
+                new TradeDTO("20230105", "11", "USD", 12.5)), trades);
+        assertEquals(5, reader.elements());
+        assertEquals(3, reader.invalidElements());
+    }
+
+    @Test
+    void skipsElementsWithoutAProductId() throws IOException {
+        String json = """
+                [
+                    {"date":"20230104","currency":"EUR","price":450.20},
+                    {"date":"20230104","productId":null,"currency":"EUR","price":450.20},
+                    {"date":"20230104","productId":"8","currency":"EUR","price":450.20}
+                ]""";
+        TradeTokenReader reader = new TradeTokenReader(new ObjectMapper().createParser(json), false);
+
+        List<TradeDTO> trades = readAll(reader);
+
+        assertEquals(List.of(new TradeDTO("20230104", "8", "EUR", 450.20)), trades);
+        assertEquals(3, reader.elements());
+        assertEquals(2, reader.invalidElements());
+    }
+
+    @Test
+    void readsXmlTradeElements() throws IOException {
+        String xml = """
+                <trades>
+                    <trade><date>20230105</date><productId>10</productId><currency>USD</currency><price>550.40</price></trade>
+                    <trade><date>20230105</date><productId>11</productId><currency>EUR</currency><price>n/a</price></trade>
+                    <trade><date>20230105</date><productId>12</productId><currency>EUR</currency><price>600.50</price></trade>
+                </trades>""";
+        TradeTokenReader reader = new TradeTokenReader(new XmlMapper().createParser(xml), true);
+
+        List<TradeDTO> trades = readAll(reader);
+
+        assertEquals(List.of(
+                new TradeDTO("20230105", "10", "USD", 550.40),
+                new TradeDTO("20230105", "12", "EUR", 600.50)), trades);
+        assertEquals(1, reader.invalidElements());
+    }
+
+    @Test
+    void returnsTradesReadBeforeASyntaxError() throws IOException {
+        String json = """
+                [{"date":"20230104","productId":"8","currency":"EUR","price":1},
+                 {"date":"20230104","productId":"9",""";
+        TradeTokenReader reader = new TradeTokenReader(new ObjectMapper().createParser(json), false);
+
+        assertEquals("8", reader.next().getProductId());
+        assertThrows(IOException.class, reader::next);
+    }
+
+    @Test
+    void streamsJsonFedInArbitraryChunks() throws IOException {
+        String json = """
+                [
+                    {"date":"20230104","productId":"8","currency":"EUR","price":450.20},
+                    {"date":"20230104","productId":"9","currency":"GBP","price":"abc"},
+                    [1, {"a": 2}],
+                    {"date":"20230105","productId":"10","currency":"USD","price":"12.5","note":null}
+                ]""";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JsonTradeStreamParser parser = new JsonTradeStreamParser(new ObjectMapper());
+
+        List<TradeDTO> trades = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += 3) {
+            int length = Math.min(3, bytes.length - offset);
+            byte[] chunk = Arrays.copyOfRange(bytes, offset, offset + length);
+            parser.feed(DefaultDataBufferFactory.sharedInstance.wrap(chunk), trades);
+        }
+        parser.finish(trades);
+
+        assertEquals(List.of(new TradeDTO("20230104", "8", "EUR", 450.20)), trades);
+        assertEquals(4, parser.reader().elements());
+        assertEquals(3, parser.reader().invalidElements());
+    }
+
+    @Test
+    void failsAJsonStreamThatEndsInsideATrade() throws IOException {
+        String json = "[{\"date\":\"20230104\",\"productId\":\"8\",\"currency\":\"EUR\",\"price\":1},{\"date\"";
+        JsonTradeStreamParser parser = new JsonTradeStreamParser(new ObjectMapper());
+
+        List<TradeDTO> trades = new ArrayList<>();
+        parser.feed(DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8)), trades);
+
+        assertEquals(1, trades.size());
+        assertThrows(IOException.class, () -> parser.finish(trades));
+    }
+
+    private List<TradeDTO> readAll(TradeTokenReader reader) throws IOException {
+        List<TradeDTO> trades = new ArrayList<>();
+        TradeDTO trade;
+        while ((trade = reader.next()) != null) {
+            trades.add(trade);
+        }
+        return trades;
+    }
+}